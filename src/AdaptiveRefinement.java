@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * refines the mesh only where the stress plot is resolved badly. cubic beams under nodal
+ * loads are exact, so splitting one changes no displacement and no value in Results, but
+ * the renderer colours a whole beam with one stress, that of its worse end, while the
+ * bending stress varies linearly along it. every level solves, estimates that error of
+ * each beam, and splits the beams above the tolerance, worst first, until the element
+ * budget is used up. the plot then matches a uniform subdivision to the same tolerance
+ * at a fraction of its dofs.
+ *
+ * stress jumps between neighbours are not used, where members meet at an angle they are
+ * real and no amount of refinement removes them.
+ *
+ * each solve starts from the previous displacements, carried onto the new nodes with the
+ * beams' own cubic shape functions, so iterative solvers have little left to do.
+ *
+ * usage: [-tolerance x] [-elements N] [-levels N] model.fem
+ */
+public class AdaptiveRefinement {
+	public record Level(int elementCount, int dofCount, int refinedCount, double maxError, int iterations) { }
+
+	private final FESolver solver;
+
+	// relative to the largest fiber stress
+	private double tolerance;
+	private int maxElements;
+	private int maxLevels;
+
+	private final ArrayList<Level> levels;
+
+	public AdaptiveRefinement(FESolver solver) {
+		this(solver, 0.05, 100000, 6);
+	}
+
+	public AdaptiveRefinement(FESolver solver, double tolerance, int maxElements, int maxLevels) {
+		this.solver = solver;
+		this.tolerance = tolerance;
+		this.maxElements = maxElements;
+		this.maxLevels = maxLevels;
+		this.levels = new ArrayList<>();
+	}
+
+	// refines the loaded model in place and returns the displacements of the final mesh
+	public ArrayList<Node> run() {
+		levels.clear();
+		ArrayList<Node> displacements = null;
+
+		for (int level = 0; ; level++) {
+			solver.buildMatrix();
+			displacements = solver.solveDisplacements(displacements);
+
+			ArrayList<Element> elements = solver.getElements();
+			double[] errors = estimateErrors(solver, displacements);
+
+			double maxStress = 0.0;
+			double maxError = 0.0;
+			for (int i = 0; i < elements.size(); i++) {
+				if (elements.get(i) instanceof BeamElement beam) {
+					maxStress = Math.max(maxStress, beam.calcFiberStress(displacements.get(beam.getNode1()), displacements.get(beam.getNode2()), 0));
+					maxStress = Math.max(maxStress, beam.calcFiberStress(displacements.get(beam.getNode1()), displacements.get(beam.getNode2()), 1));
+				}
+				maxError = Math.max(maxError, errors[i]);
+			}
+			double relativeError = maxStress > 0.0 ? maxError / maxStress : 0.0;
+
+			// worst elements first, as many as the budget allows
+			boolean[] selected = new boolean[elements.size()];
+			int refined = 0;
+			if (level < maxLevels) {
+				Integer[] order = new Integer[elements.size()];
+				for (int i = 0; i < order.length; i++) {
+					order[i] = i;
+				}
+				Arrays.sort(order, (a, b) -> Double.compare(errors[b], errors[a]));
+
+				int budget = maxElements - elements.size();
+				for (int i = 0; i < order.length && refined < budget; i++) {
+					if (errors[order[i]] <= tolerance * maxStress) {
+						break;
+					}
+					selected[order[i]] = true;
+					refined++;
+				}
+			}
+
+			int iterations = solver.getLinearSolver() instanceof ConjugateGradientSolver cg ? cg.getIterations() : 0;
+			levels.add(new Level(elements.size(), solver.getEquationCount(), refined, relativeError, iterations));
+
+			if (refined == 0) {
+				return displacements;
+			}
+
+			int oldNodeCount = solver.getNodes().size();
+			solver.subdivide(selected);
+			displacements = interpolate(displacements, oldNodeCount);
+		}
+	}
+
+	/*
+	 * error indicator of every element, zero for anything but beams. the stress drawn for a
+	 * beam is Results.STRESS, the worse end, all along it while the bending stress varies
+	 * linearly, so towards the other end the plot is off by up to the whole change in
+	 * bending stress between the ends. halving a beam halves it.
+	 */
+	public static double[] estimateErrors(FESolver solver, ArrayList<Node> displacements) {
+		ArrayList<Element> elements = solver.getElements();
+
+		double[] errors = new double[elements.size()];
+		for (int i = 0; i < elements.size(); i++) {
+			if (elements.get(i) instanceof BeamElement beam) {
+				Node d1 = displacements.get(beam.getNode1());
+				Node d2 = displacements.get(beam.getNode2());
+				double change = beam.calcCurvature(d1, d2, 1) - beam.calcCurvature(d1, d2, 0);
+				errors[i] = 0.5 * beam.getYoungsModulus() * beam.getSectionDepth() * Math.abs(change);
+			}
+		}
+		return errors;
+	}
+
+	// extends the displacements to the nodes added since, each one sits halfway along a beam
+	private ArrayList<Node> interpolate(ArrayList<Node> displacements, int oldNodeCount) {
+		NodeStore nodes = solver.getNodes();
+		int nodeCount = nodes.size();
+
+		// the halves of a split beam run from its first node to the new one and on to its second
+		int[] first = new int[nodeCount];
+		int[] second = new int[nodeCount];
+		for (var elem : solver.getElements()) {
+			if (elem instanceof BeamElement beam) {
+				if (beam.getNode2() >= oldNodeCount) {
+					first[beam.getNode2()] = beam.getNode1();
+				}
+				if (beam.getNode1() >= oldNodeCount) {
+					second[beam.getNode1()] = beam.getNode2();
+				}
+			}
+		}
+
+		ArrayList<Node> result = new ArrayList<>(displacements);
+		for (int k = oldNodeCount; k < nodeCount; k++) {
+			Node d1 = displacements.get(first[k]);
+			Node d2 = displacements.get(second[k]);
+
+			double dx = nodes.getX(second[k]) - nodes.getX(first[k]);
+			double dy = nodes.getY(second[k]) - nodes.getY(first[k]);
+			double L = Math.sqrt(dx*dx + dy*dy);
+			double c = dx / L;
+			double s = dy / L;
+
+			double u1 = c * d1.getX() + s * d1.getY();
+			double u2 = c * d2.getX() + s * d2.getY();
+			double v1 = -s * d1.getX() + c * d1.getY();
+			double v2 = -s * d2.getX() + c * d2.getY();
+			double t1 = d1.getTheta();
+			double t2 = d2.getTheta();
+
+			// linear along the beam, hermite cubic across it, both at the midpoint
+			double u = 0.5 * (u1 + u2);
+			double v = 0.5 * (v1 + v2) + L * (t1 - t2) / 8.0;
+			double t = 1.5 * (v2 - v1) / L - 0.25 * (t1 + t2);
+
+			result.add(new Node(nodes.getID(k), c * u - s * v, s * u + c * v, t));
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		double tolerance = 0.05;
+		int maxElements = 100000;
+		int maxLevels = 6;
+		String model = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-tolerance" -> tolerance = Double.parseDouble(args[++i]);
+				case "-elements" -> maxElements = Integer.parseInt(args[++i]);
+				case "-levels" -> maxLevels = Integer.parseInt(args[++i]);
+				default -> model = args[i];
+			}
+		}
+		if (model == null) {
+			System.err.println("usage: [-tolerance x] [-elements N] [-levels N] model.fem");
+			return;
+		}
+
+		FESolver solver = new FESolver();
+		solver.setLinearSolver(new ConjugateGradientSolver(ConjugateGradientSolver.Preconditioner.BLOCK_JACOBI, 1e-10, 100000));
+		solver.loadFromFile(model);
+
+		AdaptiveRefinement refinement = new AdaptiveRefinement(solver, tolerance, maxElements, maxLevels);
+		refinement.run();
+
+		System.out.printf("%5s %10s %10s %10s %12s %10s%n", "level", "elements", "dof", "refined", "max error", "iterations");
+		for (int i = 0; i < refinement.getLevels().size(); i++) {
+			Level level = refinement.getLevels().get(i);
+			System.out.printf("%5d %10d %10d %10d %12.3e %10d%n", i, level.elementCount(), level.dofCount(),
+				level.refinedCount(), level.maxError(), level.iterations());
+		}
+	}
+
+	public ArrayList<Level> getLevels() {
+		return levels;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public int getMaxElements() {
+		return maxElements;
+	}
+
+	public void setMaxElements(int maxElements) {
+		this.maxElements = maxElements;
+	}
+
+	public int getMaxLevels() {
+		return maxLevels;
+	}
+
+	public void setMaxLevels(int maxLevels) {
+		this.maxLevels = maxLevels;
+	}
+}
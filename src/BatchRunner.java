@@ -0,0 +1,193 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * solves many .fem files without a window, one independent FESolver per model on a
+ * fixed pool of threads. every model gets a results file with the displacements of all
+ * its load cases and the run ends with a summary of timings.
+ */
+public class BatchRunner {
+	public record Result(Path file, String error, int nodeCount, int elementCount, int loadCaseCount,
+		long loadNanos, long assembleNanos, long solveNanos, double maxDisplacement) {
+		public boolean succeeded() {
+			return error == null;
+		}
+
+		public long totalNanos() {
+			return loadNanos + assembleNanos + solveNanos;
+		}
+	}
+
+	private final int threads;
+	private final Path outputDirectory;
+
+	public BatchRunner(int threads, Path outputDirectory) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("thread count must be at least 1");
+		}
+		this.threads = threads;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/*
+	 * a directory selects all .fem files in it, anything else is taken as a glob on the
+	 * file names of its parent directory, like "models/scenario*.fem".
+	 */
+	public static ArrayList<Path> findModels(String pattern) throws IOException {
+		Path path = Path.of(pattern);
+		Path directory;
+		String glob;
+
+		if (Files.isDirectory(path)) {
+			directory = path;
+			glob = "*.fem";
+		} else {
+			directory = path.getParent() != null ? path.getParent() : Path.of(".");
+			glob = path.getFileName().toString();
+		}
+
+		ArrayList<Path> result = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+			for (Path file : stream) {
+				if (Files.isRegularFile(file)) {
+					result.add(file);
+				}
+			}
+		}
+		result.sort(null);
+		return result;
+	}
+
+	public ArrayList<Result> run(ArrayList<Path> files) throws IOException {
+		Files.createDirectories(outputDirectory);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Future<Result>> futures = new ArrayList<>(files.size());
+			for (Path file : files) {
+				futures.add(executor.submit(() -> solve(file)));
+			}
+
+			ArrayList<Result> results = new ArrayList<>(files.size());
+			for (var future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("batch run was interrupted", e);
+				} catch (ExecutionException e) {
+					throw new IOException("batch run failed", e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void writeSummary(ArrayList<Result> results, long wallNanos) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(outputDirectory.resolve("summary.txt"))) {
+			out.write(String.format("%-32s %8s %8s %6s %10s %10s %10s %10s %14s%n",
+				"model", "nodes", "elements", "cases", "load ms", "build ms", "solve ms", "total ms", "max |u|"));
+
+			int failed = 0;
+			long cpuNanos = 0;
+			for (var result : results) {
+				cpuNanos += result.totalNanos();
+				if (!result.succeeded()) {
+					failed++;
+					out.write(String.format("%-32s FAILED: %s%n", result.file().getFileName(), result.error()));
+					continue;
+				}
+				out.write(String.format("%-32s %8d %8d %6d %10.2f %10.2f %10.2f %10.2f %14.6e%n",
+					result.file().getFileName(), result.nodeCount(), result.elementCount(), result.loadCaseCount(),
+					result.loadNanos() * 1e-6, result.assembleNanos() * 1e-6, result.solveNanos() * 1e-6,
+					result.totalNanos() * 1e-6, result.maxDisplacement()));
+			}
+
+			out.write(String.format("%n%d models, %d failed, %d threads%n", results.size(), failed, threads));
+			out.write(String.format("wall time %.2f ms, summed model time %.2f ms%n", wallNanos * 1e-6, cpuNanos * 1e-6));
+		}
+	}
+
+	private Result solve(Path file) {
+		long start = System.nanoTime();
+
+		FESolver solver = new FESolver();
+		try {
+			// the dense default does not scale to large regression models
+			solver.setLinearSolver(new SkylineSolver());
+
+			solver.loadFromFile(file.toString());
+			solver.buildMatrix();
+			LinkedHashMap<String, ArrayList<Node>> displacements = solver.solveLoadCases();
+
+			double maxDisplacement = writeDisplacements(file, displacements);
+
+			SolverMetrics metrics = solver.getMetrics();
+			return new Result(file, null, solver.getNodes().size(), solver.getElements().size(), displacements.size(),
+				metrics.getNanos(SolverPhase.PARSE) + metrics.getNanos(SolverPhase.SUBDIVIDE),
+				metrics.getNanos(SolverPhase.ASSEMBLE) + metrics.getNanos(SolverPhase.CONSTRAIN),
+				metrics.getNanos(SolverPhase.FACTORIZE) + metrics.getNanos(SolverPhase.SOLVE) + metrics.getNanos(SolverPhase.POST_PROCESS),
+				maxDisplacement);
+		} catch (IOException | RuntimeException e) {
+			// failed models only report the time until the failure
+			String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+			return new Result(file, error, 0, 0, 0, System.nanoTime() - start, 0, 0, 0.0);
+		}
+	}
+
+	// writes one line per node and load case, returns the largest translation
+	private double writeDisplacements(Path file, LinkedHashMap<String, ArrayList<Node>> displacements) throws IOException {
+		String name = file.getFileName().toString();
+		if (name.endsWith(".fem")) {
+			name = name.substring(0, name.length() - 4);
+		}
+
+		double maxDisplacement = 0.0;
+		try (BufferedWriter out = Files.newBufferedWriter(outputDirectory.resolve(name + ".out"))) {
+			for (var loadCase : displacements.entrySet()) {
+				out.write("#" + loadCase.getKey());
+				out.newLine();
+				for (Node node : loadCase.getValue()) {
+					out.write(node.getID() + " " + node.getX() + " " + node.getY() + " " + node.getTheta());
+					out.newLine();
+					maxDisplacement = Math.max(maxDisplacement, Math.hypot(node.getX(), node.getY()));
+				}
+			}
+		}
+		return maxDisplacement;
+	}
+
+	/*
+	 * usage: <directory or glob> [output directory] [threads]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: --batch <directory or glob> [output directory] [threads]");
+			return;
+		}
+
+		Path output = Path.of(args.length > 1 ? args[1] : "results");
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		ArrayList<Path> files = findModels(args[0]);
+		BatchRunner runner = new BatchRunner(threads, output);
+
+		long start = System.nanoTime();
+		ArrayList<Result> results = runner.run(files);
+		runner.writeSummary(results, System.nanoTime() - start);
+
+		long failed = results.stream().filter(result -> !result.succeeded()).count();
+		System.out.println("Solved " + (results.size() - failed) + " of " + results.size() + " models, summary in " + output.resolve("summary.txt"));
+	}
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 public class BeamElement extends Element {
 	private final int n1;
 	private final int n2;
@@ -6,7 +8,14 @@ public class BeamElement extends Element {
 	private final double A;
 	private final double I;
 
+	// mass per volume, 0 for a massless beam
+	private final double density;
+
 	public BeamElement(FESolver solver, int n1, int n2, double E, double A, double I) {
+		this(solver, n1, n2, E, A, I, 0.0);
+	}
+
+	public BeamElement(FESolver solver, int n1, int n2, double E, double A, double I, double density) {
 		super(solver);
 
 		this.n1 = n1;
@@ -15,6 +24,7 @@ public class BeamElement extends Element {
 		this.E = E;
 		this.A = A;
 		this.I = I;
+		this.density = density;
 	}
 
 	@Override
@@ -32,47 +42,256 @@ public class BeamElement extends Element {
 
 	@Override
 	public Matrix getTransformationMatrix() {
-		double phi = getAngle();
+		double L = getLength();
+		double c = (solver.getNodes().getX(n2) - solver.getNodes().getX(n1)) / L;
+		double s = (solver.getNodes().getY(n2) - solver.getNodes().getY(n1)) / L;
 		return new Matrix(2 * Node.DEGREES_OF_FREEDOM, new double[] {
-			Math.cos(phi), -Math.sin(phi), 0.0, 0.0, 0.0, 0.0,
-			Math.sin(phi), Math.cos(phi), 0.0, 0.0, 0.0, 0.0,
+			c, -s, 0.0, 0.0, 0.0, 0.0,
+			s, c, 0.0, 0.0, 0.0, 0.0,
 			0.0, 0.0, 1.0, 0.0, 0.0, 0.0,
-			0.0, 0.0, 0.0, Math.cos(phi), -Math.sin(phi), 0.0,
-			0.0, 0.0, 0.0, Math.sin(phi), Math.cos(phi), 0.0,
+			0.0, 0.0, 0.0, c, -s, 0.0,
+			0.0, 0.0, 0.0, s, c, 0.0,
 			0.0, 0.0, 0.0, 0.0, 0.0, 1.0
 		});
 	}
 
 	@Override
-	public int getGlobalIndex(int index) {
-		boolean isN1 = index < Node.DEGREES_OF_FREEDOM;
-		int variable = isN1 ? index : index - 3;
-		int node = isN1 ? n1 : n2;
-		return node*Node.DEGREES_OF_FREEDOM + variable;
+	public void getGlobalMatrix(double[] out, int offset) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
+		double L = Math.sqrt(dx*dx + dy*dy);
+		double EI = E * I;
+
+		writeGlobalMatrix(out, offset, dx / L, dy / L,
+			A * E / L,
+			12.0 * EI / (L * L * L),
+			6.0 * EI / (L * L),
+			4.0 * EI / L,
+			2.0 * EI / L
+		);
+	}
+
+	private static final Property[] PROPERTIES = { Property.YOUNGS_MODULUS, Property.AREA, Property.MOMENT_OF_INERTIA };
+
+	@Override
+	public Property[] getProperties() {
+		return PROPERTIES;
+	}
+
+	@Override
+	public double getProperty(Property property) {
+		return switch (property) {
+			case YOUNGS_MODULUS -> E;
+			case AREA -> A;
+			case MOMENT_OF_INERTIA -> I;
+			default -> super.getProperty(property);
+		};
+	}
+
+	@Override
+	public Element withProperty(Property property, double value) {
+		return switch (property) {
+			case YOUNGS_MODULUS -> new BeamElement(solver, n1, n2, value, A, I, density);
+			case AREA -> new BeamElement(solver, n1, n2, E, value, I, density);
+			case MOMENT_OF_INERTIA -> new BeamElement(solver, n1, n2, E, A, value, density);
+			default -> super.withProperty(property, value);
+		};
+	}
+
+	// E scales all of it, A only the axial and I only the bending part
+	@Override
+	public void getGlobalMatrixDerivative(Property property, double[] out, int offset) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
+		double L = Math.sqrt(dx*dx + dy*dy);
+
+		double axial;
+		double bending;
+		switch (property) {
+			case YOUNGS_MODULUS -> { axial = A; bending = I; }
+			case AREA -> { axial = E; bending = 0.0; }
+			case MOMENT_OF_INERTIA -> { axial = 0.0; bending = E; }
+			default -> {
+				super.getGlobalMatrixDerivative(property, out, offset);
+				return;
+			}
+		}
+
+		writeGlobalMatrix(out, offset, dx / L, dy / L,
+			axial / L,
+			12.0 * bending / (L * L * L),
+			6.0 * bending / (L * L),
+			4.0 * bending / L,
+			2.0 * bending / L
+		);
+	}
+
+	/*
+	 * consistent mass of the cubic beam, or lumped with half the mass on either end's
+	 * translations and the rotational inertia scaled from the consistent diagonal (hrz).
+	 */
+	@Override
+	public void getGlobalMassMatrix(double[] out, int offset, boolean lumped) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
+		double L = Math.sqrt(dx*dx + dy*dy);
+		double m = density * A * L;
+
+		int o = offset;
+		if (lumped) {
+			Arrays.fill(out, o, o + MATRIX_SIZE * MATRIX_SIZE, 0.0);
+			out[o] = out[o + 7] = out[o + 21] = out[o + 28] = 0.5 * m;
+			out[o + 14] = out[o + 35] = m * L * L / 78.0;
+			return;
+		}
+
+		double k = m / 420.0;
+		out[o]      = 140.0 * k;  out[o + 1]  = 0.0;             out[o + 2]  = 0.0;               out[o + 3]  = 70.0 * k;   out[o + 4]  = 0.0;             out[o + 5]  = 0.0;
+		out[o + 6]  = 0.0;        out[o + 7]  = 156.0 * k;       out[o + 8]  = 22.0 * L * k;      out[o + 9]  = 0.0;        out[o + 10] = 54.0 * k;        out[o + 11] = -13.0 * L * k;
+		out[o + 12] = 0.0;        out[o + 13] = 22.0 * L * k;    out[o + 14] = 4.0 * L * L * k;   out[o + 15] = 0.0;        out[o + 16] = 13.0 * L * k;    out[o + 17] = -3.0 * L * L * k;
+		out[o + 18] = 70.0 * k;   out[o + 19] = 0.0;             out[o + 20] = 0.0;               out[o + 21] = 140.0 * k;  out[o + 22] = 0.0;             out[o + 23] = 0.0;
+		out[o + 24] = 0.0;        out[o + 25] = 54.0 * k;        out[o + 26] = 13.0 * L * k;      out[o + 27] = 0.0;        out[o + 28] = 156.0 * k;       out[o + 29] = -22.0 * L * k;
+		out[o + 30] = 0.0;        out[o + 31] = -13.0 * L * k;   out[o + 32] = -3.0 * L * L * k;  out[o + 33] = 0.0;        out[o + 34] = -22.0 * L * k;   out[o + 35] = 4.0 * L * L * k;
+		rotateToGlobal(out, offset, dx / L, dy / L);
+	}
+
+	/*
+	 * co-rotational: the beam moves as a rigid body with its chord and deforms linearly
+	 * relative to it, so the local strains stay small however far it swings. the chord
+	 * rotation is taken on the branch nearest the mean of the nodal rotations, which keeps
+	 * the local end rotations small across any number of turns.
+	 */
+	@Override
+	public void getInternalForce(double[] d, double[] force, double[] tangent) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx0 = nodes.getX(n2) - nodes.getX(n1);
+		double dy0 = nodes.getY(n2) - nodes.getY(n1);
+		double L0 = Math.sqrt(dx0*dx0 + dy0*dy0);
+		double c0 = dx0 / L0;
+		double s0 = dy0 / L0;
+
+		double dx = dx0 + d[3] - d[0];
+		double dy = dy0 + d[4] - d[1];
+		double L = Math.sqrt(dx*dx + dy*dy);
+		double c = dx / L;
+		double s = dy / L;
+
+		double mean = 0.5 * (d[2] + d[5]);
+		double chord = Math.atan2(c0 * s - s0 * c, c0 * c + s0 * s) - mean;
+		double rotation = mean + Math.atan2(Math.sin(chord), Math.cos(chord));
+
+		// L - L0 without the cancellation
+		double stretch = (dx*dx + dy*dy - L0*L0) / (L + L0);
+		double t1 = d[2] - rotation;
+		double t2 = d[5] - rotation;
+
+		double EA = E * A / L0;
+		double EI = E * I / L0;
+		double N = EA * stretch;
+		double M1 = EI * (4.0 * t1 + 2.0 * t2);
+		double M2 = EI * (2.0 * t1 + 4.0 * t2);
+
+		// derivatives of the stretch and of the chord rotation times L
+		double[] r = { -c, -s, 0.0, c, s, 0.0 };
+		double[] z = { s, -c, 0.0, -s, c, 0.0 };
+
+		for (int i = 0; i < MATRIX_SIZE; i++) {
+			double b1 = (i == 2 ? 1.0 : 0.0) - z[i] / L;
+			double b2 = (i == 5 ? 1.0 : 0.0) - z[i] / L;
+			force[i] = N * r[i] + M1 * b1 + M2 * b2;
+		}
+
+		if (tangent == null) {
+			return;
+		}
+
+		// B^T D B plus the geometric part from turning the chord
+		double geometricAxial = N / L;
+		double geometricBending = (M1 + M2) / (L * L);
+		for (int i = 0; i < MATRIX_SIZE; i++) {
+			double bi1 = (i == 2 ? 1.0 : 0.0) - z[i] / L;
+			double bi2 = (i == 5 ? 1.0 : 0.0) - z[i] / L;
+			for (int j = 0; j < MATRIX_SIZE; j++) {
+				double bj1 = (j == 2 ? 1.0 : 0.0) - z[j] / L;
+				double bj2 = (j == 5 ? 1.0 : 0.0) - z[j] / L;
+				tangent[i * MATRIX_SIZE + j] = EA * r[i] * r[j]
+					+ EI * (4.0 * bi1 * bj1 + 2.0 * bi1 * bj2 + 2.0 * bi2 * bj1 + 4.0 * bi2 * bj2)
+					+ geometricAxial * z[i] * z[j]
+					+ geometricBending * (r[i] * z[j] + z[i] * r[j]);
+			}
+		}
+	}
+
+	@Override
+	public int getNode(int index) {
+		return index == 0 ? n1 : n2;
 	}
 
 	public double getLength() {
-		Node node1 = solver.getNode(n1);
-		Node node2 = solver.getNode(n2);
+		NodeStore nodes = solver.getNodes();
 
-		double dx = node2.getX() - node1.getX();
-		double dy = node2.getY() - node1.getY();
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
 
 		return Math.sqrt(dx*dx + dy*dy);
 	}
 
 	public double getAngle() {
-		Node node1 = solver.getNode(n1);
-		Node node2 = solver.getNode(n2);
+		NodeStore nodes = solver.getNodes();
 
-		double dx = node2.getX() - node1.getX();
-		double dy = node2.getY() - node1.getY();
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
 
 		return Math.atan2(dy, dx);
 	}
 
-	public double calcStress(double newLength) {
-		return getYoungsModulus() * Math.abs(newLength/getLength() - 1.0);
+	/*
+	 * largest fiber stress at one end (0 or 1) from the nodal displacements, axial plus
+	 * bending, with the section depth of getSectionDepth.
+	 */
+	public double calcFiberStress(Node d1, Node d2, int end) {
+		double c = getCosine();
+		double s = getSine();
+		double u1 = c * d1.getX() + s * d1.getY();
+		double u2 = c * d2.getX() + s * d2.getY();
+
+		double axial = E * (u2 - u1) / getLength();
+		return Math.abs(axial) + Math.abs(E * calcCurvature(d1, d2, end)) * 0.5 * getSectionDepth();
+	}
+
+	// curvature of the cubic deflection at one end (0 or 1), positive for counterclockwise bending
+	public double calcCurvature(Node d1, Node d2, int end) {
+		double L = getLength();
+		double c = getCosine();
+		double s = getSine();
+
+		// displacements across the beam
+		double v1 = -s * d1.getX() + c * d1.getY();
+		double v2 = -s * d2.getX() + c * d2.getY();
+
+		return end == 0
+			? 6.0 * (v2 - v1) / (L * L) - (4.0 * d1.getTheta() + 2.0 * d2.getTheta()) / L
+			: -6.0 * (v2 - v1) / (L * L) + (2.0 * d1.getTheta() + 4.0 * d2.getTheta()) / L;
+	}
+
+	// depth of a rectangular section with this area and moment of inertia
+	public double getSectionDepth() {
+		return Math.sqrt(12.0 * I / A);
+	}
+
+	private double getCosine() {
+		return (solver.getNodes().getX(n2) - solver.getNodes().getX(n1)) / getLength();
+	}
+
+	private double getSine() {
+		return (solver.getNodes().getY(n2) - solver.getNodes().getY(n1)) / getLength();
 	}
 
 	public int getNode1() {
@@ -94,4 +313,8 @@ public class BeamElement extends Element {
 	public double getAreaMomentOfInertia() {
 		return I;
 	}
+
+	public double getDensity() {
+		return density;
+	}
 }
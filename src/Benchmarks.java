@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * timing harness for the main stages of a solve. every benchmark runs a few warmup
+ * iterations and then measures each iteration on its own, with its setup done outside
+ * the timed region. models are .fem files or generated ones:
+ *
+ *   truss:N        warren truss of N panels
+ *   lattice:N      N x N braced lattice
+ *   lattice:CxR    C x R braced lattice
+ *
+ * usage: [-warmup N] [-iterations N] [-budget seconds] [models...]
+ */
+public class Benchmarks {
+	private interface Step {
+		void run() throws Exception;
+	}
+
+	// dense solves and products are O(n^3), beyond this they would swamp everything else
+	private static final int DENSE_LIMIT = 3000;
+
+	private static final String[] DEFAULT_MODELS = {
+		"scenario1.fem", "scenario2.fem", "scenario3.fem", "scenario4.fem", "scenario5.fem",
+		"truss:1000", "truss:10000", "truss:100000", "lattice:30", "lattice:100"
+	};
+
+	private final PrintStream out;
+	private final int warmup;
+	private final int iterations;
+	private final long budgetNanos;
+
+	// keeps results alive so the timed work cannot be optimised away
+	private static volatile Object sink;
+
+	public Benchmarks(PrintStream out, int warmup, int iterations, double budgetSeconds) {
+		this.out = out;
+		this.warmup = warmup;
+		this.iterations = iterations;
+		this.budgetNanos = (long) (budgetSeconds * 1e9);
+	}
+
+	public void runAll(String model, Path file) throws Exception {
+		FESolver[] solver = { load(file) };
+		int dof = solver[0].getNodes().size() * Node.DEGREES_OF_FREEDOM;
+		Matrix[] dense = new Matrix[1];
+
+		measure(model, dof, "loadFromFile",
+			() -> { },
+			() -> sink = load(file));
+
+		measure(model, dof, "subdivide",
+			() -> solver[0] = load(file),
+			() -> solver[0].subdivide());
+
+		measure(model, dof, "applyBoundaryConditions",
+			() -> solver[0] = load(file),
+			() -> solver[0].applyBoundaryConditions());
+
+		measure(model, dof, "assembleMatrix",
+			() -> {
+				solver[0] = load(file);
+				solver[0].applyBoundaryConditions();
+			},
+			() -> solver[0].assembleMatrix());
+
+		measure(model, dof, "solveDisplacements",
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+			},
+			() -> sink = solver[0].solveDisplacements());
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		SparseCholeskySolver[] cholesky = new SparseCholeskySolver[1];
+		measure(model, dof, "SkylineSolver.factorize",
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+			},
+			() -> new SkylineSolver().factorize(solver[0].getStiffnessMatrix()));
+
+		// the symbolic analysis is done in the setup, only the numeric part is timed
+		measure(model, dof, "SparseCholesky x" + threads,
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+				cholesky[0] = new SparseCholeskySolver(threads);
+				cholesky[0].factorize(solver[0].getStiffnessMatrix());
+			},
+			() -> cholesky[0].factorize(solver[0].getStiffnessMatrix()));
+
+		// float factor only, the refinement is part of every solve
+		MixedPrecisionSolver[] mixed = new MixedPrecisionSolver[1];
+		measure(model, dof, "MixedPrecision.factorize",
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+				mixed[0] = new MixedPrecisionSolver();
+				mixed[0].factorize(solver[0].getStiffnessMatrix());
+			},
+			() -> mixed[0].factorize(solver[0].getStiffnessMatrix()));
+
+		// one subdomain per thread, partitioning is part of the setup as well
+		DomainDecompositionSolver[] decomposition = new DomainDecompositionSolver[1];
+		measure(model, dof, "DomainDecomposition x" + threads,
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+				decomposition[0] = new DomainDecompositionSolver(threads, threads);
+				decomposition[0].factorize(solver[0].getStiffnessMatrix());
+			},
+			() -> decomposition[0].factorize(solver[0].getStiffnessMatrix()));
+
+		if (dof > DENSE_LIMIT) {
+			return;
+		}
+
+		measure(model, dof, "Matrix.mul",
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+				dense[0] = solver[0].getStiffnessMatrix().toDense();
+			},
+			() -> sink = dense[0].mul(dense[0]));
+
+		MyVector[] forces = new MyVector[1];
+		measure(model, dof, "Matrix.solve",
+			() -> {
+				solver[0] = load(file);
+				solver[0].buildMatrix();
+				dense[0] = solver[0].getStiffnessMatrix().toDense();
+				forces[0] = new MyVector(dense[0].getSize());
+				for (int i = 0; i < dense[0].getSize(); i++) {
+					forces[0].set(i, 1.0);
+				}
+			},
+			() -> sink = dense[0].solve(forces[0]));
+	}
+
+	private void measure(String model, int dof, String name, Step setup, Step body) throws Exception {
+		long[] times = new long[iterations];
+		int measured = 0;
+
+		long started = System.nanoTime();
+		for (int i = 0; i < warmup && System.nanoTime() - started < budgetNanos; i++) {
+			setup.run();
+			body.run();
+		}
+
+		started = System.nanoTime();
+		while (measured < iterations && (measured == 0 || System.nanoTime() - started < budgetNanos)) {
+			setup.run();
+			long start = System.nanoTime();
+			body.run();
+			times[measured++] = System.nanoTime() - start;
+		}
+
+		long[] sorted = Arrays.copyOf(times, measured);
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long time : sorted) {
+			total += time;
+		}
+
+		out.printf("%-24s %10d %-26s %5d %12.3f %12.3f %12.3f%n", model, dof, name, measured,
+			sorted[0] * 1e-6, sorted[measured / 2] * 1e-6, total * 1e-6 / measured);
+	}
+
+	private static FESolver load(Path file) throws IOException {
+		FESolver solver = new FESolver();
+		// the dense default is benchmarked through Matrix.solve, the full solve uses the skyline solver
+		solver.setLinearSolver(new SkylineSolver());
+		solver.loadFromFile(file.toString());
+		return solver;
+	}
+
+	// turns a model argument into a file, generating it if needed
+	private static Path resolve(String model, Path generated) throws IOException {
+		int colon = model.indexOf(':');
+		if (colon < 0) {
+			return Path.of(model);
+		}
+
+		String kind = model.substring(0, colon);
+		String size = model.substring(colon + 1);
+		Path file = generated.resolve(kind + "-" + size + ".fem");
+
+		switch (kind) {
+			case "truss" -> ModelGenerator.writeTruss(file, Integer.parseInt(size));
+			case "lattice" -> {
+				int x = size.indexOf('x');
+				int columns = Integer.parseInt(x < 0 ? size : size.substring(0, x));
+				int rows = x < 0 ? columns : Integer.parseInt(size.substring(x + 1));
+				ModelGenerator.writeLattice(file, columns, rows);
+			}
+			default -> throw new IllegalArgumentException("unknown model generator \"" + kind + "\"");
+		}
+		return file;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int warmup = 3;
+		int iterations = 10;
+		double budget = 10.0;
+		ArrayList<String> models = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-warmup" -> warmup = Integer.parseInt(args[++i]);
+				case "-iterations" -> iterations = Integer.parseInt(args[++i]);
+				case "-budget" -> budget = Double.parseDouble(args[++i]);
+				default -> models.add(args[i]);
+			}
+		}
+		if (models.isEmpty()) {
+			models.addAll(Arrays.asList(DEFAULT_MODELS));
+		}
+
+		Benchmarks benchmarks = new Benchmarks(System.out, warmup, Math.max(1, iterations), budget);
+		System.out.printf("%-24s %10s %-26s %5s %12s %12s %12s%n", "model", "dof", "benchmark", "n", "min ms", "median ms", "mean ms");
+
+		Path generated = Files.createTempDirectory("fem-benchmarks");
+		try {
+			for (String model : models) {
+				Path file = resolve(model, generated);
+				try {
+					benchmarks.runAll(model, file);
+				} finally {
+					if (file.startsWith(generated)) {
+						Files.delete(file);
+					}
+				}
+			}
+		} finally {
+			Files.delete(generated);
+		}
+	}
+}
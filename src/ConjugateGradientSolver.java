@@ -0,0 +1,375 @@
+/*
+ * preconditioned conjugate gradient solver for symmetric positive definite systems.
+ * works on an assembled SparseMatrix or on any LinearOperator (e.g. the matrix-free ElementOperator).
+ * a solve that does not reach the tolerance within maxIterations throws an ArithmeticException.
+ * the default incomplete cholesky preconditioner needs the assembled matrix, matrix-free
+ * solving takes jacobi or block jacobi.
+ */
+public class ConjugateGradientSolver implements LinearSolver {
+	public enum Preconditioner {
+		NONE,
+		JACOBI,
+		BLOCK_JACOBI,
+		INCOMPLETE_CHOLESKY
+	}
+
+	private Preconditioner preconditioner;
+	private double tolerance;
+	private int maxIterations;
+
+	private LinearOperator operator;
+
+	// jacobi and block jacobi: inverted diagonal entries or 3x3 node blocks
+	private int[] blockStarts;
+	private double[] inverseBlocks;
+
+	// incomplete cholesky: L with the pattern of the lower triangle, diagonal last in each row
+	private int[] lowerPointers;
+	private int[] lowerColumns;
+	private double[] lowerValues;
+
+	private int iterations;
+	private double residual;
+	private boolean converged;
+
+	public ConjugateGradientSolver() {
+		this(Preconditioner.INCOMPLETE_CHOLESKY, 1e-10, 10000);
+	}
+
+	public ConjugateGradientSolver(Preconditioner preconditioner, double tolerance, int maxIterations) {
+		this.preconditioner = preconditioner;
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+	}
+
+	@Override
+	public void factorize(SparseMatrix matrix) {
+		setOperator(matrix);
+	}
+
+	public void setOperator(LinearOperator operator) {
+		this.operator = operator;
+
+		switch (preconditioner) {
+			case NONE -> { }
+			case JACOBI -> buildJacobi(false);
+			case BLOCK_JACOBI -> buildJacobi(true);
+			case INCOMPLETE_CHOLESKY -> {
+				if (!(operator instanceof SparseMatrix matrix)) {
+					throw new IllegalStateException("incomplete cholesky needs an assembled matrix");
+				}
+				buildIncompleteCholesky(matrix);
+			}
+		}
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs) {
+		return solve(rhs, null);
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs, MyVector initialGuess) {
+		int n = operator.getSize();
+
+		double[] x = new double[n];
+		double[] r = new double[n];
+		double[] z = new double[n];
+		double[] p = new double[n];
+		double[] q = new double[n];
+
+		double rhsNorm = 0.0;
+		for (int i = 0; i < n; i++) {
+			rhsNorm += rhs.get(i) * rhs.get(i);
+		}
+		rhsNorm = Math.sqrt(rhsNorm);
+
+		iterations = 0;
+		residual = 0.0;
+		converged = true;
+
+		if (rhsNorm == 0.0) {
+			return new MyVector(n);
+		}
+
+		// r = b - A x0
+		if (initialGuess != null) {
+			for (int i = 0; i < n; i++) {
+				x[i] = initialGuess.get(i);
+			}
+			operator.multiply(x, q);
+		}
+
+		double rr = 0.0;
+		for (int i = 0; i < n; i++) {
+			r[i] = rhs.get(i) - (initialGuess != null ? q[i] : 0.0);
+			rr += r[i] * r[i];
+		}
+
+		residual = Math.sqrt(rr) / rhsNorm;
+		if (residual <= tolerance) {
+			return new MyVector(x);
+		}
+
+		precondition(r, z);
+		System.arraycopy(z, 0, p, 0, n);
+		double rz = dot(r, z);
+
+		converged = false;
+		while (iterations < maxIterations) {
+			operator.multiply(p, q);
+			double alpha = rz / dot(p, q);
+
+			rr = 0.0;
+			for (int i = 0; i < n; i++) {
+				x[i] += alpha * p[i];
+				r[i] -= alpha * q[i];
+				rr += r[i] * r[i];
+			}
+
+			iterations++;
+			residual = Math.sqrt(rr) / rhsNorm;
+			if (residual <= tolerance) {
+				converged = true;
+				break;
+			}
+
+			precondition(r, z);
+			double rzNew = dot(r, z);
+			double beta = rzNew / rz;
+			rz = rzNew;
+
+			for (int i = 0; i < n; i++) {
+				p[i] = z[i] + beta * p[i];
+			}
+		}
+
+		// a partial solution looks like any other, so it is not handed out
+		if (!converged) {
+			throw new ArithmeticException("conjugate gradient did not converge after " + iterations + " iterations, relative residual " + residual);
+		}
+		return new MyVector(x);
+	}
+
+	private void precondition(double[] r, double[] z) {
+		switch (preconditioner) {
+			case NONE -> System.arraycopy(r, 0, z, 0, r.length);
+			case JACOBI, BLOCK_JACOBI -> applyBlocks(r, z);
+			case INCOMPLETE_CHOLESKY -> applyIncompleteCholesky(r, z);
+		}
+	}
+
+	private void buildJacobi(boolean blocked) {
+		final int n = Node.DEGREES_OF_FREEDOM;
+		double[] blocks = operator.getNodeBlocks();
+		blockStarts = operator.getBlockStarts();
+		inverseBlocks = new double[blocks.length];
+
+		for (int b = 0; b < blocks.length; b += n * n) {
+			if (blocked) {
+				invert3x3(blocks, b, inverseBlocks);
+			} else {
+				for (int i = 0; i < n; i++) {
+					double d = blocks[b + i * n + i];
+					inverseBlocks[b + i * n + i] = d == 0.0 ? 1.0 : 1.0 / d;
+				}
+			}
+		}
+	}
+
+	// cofactor inverse of the block at offset, a singular block falls back to plain jacobi
+	private static void invert3x3(double[] m, int offset, double[] result) {
+		double a = m[offset],     b = m[offset + 1], c = m[offset + 2];
+		double d = m[offset + 3], e = m[offset + 4], f = m[offset + 5];
+		double g = m[offset + 6], h = m[offset + 7], k = m[offset + 8];
+
+		double c00 = e * k - f * h;
+		double c01 = c * h - b * k;
+		double c02 = b * f - c * e;
+		double det = a * c00 + d * c01 + g * c02;
+
+		if (Math.abs(det) <= 1e-300) {
+			for (int i = 0; i < 3; i++) {
+				double diag = m[offset + i * 4];
+				result[offset + i * 4] = diag == 0.0 ? 1.0 : 1.0 / diag;
+			}
+			return;
+		}
+
+		double inv = 1.0 / det;
+		result[offset]     = c00 * inv;
+		result[offset + 1] = c01 * inv;
+		result[offset + 2] = c02 * inv;
+		result[offset + 3] = (f * g - d * k) * inv;
+		result[offset + 4] = (a * k - c * g) * inv;
+		result[offset + 5] = (c * d - a * f) * inv;
+		result[offset + 6] = (d * h - e * g) * inv;
+		result[offset + 7] = (b * g - a * h) * inv;
+		result[offset + 8] = (a * e - b * d) * inv;
+	}
+
+	// the identity padding keeps the used corner of every inverse exact, so it is all that's read
+	private void applyBlocks(double[] r, double[] z) {
+		final int n = Node.DEGREES_OF_FREEDOM;
+		for (int b = 0; b < blockStarts.length - 1; b++) {
+			int first = blockStarts[b];
+			int m = blockStarts[b + 1] - first;
+			int offset = b * n * n;
+			for (int i = 0; i < m; i++) {
+				double sum = 0.0;
+				for (int j = 0; j < m; j++) {
+					sum += inverseBlocks[offset + i * n + j] * r[first + j];
+				}
+				z[first + i] = sum;
+			}
+		}
+	}
+
+	/*
+	 * IC(0): cholesky restricted to the pattern of the matrix. if a pivot turns non-positive
+	 * the diagonal is scaled up a little and the factorization is attempted again.
+	 */
+	private void buildIncompleteCholesky(SparseMatrix matrix) {
+		int size = matrix.getSize();
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+		double[] values = matrix.getValues();
+
+		lowerPointers = new int[size + 1];
+		for (int i = 0; i < size; i++) {
+			int count = 0;
+			for (int k = rowPointers[i]; k < rowPointers[i + 1] && columnIndices[k] <= i; k++) {
+				count++;
+			}
+			lowerPointers[i + 1] = lowerPointers[i] + count;
+		}
+
+		lowerColumns = new int[lowerPointers[size]];
+		lowerValues = new double[lowerPointers[size]];
+		for (int i = 0; i < size; i++) {
+			int k = rowPointers[i];
+			for (int l = lowerPointers[i]; l < lowerPointers[i + 1]; l++, k++) {
+				lowerColumns[l] = columnIndices[k];
+			}
+		}
+
+		double shift = 0.0;
+		while (!tryIncompleteCholesky(rowPointers, values, shift)) {
+			shift = shift == 0.0 ? 1e-3 : shift * 2.0;
+		}
+	}
+
+	private boolean tryIncompleteCholesky(int[] rowPointers, double[] values, double shift) {
+		int size = lowerPointers.length - 1;
+
+		for (int i = 0; i < size; i++) {
+			int start = lowerPointers[i];
+			int diag = lowerPointers[i + 1] - 1;
+
+			for (int l = start; l <= diag; l++) {
+				lowerValues[l] = values[rowPointers[i] + (l - start)];
+			}
+			lowerValues[diag] *= 1.0 + shift;
+
+			for (int l = start; l < diag; l++) {
+				int k = lowerColumns[l];
+
+				// sparse dot product of rows i and k over the columns before k
+				double sum = lowerValues[l];
+				int a = start;
+				int b = lowerPointers[k];
+				int bEnd = lowerPointers[k + 1] - 1;
+				while (a < l && b < bEnd) {
+					if (lowerColumns[a] == lowerColumns[b]) {
+						sum -= lowerValues[a++] * lowerValues[b++];
+					} else if (lowerColumns[a] < lowerColumns[b]) {
+						a++;
+					} else {
+						b++;
+					}
+				}
+
+				lowerValues[l] = sum / lowerValues[bEnd];
+			}
+
+			double d = lowerValues[diag];
+			for (int l = start; l < diag; l++) {
+				d -= lowerValues[l] * lowerValues[l];
+			}
+
+			if (d <= 0.0 || Double.isNaN(d)) {
+				return false;
+			}
+			lowerValues[diag] = Math.sqrt(d);
+		}
+
+		return true;
+	}
+
+	private void applyIncompleteCholesky(double[] r, double[] z) {
+		int size = r.length;
+
+		// L y = r
+		for (int i = 0; i < size; i++) {
+			int diag = lowerPointers[i + 1] - 1;
+			double sum = r[i];
+			for (int l = lowerPointers[i]; l < diag; l++) {
+				sum -= lowerValues[l] * z[lowerColumns[l]];
+			}
+			z[i] = sum / lowerValues[diag];
+		}
+
+		// L^T z = y
+		for (int i = size - 1; i >= 0; i--) {
+			int diag = lowerPointers[i + 1] - 1;
+			z[i] /= lowerValues[diag];
+			for (int l = lowerPointers[i]; l < diag; l++) {
+				z[lowerColumns[l]] -= lowerValues[l] * z[i];
+			}
+		}
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	public Preconditioner getPreconditioner() {
+		return preconditioner;
+	}
+
+	public void setPreconditioner(Preconditioner preconditioner) {
+		this.preconditioner = preconditioner;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public double getResidual() {
+		return residual;
+	}
+
+	public boolean isConverged() {
+		return converged;
+	}
+}
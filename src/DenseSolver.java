@@ -0,0 +1,67 @@
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+
+/*
+ * expands the system into a dense matrix and factorizes it once with ejml. the reduced
+ * stiffness matrix is symmetric positive definite, so cholesky is tried first and LU is
+ * only used if that fails.
+ */
+public class DenseSolver implements LinearSolver {
+	private int size;
+	private LinearSolverDense<DMatrixRMaj> decomposition;
+
+	@Override
+	public void factorize(SparseMatrix matrix) {
+		size = matrix.getSize();
+
+		DMatrixRMaj dense = new DMatrixRMaj(size, size);
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+		double[] values = matrix.getValues();
+		for (int row = 0; row < size; row++) {
+			for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+				dense.set(row, columnIndices[k], values[k]);
+			}
+		}
+
+		LinearSolverDense<DMatrixRMaj> cholesky = LinearSolverFactory_DDRM.chol(size);
+		DMatrixRMaj input = cholesky.modifiesA() ? dense.copy() : dense;
+		if (cholesky.setA(input)) {
+			decomposition = cholesky;
+			return;
+		}
+
+		decomposition = LinearSolverFactory_DDRM.lu(size);
+		if (!decomposition.setA(dense)) {
+			throw new ArithmeticException("matrix is singular");
+		}
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs) {
+		return solve(new MyVector[] { rhs })[0];
+	}
+
+	@Override
+	public MyVector[] solve(MyVector[] rhs) {
+		DMatrixRMaj b = new DMatrixRMaj(size, rhs.length);
+		for (int c = 0; c < rhs.length; c++) {
+			for (int i = 0; i < size; i++) {
+				b.set(i, c, rhs[c].get(i));
+			}
+		}
+
+		DMatrixRMaj x = new DMatrixRMaj(size, rhs.length);
+		decomposition.solve(b, x);
+
+		MyVector[] result = new MyVector[rhs.length];
+		for (int c = 0; c < rhs.length; c++) {
+			result[c] = new MyVector(size);
+			for (int i = 0; i < size; i++) {
+				result[c].set(i, x.get(i, c));
+			}
+		}
+		return result;
+	}
+}
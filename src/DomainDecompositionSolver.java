@@ -0,0 +1,494 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * direct solver that splits the node graph into subdomains by nested dissection
+ * separators and works on each one separately. the separator nodes form the interface,
+ * no entry of the matrix couples two different subdomains, so
+ *
+ *   S = K_gg - sum_i K_gi K_ii^-1 K_ig
+ *
+ * is all that ties them together. every subdomain is factorized on its own thread by a
+ * SparseCholeskySolver that retains the interface equations it touches, so its share of
+ * S is what is left of them once the interior is eliminated. S is then factorized sparse
+ * as well. a solve runs the subdomains forward, solves S for the interface and runs the
+ * subdomains backward for their interiors.
+ *
+ * the subdomains fit in a thread's cache where the whole factor does not, and they need
+ * no synchronization until S is put together.
+ */
+public class DomainDecompositionSolver implements LinearSolver {
+	private final int subdomainCount;
+	private final int threads;
+	private ForkJoinPool pool;
+
+	// pattern the partition was made for
+	private int[] matrixRowPointers;
+	private int[] matrixColumnIndices;
+
+	private Subdomain[] subdomains;
+
+	// global equation of every interface equation, and the interface index of every global one (or -1)
+	private int[] interfaceEquations;
+	private int[] interfaceIndex;
+
+	// S and, for each of its entries taken from K_gg, where that sits in the matrix (or -1)
+	private SparseMatrix schur;
+	private int[] schurSource;
+	private SparseCholeskySolver schurSolver;
+
+	// one subdomain's interior and its coupling to the interface
+	private static class Subdomain {
+		// global equation of every interior row, increasing
+		int[] equations;
+
+		// interface indices this subdomain couples to, increasing
+		int[] adjacent;
+
+		// K_ii with K_ig and K_gi around it, the adjacent interface equations last, and where
+		// each of its entries sits in the matrix
+		SparseMatrix local;
+		int[] source;
+		SparseCholeskySolver solver;
+	}
+
+	public DomainDecompositionSolver(int subdomainCount) {
+		this(subdomainCount, Runtime.getRuntime().availableProcessors());
+	}
+
+	public DomainDecompositionSolver(int subdomainCount, int threads) {
+		if (subdomainCount < 1) {
+			throw new IllegalArgumentException("need at least one subdomain, got " + subdomainCount);
+		}
+		this.subdomainCount = subdomainCount;
+		this.threads = Math.max(1, threads);
+	}
+
+	@Override
+	public void factorize(SparseMatrix matrix) {
+		if (subdomains == null || matrix.getRowPointers() != matrixRowPointers || matrix.getColumnIndices() != matrixColumnIndices) {
+			partition(matrix);
+		}
+
+		double[] values = matrix.getValues();
+		double[][] condensed = new double[subdomains.length][];
+		runSubdomains(i -> {
+			Subdomain domain = subdomains[i];
+			double[] localValues = domain.local.getValues();
+			for (int k = 0; k < localValues.length; k++) {
+				localValues[k] = values[domain.source[k]];
+			}
+			domain.solver.factorize(domain.local);
+
+			// K_gg is not part of the local matrix, what is left is -K_gi K_ii^-1 K_ig
+			condensed[i] = domain.adjacent.length > 0 ? domain.solver.getSchurComplement() : null;
+		});
+
+		if (schur == null) {
+			return;
+		}
+
+		// K_gg, then every subdomain's share in a fixed order so the result does not depend on timing
+		double[] schurValues = schur.getValues();
+		for (int k = 0; k < schurValues.length; k++) {
+			schurValues[k] = schurSource[k] >= 0 ? values[schurSource[k]] : 0.0;
+		}
+		for (int i = 0; i < subdomains.length; i++) {
+			int[] adjacent = subdomains[i].adjacent;
+			int m = adjacent.length;
+			for (int a = 0; a < m; a++) {
+				for (int b = 0; b < m; b++) {
+					schur.add(adjacent[a], adjacent[b], condensed[i][a * m + b]);
+				}
+			}
+		}
+		schurSolver.factorize(schur);
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs) {
+		return solve(new MyVector[] { rhs })[0];
+	}
+
+	@Override
+	public MyVector[] solve(MyVector[] rhs) {
+		int size = interfaceIndex.length;
+		int count = rhs.length;
+		int interfaceSize = interfaceEquations.length;
+
+		// forward through the subdomains, which leaves -K_gi K_ii^-1 b_i on the adjacent interface equations
+		double[][] work = new double[subdomains.length][];
+		runSubdomains(i -> {
+			Subdomain domain = subdomains[i];
+			MyVector[] local = new MyVector[count];
+			for (int c = 0; c < count; c++) {
+				local[c] = new MyVector(domain.local.getSize());
+				for (int r = 0; r < domain.equations.length; r++) {
+					local[c].set(r, rhs[c].get(domain.equations[r]));
+				}
+			}
+			work[i] = domain.solver.forward(local);
+		});
+
+		// the interface: S u_g = b_g - sum_i K_gi K_ii^-1 b_i
+		MyVector[] interfaceRhs = new MyVector[count];
+		for (int c = 0; c < count; c++) {
+			interfaceRhs[c] = new MyVector(interfaceSize);
+			for (int g = 0; g < interfaceSize; g++) {
+				interfaceRhs[c].set(g, rhs[c].get(interfaceEquations[g]));
+			}
+		}
+		for (int i = 0; i < subdomains.length; i++) {
+			int[] adjacent = subdomains[i].adjacent;
+			int n = subdomains[i].equations.length;
+			for (int a = 0; a < adjacent.length; a++) {
+				for (int c = 0; c < count; c++) {
+					interfaceRhs[c].set(adjacent[a], interfaceRhs[c].get(adjacent[a]) + work[i][(n + a) * count + c]);
+				}
+			}
+		}
+		MyVector[] interfaceSolution = interfaceSize > 0 ? schurSolver.solve(interfaceRhs) : interfaceRhs;
+
+		MyVector[] result = new MyVector[count];
+		for (int c = 0; c < count; c++) {
+			result[c] = new MyVector(size);
+			for (int g = 0; g < interfaceSize; g++) {
+				result[c].set(interfaceEquations[g], interfaceSolution[c].get(g));
+			}
+		}
+
+		// backward through the subdomains from the interface solution, each writes its own equations
+		runSubdomains(i -> {
+			Subdomain domain = subdomains[i];
+			int n = domain.equations.length;
+			double[] x = work[i];
+			for (int a = 0; a < domain.adjacent.length; a++) {
+				for (int c = 0; c < count; c++) {
+					x[(n + a) * count + c] = interfaceSolution[c].get(domain.adjacent[a]);
+				}
+			}
+
+			MyVector[] local = domain.solver.backward(x, count);
+			for (int c = 0; c < count; c++) {
+				for (int r = 0; r < n; r++) {
+					result[c].set(domain.equations[r], local[c].get(r));
+				}
+			}
+		});
+		return result;
+	}
+
+	private interface SubdomainTask {
+		void run(int subdomain);
+	}
+
+	private void runSubdomains(SubdomainTask task) {
+		if (threads == 1 || subdomains.length == 1) {
+			for (int i = 0; i < subdomains.length; i++) {
+				task.run(i);
+			}
+			return;
+		}
+
+		if (pool == null) {
+			pool = new ForkJoinPool(threads);
+		}
+		try {
+			ParallelLoop.run(pool, subdomains.length, 1, (from, to) -> {
+				for (int i = from; i < to; i++) {
+					task.run(i);
+				}
+			});
+		} catch (ArithmeticException e) {
+			// the pool hands back a copy without the message, the original is its cause
+			throw e.getCause() instanceof ArithmeticException original ? original : e;
+		}
+	}
+
+	/*
+	 * splits the equations by node into subdomains and interface, and sets up the pattern of
+	 * every K_ii, K_ig and of S. only depends on the sparsity pattern.
+	 */
+	private void partition(SparseMatrix matrix) {
+		int size = matrix.getSize();
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+		int[] blockStarts = matrix.getBlockStarts();
+		int blockCount = blockStarts.length - 1;
+
+		// nodes without free equations have no neighbours either, they are left out of the graph
+		SparseMatrix.BlockGraph graph = matrix.getBlockGraph();
+		int[] compact = new int[blockCount];
+		int vertexCount = 0;
+		for (int b = 0; b < blockCount; b++) {
+			compact[b] = blockStarts[b] < blockStarts[b + 1] ? vertexCount++ : -1;
+		}
+		int[] pointers = new int[vertexCount + 1];
+		int[] adjacency = new int[graph.pointers()[blockCount]];
+		for (int b = 0; b < blockCount; b++) {
+			if (compact[b] >= 0) {
+				int count = pointers[compact[b]];
+				for (int k = graph.pointers()[b]; k < graph.pointers()[b + 1]; k++) {
+					adjacency[count++] = compact[graph.adjacency()[k]];
+				}
+				pointers[compact[b] + 1] = count;
+			}
+		}
+		int[] vertexPart = Reordering.partition(vertexCount, pointers, adjacency, subdomainCount);
+
+		int parts = 0;
+		int[] part = new int[size];
+		int[] blockOf = new int[size];
+		for (int b = 0; b < blockCount; b++) {
+			for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+				part[i] = vertexPart[compact[b]];
+				blockOf[i] = b;
+				parts = Math.max(parts, part[i] + 1);
+			}
+		}
+
+		// local numbering: interface index for separator equations, interior row for the others
+		this.interfaceIndex = new int[size];
+		int[] local = new int[size];
+		int[] partSizes = new int[parts];
+		int interfaceSize = 0;
+		for (int i = 0; i < size; i++) {
+			if (part[i] < 0) {
+				interfaceIndex[i] = interfaceSize++;
+			} else {
+				interfaceIndex[i] = -1;
+				local[i] = partSizes[part[i]]++;
+			}
+		}
+		this.interfaceEquations = new int[interfaceSize];
+		for (int i = 0; i < size; i++) {
+			if (part[i] < 0) {
+				interfaceEquations[interfaceIndex[i]] = i;
+			}
+		}
+
+		this.subdomains = new Subdomain[parts];
+		for (int p = 0; p < parts; p++) {
+			subdomains[p] = new Subdomain();
+			subdomains[p].equations = new int[partSizes[p]];
+		}
+		for (int i = 0; i < size; i++) {
+			if (part[i] >= 0) {
+				subdomains[part[i]].equations[local[i]] = i;
+			}
+		}
+
+		int[] slot = new int[interfaceSize];
+		Arrays.fill(slot, -1);
+		for (int p = 0; p < parts; p++) {
+			buildSubdomain(subdomains[p], matrix, part, local, blockOf, slot, p);
+		}
+
+		this.matrixRowPointers = rowPointers;
+		this.matrixColumnIndices = columnIndices;
+		buildSchur(matrix, blockOf);
+	}
+
+	private void buildSubdomain(Subdomain domain, SparseMatrix matrix, int[] part, int[] local, int[] blockOf, int[] slot, int p) {
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+		int n = domain.equations.length;
+
+		// interface equations touched, in increasing order
+		int adjacentCount = 0;
+		int[] adjacent = new int[16];
+		for (int i : domain.equations) {
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				int g = interfaceIndex[columnIndices[k]];
+				if (g >= 0 && slot[g] < 0) {
+					slot[g] = 0;
+					if (adjacentCount == adjacent.length) {
+						adjacent = Arrays.copyOf(adjacent, adjacent.length * 2);
+					}
+					adjacent[adjacentCount++] = g;
+				}
+			}
+		}
+		domain.adjacent = Arrays.copyOf(adjacent, adjacentCount);
+		Arrays.sort(domain.adjacent);
+		for (int a = 0; a < adjacentCount; a++) {
+			slot[domain.adjacent[a]] = a;
+		}
+
+		// rows of the interior first, then those of the adjacent interface equations. the
+		// matrix's columns are sorted and both numberings keep their order, so every row of
+		// K_ii and K_ig stays sorted and K_ig comes after it
+		int m = adjacentCount;
+		int count = 0;
+		for (int i : domain.equations) {
+			count += rowPointers[i + 1] - rowPointers[i];
+		}
+		for (int a = 0; a < m; a++) {
+			int i = interfaceEquations[domain.adjacent[a]];
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				if (part[columnIndices[k]] == p) {
+					count++;
+				}
+			}
+		}
+
+		int[] localPointers = new int[n + m + 1];
+		int[] localColumns = new int[count];
+		domain.source = new int[count];
+		int next = 0;
+		for (int r = 0; r < n; r++) {
+			int i = domain.equations[r];
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				int col = columnIndices[k];
+				localColumns[next] = part[col] == p ? local[col] : n + slot[interfaceIndex[col]];
+				domain.source[next++] = k;
+			}
+			localPointers[r + 1] = next;
+		}
+		for (int a = 0; a < m; a++) {
+			int i = interfaceEquations[domain.adjacent[a]];
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				int col = columnIndices[k];
+				if (part[col] == p) {
+					localColumns[next] = local[col];
+					domain.source[next++] = k;
+				}
+			}
+			localPointers[n + a + 1] = next;
+		}
+		domain.local = new SparseMatrix(n + m, localPointers, localColumns);
+
+		// nodes stay together in the subdomain's own factorization, interface nodes included
+		int[] localStarts = new int[n + m + 1];
+		int blocks = 0;
+		for (int r = 1; r < n; r++) {
+			if (blockOf[domain.equations[r]] != blockOf[domain.equations[r - 1]]) {
+				localStarts[++blocks] = r;
+			}
+		}
+		for (int a = 0; a < m; a++) {
+			if (a == 0 ? n > 0 : blockOf[interfaceEquations[domain.adjacent[a]]] != blockOf[interfaceEquations[domain.adjacent[a - 1]]]) {
+				localStarts[++blocks] = n + a;
+			}
+		}
+		localStarts[++blocks] = n + m;
+		domain.local.setBlockStarts(Arrays.copyOf(localStarts, blocks + 1));
+		domain.solver = new SparseCholeskySolver(1, m);
+
+		for (int g : domain.adjacent) {
+			slot[g] = -1;
+		}
+	}
+
+	// pattern of S: K_gg and a dense block over the interface equations of each subdomain
+	private void buildSchur(SparseMatrix matrix, int[] blockOf) {
+		int interfaceSize = interfaceEquations.length;
+		if (interfaceSize == 0) {
+			this.schur = null;
+			this.schurSource = null;
+			this.schurSolver = null;
+			return;
+		}
+
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+
+		// subdomains adjacent to every interface equation
+		int[] domainPointers = new int[interfaceSize + 1];
+		for (Subdomain domain : subdomains) {
+			for (int g : domain.adjacent) {
+				domainPointers[g + 1]++;
+			}
+		}
+		for (int g = 0; g < interfaceSize; g++) {
+			domainPointers[g + 1] += domainPointers[g];
+		}
+		int[] domains = new int[domainPointers[interfaceSize]];
+		int[] next = Arrays.copyOf(domainPointers, interfaceSize);
+		for (int d = 0; d < subdomains.length; d++) {
+			for (int g : subdomains[d].adjacent) {
+				domains[next[g]++] = d;
+			}
+		}
+
+		int[] marker = new int[interfaceSize];
+		Arrays.fill(marker, -1);
+		int[] pointers = new int[interfaceSize + 1];
+		int[] columns = new int[16];
+		int count = 0;
+		for (int g = 0; g < interfaceSize; g++) {
+			int start = count;
+			int i = interfaceEquations[g];
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				int h = interfaceIndex[columnIndices[k]];
+				if (h >= 0 && marker[h] != g) {
+					marker[h] = g;
+					if (count == columns.length) {
+						columns = Arrays.copyOf(columns, columns.length * 2);
+					}
+					columns[count++] = h;
+				}
+			}
+			for (int p = domainPointers[g]; p < domainPointers[g + 1]; p++) {
+				for (int h : subdomains[domains[p]].adjacent) {
+					if (marker[h] != g) {
+						marker[h] = g;
+						if (count == columns.length) {
+							columns = Arrays.copyOf(columns, columns.length * 2);
+						}
+						columns[count++] = h;
+					}
+				}
+			}
+			Arrays.sort(columns, start, count);
+			pointers[g + 1] = count;
+		}
+
+		this.schur = new SparseMatrix(interfaceSize, pointers, Arrays.copyOf(columns, count));
+		this.schurSource = new int[count];
+		Arrays.fill(schurSource, -1);
+		for (int g = 0; g < interfaceSize; g++) {
+			int i = interfaceEquations[g];
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				int h = interfaceIndex[columnIndices[k]];
+				if (h >= 0) {
+					schurSource[Arrays.binarySearch(columns, pointers[g], pointers[g + 1], h)] = k;
+				}
+			}
+		}
+
+		// the separator nodes keep their equations together too
+		int[] starts = new int[interfaceSize + 1];
+		int blocks = 0;
+		for (int g = 1; g < interfaceSize; g++) {
+			if (blockOf[interfaceEquations[g]] != blockOf[interfaceEquations[g - 1]]) {
+				starts[++blocks] = g;
+			}
+		}
+		starts[++blocks] = interfaceSize;
+		schur.setBlockStarts(Arrays.copyOf(starts, blocks + 1));
+		this.schurSolver = new SparseCholeskySolver(threads);
+	}
+
+	public int getSubdomainCount() {
+		return subdomainCount;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	// size of the interface system after the last factorization
+	public int getInterfaceSize() {
+		return interfaceEquations == null ? 0 : interfaceEquations.length;
+	}
+
+	// interior equations of every subdomain after the last factorization
+	public int[] getSubdomainSizes() {
+		int[] sizes = new int[subdomains == null ? 0 : subdomains.length];
+		for (int i = 0; i < sizes.length; i++) {
+			sizes[i] = subdomains[i].equations.length;
+		}
+		return sizes;
+	}
+}
@@ -1,12 +1,148 @@
+import java.util.Arrays;
+
 public abstract class Element {
+	// section and material properties the stiffness is linear in, for sensitivities and sweeps
+	public enum Property {
+		YOUNGS_MODULUS,
+		AREA,
+		MOMENT_OF_INERTIA,
+		SHEAR_MODULUS,
+		THICKNESS
+	}
+
+	private static final Property[] NO_PROPERTIES = {};
+
 	protected final FESolver solver;
 
 	public Element(FESolver solver) {
 		this.solver = solver;
 	}
 
+	public static final int MATRIX_SIZE = 2 * Node.DEGREES_OF_FREEDOM;
+
 	public abstract Matrix getLocalMatrix();
 	public abstract Matrix getTransformationMatrix();
 
-	public abstract int getGlobalIndex(int index);
+	// writes T k T^T row by row into out[offset..offset + n^2), n = getDofCount(), without allocating
+	public abstract void getGlobalMatrix(double[] out, int offset);
+
+	/*
+	 * writes the mass matrix T m T^T the same way, consistent or lumped onto the diagonal.
+	 * elements without a density have none, which is the default.
+	 */
+	public void getGlobalMassMatrix(double[] out, int offset, boolean lumped) {
+		int n = getDofCount();
+		Arrays.fill(out, offset, offset + n * n, 0.0);
+	}
+
+	/*
+	 * internal force and tangent stiffness for the element's dof displacements, in global
+	 * directions like getGlobalMatrix, for geometrically nonlinear solves. tangent may be
+	 * null when only the force is needed. linear unless the element knows better.
+	 */
+	public void getInternalForce(double[] displacements, double[] force, double[] tangent) {
+		int n = getDofCount();
+		double[] matrix = tangent != null ? tangent : new double[n * n];
+		getGlobalMatrix(matrix, 0);
+		for (int i = 0; i < n; i++) {
+			double sum = 0.0;
+			for (int j = 0; j < n; j++) {
+				sum += matrix[i * n + j] * displacements[j];
+			}
+			force[i] = sum;
+		}
+	}
+
+	// the properties of this kind of element, none unless the element knows better
+	public Property[] getProperties() {
+		return NO_PROPERTIES;
+	}
+
+	public double getProperty(Property property) {
+		throw new IllegalArgumentException(getClass().getSimpleName() + " has no " + property);
+	}
+
+	// the same element between the same nodes with one property changed
+	public Element withProperty(Property property, double value) {
+		throw new IllegalArgumentException(getClass().getSimpleName() + " has no " + property);
+	}
+
+	// writes dK/d property like getGlobalMatrix, exact since the stiffness is linear in each property
+	public void getGlobalMatrixDerivative(Property property, double[] out, int offset) {
+		throw new IllegalArgumentException(getClass().getSimpleName() + " has no " + property);
+	}
+
+	public abstract int getNode(int index);
+
+	public int getNodeCount() {
+		return 2;
+	}
+
+	public int getDofCount() {
+		return getNodeCount() * Node.DEGREES_OF_FREEDOM;
+	}
+
+	// largest dof count of any of the elements, for sizing scratch space
+	public static int getMaxDofCount(Iterable<Element> elements) {
+		int max = MATRIX_SIZE;
+		for (var elem : elements) {
+			max = Math.max(max, elem.getDofCount());
+		}
+		return max;
+	}
+
+	public int getGlobalIndex(int index) {
+		int node = getNode(index / Node.DEGREES_OF_FREEDOM);
+		int variable = index % Node.DEGREES_OF_FREEDOM;
+		return solver.getGlobalIndex(node, variable);
+	}
+
+	/*
+	 * closed form of T k T^T for a two node element whose local matrix has the layout
+	 *
+	 *   [  a  0  0 -a  0  0 ]
+	 *   [  0  b  d  0 -b  d ]
+	 *   [  0  d  e  0 -d  f ]
+	 *   [ -a  0  0  a  0  0 ]
+	 *   [  0 -b -d  0  b -d ]
+	 *   [  0  d  f  0 -d  e ]
+	 *
+	 * where c and s are the direction cosines of the element axis.
+	 */
+	protected static void writeGlobalMatrix(double[] out, int offset, double c, double s, double a, double b, double d, double e, double f) {
+		double xx = a * c * c + b * s * s;
+		double yy = a * s * s + b * c * c;
+		double xy = (a - b) * c * s;
+		double sd = s * d;
+		double cd = c * d;
+
+		int o = offset;
+		out[o]      =  xx; out[o + 1]  =  xy; out[o + 2]  = -sd; out[o + 3]  = -xx; out[o + 4]  = -xy; out[o + 5]  = -sd;
+		out[o + 6]  =  xy; out[o + 7]  =  yy; out[o + 8]  =  cd; out[o + 9]  = -xy; out[o + 10] = -yy; out[o + 11] =  cd;
+		out[o + 12] = -sd; out[o + 13] =  cd; out[o + 14] =   e; out[o + 15] =  sd; out[o + 16] = -cd; out[o + 17] =   f;
+		out[o + 18] = -xx; out[o + 19] = -xy; out[o + 20] =  sd; out[o + 21] =  xx; out[o + 22] =  xy; out[o + 23] =  sd;
+		out[o + 24] = -xy; out[o + 25] = -yy; out[o + 26] = -cd; out[o + 27] =  xy; out[o + 28] =  yy; out[o + 29] = -cd;
+		out[o + 30] = -sd; out[o + 31] =  cd; out[o + 32] =   f; out[o + 33] =  sd; out[o + 34] = -cd; out[o + 35] =   e;
+	}
+
+	// turns a two node element's local matrix in out[offset..offset + 36) into T m T^T in place
+	protected static void rotateToGlobal(double[] out, int offset, double c, double s) {
+		final int n = MATRIX_SIZE;
+		for (int k = 0; k < n; k += Node.DEGREES_OF_FREEDOM) {
+			for (int j = 0; j < n; j++) {
+				int x = offset + k * n + j;
+				double u = out[x];
+				double v = out[x + n];
+				out[x] = c * u - s * v;
+				out[x + n] = s * u + c * v;
+			}
+			for (int i = 0; i < n; i++) {
+				int x = offset + i * n + k;
+				double u = out[x];
+				double v = out[x + 1];
+				out[x] = c * u - s * v;
+				out[x + 1] = s * u + c * v;
+			}
+		}
+	}
 }
@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * applies the stiffness matrix of the free dofs element by element without ever
+ * assembling it. prescribed dofs have no equation and are simply left out.
+ */
+public class ElementOperator implements LinearOperator {
+	private final ArrayList<Element> elements;
+	private final int[] equations;
+	private final int size;
+	private final int[] blockStarts;
+
+	// scratch space, this operator is meant to be used from a single thread
+	private final double[] globalMatrix;
+	private final double[] local;
+	private final int[] localEquations;
+
+	// equations maps every global dof to its equation or -1, blockStarts groups them by node
+	public ElementOperator(ArrayList<Element> elements, int[] equations, int size, int[] blockStarts) {
+		this.elements = elements;
+		this.equations = equations;
+		this.size = size;
+		this.blockStarts = blockStarts;
+
+		int maxSize = Element.getMaxDofCount(elements);
+		this.globalMatrix = new double[maxSize * maxSize];
+		this.local = new double[maxSize];
+		this.localEquations = new int[maxSize];
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public void multiply(double[] x, double[] y) {
+		Arrays.fill(y, 0, size, 0.0);
+
+		for (var elem : elements) {
+			final int n = elem.getDofCount();
+			elem.getGlobalMatrix(globalMatrix, 0);
+			for (int j = 0; j < n; j++) {
+				int col = equations[elem.getGlobalIndex(j)];
+				localEquations[j] = col;
+				local[j] = col < 0 ? 0.0 : x[col];
+			}
+
+			for (int i = 0; i < n; i++) {
+				int row = localEquations[i];
+				if (row < 0) {
+					continue;
+				}
+
+				double sum = 0.0;
+				for (int j = 0; j < n; j++) {
+					sum += globalMatrix[i * n + j] * local[j];
+				}
+				y[row] += sum;
+			}
+		}
+	}
+
+	@Override
+	public int[] getBlockStarts() {
+		return blockStarts;
+	}
+
+	@Override
+	public double[] getNodeBlocks() {
+		final int n = Node.DEGREES_OF_FREEDOM;
+		int count = blockStarts.length - 1;
+		double[] blocks = new double[count * n * n];
+
+		for (var elem : elements) {
+			final int elementSize = elem.getDofCount();
+			elem.getGlobalMatrix(globalMatrix, 0);
+			for (int i = 0; i < elementSize; i++) {
+				int row = equations[elem.getGlobalIndex(i)];
+				if (row < 0) {
+					continue;
+				}
+
+				// the free dofs of a node are consecutive, starting at its block start
+				int block = elem.getGlobalIndex(i) / n;
+				int first = blockStarts[block];
+				for (int j = 0; j < elementSize; j++) {
+					int col = equations[elem.getGlobalIndex(j)];
+					if (col >= 0 && elem.getGlobalIndex(j) / n == block) {
+						blocks[block * n * n + (row - first) * n + (col - first)] += globalMatrix[i * elementSize + j];
+					}
+				}
+			}
+		}
+
+		for (int b = 0; b < count; b++) {
+			for (int i = blockStarts[b + 1] - blockStarts[b]; i < n; i++) {
+				blocks[b * n * n + i * n + i] = 1.0;
+			}
+		}
+
+		return blocks;
+	}
+}
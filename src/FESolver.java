@@ -1,209 +1,1027 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 public class FESolver {
 
-	private ArrayList<Node> nodes;
+	private NodeStore nodes;
 	private ArrayList<Element> elements;
 
 	private BoundaryConditions boundaryConditions;
-	private BoundaryConditions forces;
 
-	private Matrix stiffnessMatrix;
+	// ids of the nodes listed under #Interface, when this model is a substructure
+	private ArrayList<Integer> interfaceNodes;
+	private LinkedHashMap<String, BoundaryConditions> loadCases;
+
+	// transient analysis: time stepping if given, rayleigh damping C = massDamping M + stiffnessDamping K,
+	// and the time history of the load cases that have one
+	private TransientAnalysis.TimeStepping timeStepping;
+	private double massDamping;
+	private double stiffnessDamping;
+	private LinkedHashMap<String, TransientAnalysis.Amplitude> amplitudes;
+
+	private SparseMatrix stiffnessMatrix;
+	private LinearSolver linearSolver;
+	private boolean factorized;
+
+	// element changes applied on top of the factorization, and how far they may go before refactorizing
+	private LowRankUpdate lowRankUpdate;
+	private int maxUpdateRank;
+
+	// position of every node in the dof numbering
+	private int[] nodeOrder;
+
+	// equation of every dof, -1 where the displacement is prescribed
+	private int[] equations;
+	private int freeCount;
+	private double[] prescribedValues;
+
+	// K_fp u_p for the prescribed displacements, null if they are all zero
+	private double[] prescribedLoad;
+
+	// first equation of every node (in dof order), for block preconditioners
+	private int[] blockStarts;
+
+	// skip assembly and let the (iterative) solver apply the elements directly
+	private boolean matrixFree;
+
+	private int assemblyThreads;
+	private ForkJoinPool assemblyPool;
 
 	private String currentlyLoadedFile;
 
+	private final SolverMetrics metrics;
+	private SolverListener listener;
+	private boolean verbose;
+
 	public FESolver() {
 		this.stiffnessMatrix = null;
+		this.linearSolver = new DenseSolver();
+		this.factorized = false;
+		this.lowRankUpdate = null;
+		this.maxUpdateRank = 60;
+		this.loadCases = new LinkedHashMap<>();
+		this.amplitudes = new LinkedHashMap<>();
+		this.interfaceNodes = new ArrayList<>();
+		this.assemblyThreads = 1;
+		this.assemblyPool = null;
+		this.metrics = new SolverMetrics();
+		this.listener = null;
+		this.verbose = false;
 	}
 
 	public void buildMatrix() {
-		this.stiffnessMatrix = new Matrix(nodes.size() * Node.DEGREES_OF_FREEDOM);
+		applyBoundaryConditions();
+		assembleMatrix();
+	}
+
+	/*
+	 * numbers the nodes and splits the dofs into free and prescribed ones. only the free
+	 * dofs get an equation, prescribed displacements are moved to the right hand side.
+	 */
+	public void applyBoundaryConditions() {
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.CONSTRAIN, "Applying boundary conditions...");
+
+		// number the nodes so that connected ones end up close together
+		renumberNodes();
+		numberEquations();
+
+		this.stiffnessMatrix = null;
+		this.factorized = false;
+		this.lowRankUpdate = null;
+
+		endPhase(phase);
+	}
+
+	// assembles the stiffness matrix of the free dofs, has to follow applyBoundaryConditions
+	public void assembleMatrix() {
+		if (equations == null) {
+			throw new IllegalStateException("boundary conditions have to be applied before assembly");
+		}
+
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.ASSEMBLE, "Assembling stiffness matrix...");
+		this.factorized = false;
+		this.lowRankUpdate = null;
+
+		if (matrixFree) {
+			this.stiffnessMatrix = null;
+			metrics.setSystemSize(freeCount, 0);
+			endPhase(phase);
+			return;
+		}
+
+		// work out which entries can be non-zero
+		this.stiffnessMatrix = buildSparsityPattern(freeCount);
+		stiffnessMatrix.setBlockStarts(blockStarts);
 
 		// set up the stiffness matrix
-		System.out.println("Assembling stiffness matrix...");
+		if (assemblyThreads > 1) {
+			assembleParallel();
+		} else {
+			int maxSize = Element.getMaxDofCount(elements);
+			double[] globalMatrix = new double[maxSize * maxSize];
+			for (var elem : elements) {
+				elem.getGlobalMatrix(globalMatrix, 0);
+				scatter(stiffnessMatrix, elem, globalMatrix);
+			}
+		}
 
+		metrics.setSystemSize(freeCount, stiffnessMatrix.getNonZeroCount());
+		endPhase(phase);
+	}
+
+	/*
+	 * mass matrix of the free dofs, consistent or lumped, on the pattern of the stiffness
+	 * matrix since every element couples the same dofs in both. has to follow assembleMatrix.
+	 */
+	public SparseMatrix assembleMassMatrix(boolean lumped) {
+		if (stiffnessMatrix == null) {
+			throw new IllegalStateException("the mass matrix needs an assembled stiffness matrix");
+		}
+
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.ASSEMBLE, "Assembling mass matrix...");
+		SparseMatrix massMatrix = new SparseMatrix(freeCount, stiffnessMatrix.getRowPointers(), stiffnessMatrix.getColumnIndices());
+		massMatrix.setBlockStarts(blockStarts);
+
+		int maxSize = Element.getMaxDofCount(elements);
+		double[] globalMatrix = new double[maxSize * maxSize];
 		for (var elem : elements) {
-			Matrix localMatrix = elem.getLocalMatrix();
-			Matrix localTransform = elem.getTransformationMatrix();
-			Matrix globalMatrix = localTransform.mul(localMatrix).mul(localTransform.transpose());
-			for (int i = 0; i < globalMatrix.getSize(); i++) {
-				for (int j = 0; j < globalMatrix.getSize(); j++) {
-					int row = elem.getGlobalIndex(j);
-					int col = elem.getGlobalIndex(i);
-					stiffnessMatrix.add(col, row, globalMatrix.get(j, i));
+			elem.getGlobalMassMatrix(globalMatrix, 0, lumped);
+			scatter(massMatrix, elem, globalMatrix);
+		}
+
+		endPhase(phase);
+		return massMatrix;
+	}
+
+	/*
+	 * internal forces of the free dofs for the displacements u of the free dofs, with the
+	 * prescribed ones at prescribedFactor times their values, and the tangent stiffness on
+	 * the pattern of the stiffness matrix unless it is null. for geometrically nonlinear
+	 * solves, has to follow assembleMatrix.
+	 */
+	void assembleInternalForces(double[] u, double prescribedFactor, double[] internalForce, SparseMatrix tangent) {
+		int maxSize = Element.getMaxDofCount(elements);
+		double[] displacements = new double[maxSize];
+		double[] force = new double[maxSize];
+		double[] globalMatrix = tangent != null ? new double[maxSize * maxSize] : null;
+
+		Arrays.fill(internalForce, 0.0);
+		if (tangent != null) {
+			Arrays.fill(tangent.getValues(), 0.0);
+		}
+
+		for (var elem : elements) {
+			final int n = elem.getDofCount();
+			gatherDisplacements(elem, u, prescribedFactor, displacements);
+
+			elem.getInternalForce(displacements, force, globalMatrix);
+			for (int i = 0; i < n; i++) {
+				int row = getEquation(elem, i);
+				if (row >= 0) {
+					internalForce[row] += force[i];
 				}
 			}
+			if (tangent != null) {
+				scatter(tangent, elem, globalMatrix);
+			}
 		}
+	}
 
-		// apply the boundary conditions
-		System.out.println("Applying boundary conditions...");
-		for (int i = 0; i < stiffnessMatrix.getSize(); i++) {
-			for (var bc : boundaryConditions.getConditions()) {
-				int offset = bc.variable();
-				int node = bc.id();
-				int idx = (node * Node.DEGREES_OF_FREEDOM) + offset;
-				if (i == idx) {
-					stiffnessMatrix.clearRow(i);
-					stiffnessMatrix.set(i, i, 1.0);
-					break;
+	// an element's dof displacements from those of the free dofs, the prescribed ones scaled by prescribedFactor
+	void gatherDisplacements(Element elem, double[] free, double prescribedFactor, double[] out) {
+		final int n = elem.getDofCount();
+		for (int i = 0; i < n; i++) {
+			int dof = elem.getGlobalIndex(i);
+			out[i] = equations[dof] >= 0 ? free[equations[dof]] : prescribedFactor * prescribedValues[dof];
+		}
+	}
+
+	// adds an element matrix into the free rows and columns
+	private void scatter(SparseMatrix matrix, Element elem, double[] globalMatrix) {
+		final int n = elem.getDofCount();
+		for (int i = 0; i < n; i++) {
+			int row = getEquation(elem, i);
+			if (row < 0) {
+				continue;
+			}
+			for (int j = 0; j < n; j++) {
+				int col = getEquation(elem, j);
+				if (col >= 0) {
+					matrix.add(row, col, globalMatrix[i * n + j]);
+				}
+			}
+		}
+	}
+
+	private void numberEquations() {
+		int nodeCount = nodes.size();
+		int size = nodeCount * Node.DEGREES_OF_FREEDOM;
+
+		this.equations = new int[size];
+		this.prescribedValues = new double[size];
+		for (var bc : boundaryConditions.getConditions()) {
+			int dof = getGlobalIndex(getNodeIndex(bc.id()), bc.variable());
+			equations[dof] = -1;
+			prescribedValues[dof] = bc.value();
+		}
+
+		// free dofs keep the order of the node numbering, so the dofs of a node stay together
+		this.blockStarts = new int[nodeCount + 1];
+		int count = 0;
+		for (int dof = 0; dof < size; dof++) {
+			if (dof % Node.DEGREES_OF_FREEDOM == 0) {
+				blockStarts[dof / Node.DEGREES_OF_FREEDOM] = count;
+			}
+			equations[dof] = equations[dof] < 0 ? -1 : count++;
+		}
+		blockStarts[nodeCount] = count;
+		this.freeCount = count;
+
+		computePrescribedLoad();
+	}
+
+	// K_fp u_p, subtracted from every right hand side
+	private void computePrescribedLoad() {
+		this.prescribedLoad = null;
+
+		int maxSize = Element.getMaxDofCount(elements);
+		double[] globalMatrix = new double[maxSize * maxSize];
+		for (var elem : elements) {
+			addPrescribedLoad(elem, 1.0, globalMatrix);
+		}
+	}
+
+	private void addPrescribedLoad(Element elem, double sign, double[] globalMatrix) {
+		final int n = elem.getDofCount();
+
+		boolean displaced = false;
+		for (int j = 0; j < n; j++) {
+			int dof = elem.getGlobalIndex(j);
+			displaced |= equations[dof] < 0 && prescribedValues[dof] != 0.0;
+		}
+		if (!displaced) {
+			return;
+		}
+
+		if (prescribedLoad == null) {
+			prescribedLoad = new double[freeCount];
+		}
+
+		elem.getGlobalMatrix(globalMatrix, 0);
+		for (int i = 0; i < n; i++) {
+			int row = getEquation(elem, i);
+			if (row < 0) {
+				continue;
+			}
+			for (int j = 0; j < n; j++) {
+				int dof = elem.getGlobalIndex(j);
+				if (equations[dof] < 0) {
+					prescribedLoad[row] += sign * globalMatrix[i * n + j] * prescribedValues[dof];
 				}
 			}
 		}
 	}
 
+	// the model changed shape, everything numbered or assembled for it is stale
+	private void invalidateSystem() {
+		this.equations = null;
+		this.prescribedLoad = null;
+		this.stiffnessMatrix = null;
+		this.factorized = false;
+		this.lowRankUpdate = null;
+	}
+
+	// equation of an element's local dof, -1 if it is prescribed
+	private int getEquation(Element elem, int index) {
+		return equations[elem.getGlobalIndex(index)];
+	}
+
+	int getEquation(int node, int variable) {
+		return equations[getGlobalIndex(node, variable)];
+	}
+
+	private static final int ASSEMBLY_CHUNK = 1 << 16;
+
+	/*
+	 * element matrices are computed in parallel, then every task scatters into its own
+	 * range of rows. each row visits its elements in list order, so every entry is summed
+	 * in exactly the same order as the serial loop and the result is bit-identical.
+	 */
+	private void assembleParallel() {
+		// every element gets a slot of the largest size, smaller ones leave the rest unused
+		final int elementSize = Element.getMaxDofCount(elements);
+		final int size = stiffnessMatrix.getSize();
+		final int chunk = Math.min(ASSEMBLY_CHUNK, elements.size());
+
+		double[] elementMatrices = new double[chunk * elementSize * elementSize];
+		int[] elementIndices = new int[chunk * elementSize];
+		int[] elementSizes = new int[chunk];
+		int[] rowPointers = new int[size + 1];
+		int[] rowEntries = new int[chunk * elementSize];
+
+		for (int first = 0; first < elements.size(); first += chunk) {
+			final int base = first;
+			final int count = Math.min(chunk, elements.size() - first);
+
+			ParallelLoop.run(assemblyPool, count, 64, (from, to) -> {
+				for (int e = from; e < to; e++) {
+					Element elem = elements.get(base + e);
+					int n = elem.getDofCount();
+					elementSizes[e] = n;
+					elem.getGlobalMatrix(elementMatrices, e * elementSize * elementSize);
+					for (int a = 0; a < elementSize; a++) {
+						elementIndices[e * elementSize + a] = a < n ? getEquation(elem, a) : -1;
+					}
+				}
+			});
+
+			// (element, local row) pairs touching every free row, in element order
+			Arrays.fill(rowPointers, 0);
+			for (int k = 0; k < count * elementSize; k++) {
+				if (elementIndices[k] >= 0) {
+					rowPointers[elementIndices[k] + 1]++;
+				}
+			}
+			for (int row = 0; row < size; row++) {
+				rowPointers[row + 1] += rowPointers[row];
+			}
+			int[] next = Arrays.copyOf(rowPointers, size);
+			for (int k = 0; k < count * elementSize; k++) {
+				if (elementIndices[k] >= 0) {
+					rowEntries[next[elementIndices[k]]++] = k;
+				}
+			}
+
+			ParallelLoop.run(assemblyPool, size, 256, (from, to) -> {
+				for (int row = from; row < to; row++) {
+					for (int p = rowPointers[row]; p < rowPointers[row + 1]; p++) {
+						int k = rowEntries[p];
+						int e = k / elementSize;
+						int n = elementSizes[e];
+						int offset = e * elementSize * elementSize + (k - e * elementSize) * n;
+						for (int b = 0; b < n; b++) {
+							int col = elementIndices[e * elementSize + b];
+							if (col >= 0) {
+								stiffnessMatrix.add(row, col, elementMatrices[offset + b]);
+							}
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private void renumberNodes() {
+		int nodeCount = nodes.size();
+
+		// node adjacency of the element graph
+		int[] pointers = new int[nodeCount + 1];
+		for (var elem : elements) {
+			for (int i = 0; i < elem.getNodeCount(); i++) {
+				pointers[elem.getNode(i) + 1] += elem.getNodeCount() - 1;
+			}
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			pointers[i + 1] += pointers[i];
+		}
+
+		int[] adjacency = new int[pointers[nodeCount]];
+		int[] next = Arrays.copyOf(pointers, nodeCount);
+		for (var elem : elements) {
+			for (int i = 0; i < elem.getNodeCount(); i++) {
+				for (int j = 0; j < elem.getNodeCount(); j++) {
+					if (i != j) {
+						adjacency[next[elem.getNode(i)]++] = elem.getNode(j);
+					}
+				}
+			}
+		}
+
+		this.nodeOrder = Reordering.reverseCuthillMcKee(nodeCount, pointers, adjacency);
+	}
+
+	public int getGlobalIndex(int node, int variable) {
+		return nodeOrder[node] * Node.DEGREES_OF_FREEDOM + variable;
+	}
+
+	private SparseMatrix buildSparsityPattern(int size) {
+		// count the (possibly repeated) entries of every row, the diagonal is always
+		// included so that every row has a pivot entry even if no element reaches it
+		int[] rowPointers = new int[size + 1];
+		Arrays.fill(rowPointers, 1, size + 1, 1);
+		for (var elem : elements) {
+			final int elementSize = elem.getDofCount();
+			int freeColumns = 0;
+			for (int j = 0; j < elementSize; j++) {
+				if (getEquation(elem, j) >= 0) {
+					freeColumns++;
+				}
+			}
+			for (int i = 0; i < elementSize; i++) {
+				int row = getEquation(elem, i);
+				if (row >= 0) {
+					rowPointers[row + 1] += freeColumns;
+				}
+			}
+		}
+		for (int row = 0; row < size; row++) {
+			rowPointers[row + 1] += rowPointers[row];
+		}
+
+		// scatter the column indices of every element into its rows
+		int[] columnIndices = new int[rowPointers[size]];
+		int[] next = Arrays.copyOf(rowPointers, size);
+		for (int row = 0; row < size; row++) {
+			columnIndices[next[row]++] = row;
+		}
+		for (var elem : elements) {
+			final int elementSize = elem.getDofCount();
+			for (int i = 0; i < elementSize; i++) {
+				int row = getEquation(elem, i);
+				if (row < 0) {
+					continue;
+				}
+				for (int j = 0; j < elementSize; j++) {
+					int col = getEquation(elem, j);
+					if (col >= 0) {
+						columnIndices[next[row]++] = col;
+					}
+				}
+			}
+		}
+
+		// sort each row and squeeze out the duplicates
+		int count = 0;
+		int start = 0;
+		for (int row = 0; row < size; row++) {
+			int end = rowPointers[row + 1];
+			Arrays.sort(columnIndices, start, end);
+			rowPointers[row] = count;
+			for (int k = start; k < end; k++) {
+				if (k == start || columnIndices[k] != columnIndices[k - 1]) {
+					columnIndices[count++] = columnIndices[k];
+				}
+			}
+
+			start = end;
+		}
+		rowPointers[size] = count;
+
+		return new SparseMatrix(size, rowPointers, Arrays.copyOf(columnIndices, count));
+	}
+
 	public ArrayList<Node> solveDisplacements() {
+		return solveDisplacements(null);
+	}
 
-		// build the force vector
-		System.out.println("Building force vector...");
-		MyVector forceVector = new MyVector(stiffnessMatrix.getSize());
-		for (var force : forces.getConditions()) {
-			int node = force.id();
-			double magnitude = force.value();
-			int variable = force.variable();
-			int idx = node*Node.DEGREES_OF_FREEDOM + variable;
-			forceVector.set(idx, magnitude);
+	/*
+	 * initialGuess holds a displacement per node in node order, as returned by an earlier
+	 * solve. iterative solvers start from it, e.g. after refining a mesh.
+	 */
+	public ArrayList<Node> solveDisplacements(ArrayList<Node> initialGuess) {
+		if (initialGuess != null && initialGuess.size() != nodes.size()) {
+			throw new IllegalArgumentException("initial guess has " + initialGuess.size() + " nodes, the model has " + nodes.size());
 		}
 
-		// solve
-		System.out.println("Solving...");
-		MyVector displacementVector = stiffnessMatrix.solve(forceVector);
+		factorize();
+
+		// build the force vector and solve
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.SOLVE, "Solving...");
+		MyVector forceVector = buildForceVector(getForces());
+		MyVector[] guess = initialGuess != null ? new MyVector[] { buildDisplacementVector(initialGuess) } : null;
+		MyVector displacementVector = solveSystem(new MyVector[] { forceVector }, guess)[0];
+		endPhase(phase);
 
 		// results
-		System.out.println("Accumulating results...");
-		ArrayList<Node> result = new ArrayList<>();
-		for (int i = 0; i < displacementVector.getSize(); i += 3) {
-			double x = displacementVector.get(i + 0);
-			double y = displacementVector.get(i + 1);
-			double t = displacementVector.get(i + 2);
-			result.add(new Node(i / Node.DEGREES_OF_FREEDOM, x, y, t));
+		phase = beginPhase(SolverPhase.POST_PROCESS, "Accumulating results...");
+		ArrayList<Node> result = collectDisplacements(displacementVector);
+		endPhase(phase);
+		return result;
+	}
+
+	// forces, stresses and their statistics for every element, see Results
+	public Results computeResults(ArrayList<Node> displacements) {
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.POST_PROCESS, "Computing element results...");
+		Results results = new Results(this, displacements);
+		endPhase(phase);
+		return results;
+	}
+
+	/*
+	 * solves every load case against the same factorization, all right hand sides at once.
+	 */
+	public LinkedHashMap<String, ArrayList<Node>> solveLoadCases() {
+		factorize();
+
+		String[] names = loadCases.keySet().toArray(new String[0]);
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.SOLVE, "Solving " + names.length + " load cases...");
+		MyVector[] forceVectors = new MyVector[names.length];
+		for (int i = 0; i < names.length; i++) {
+			forceVectors[i] = buildForceVector(loadCases.get(names[i]));
+		}
+		MyVector[] displacementVectors = solveSystem(forceVectors, null);
+		endPhase(phase);
+
+		phase = beginPhase(SolverPhase.POST_PROCESS, "Accumulating results...");
+		LinkedHashMap<String, ArrayList<Node>> result = new LinkedHashMap<>();
+		for (int i = 0; i < names.length; i++) {
+			result.put(names[i], collectDisplacements(displacementVectors[i]));
+		}
+		endPhase(phase);
+		return result;
+	}
+
+	// factorizes the stiffness matrix unless the current one is still valid
+	public void factorize() {
+		if (factorized) {
+			return;
+		}
+		if (equations == null || (stiffnessMatrix == null && !matrixFree)) {
+			throw new IllegalStateException("the model has not been assembled, call buildMatrix first");
+		}
+
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.FACTORIZE, "Factorizing...");
+
+		if (matrixFree) {
+			if (!(linearSolver instanceof ConjugateGradientSolver cg)) {
+				throw new IllegalStateException("matrix-free solving needs a ConjugateGradientSolver");
+			}
+			cg.setOperator(new ElementOperator(elements, equations, freeCount, blockStarts));
+		} else {
+			linearSolver.factorize(stiffnessMatrix);
+		}
+
+		factorized = true;
+		lowRankUpdate = null;
+		endPhase(phase);
+	}
+
+	MyVector[] solveSystem(MyVector[] rhs, MyVector[] initialGuesses) {
+		factorize();
+
+		MyVector[] result;
+		try {
+			if (initialGuesses == null) {
+				result = linearSolver.solve(rhs);
+			} else {
+				result = new MyVector[rhs.length];
+				for (int i = 0; i < rhs.length; i++) {
+					result[i] = linearSolver.solve(rhs[i], initialGuesses[i]);
+				}
+			}
+		} finally {
+			// recorded for a solve that did not converge too, which throws
+			if (linearSolver instanceof ConjugateGradientSolver cg) {
+				metrics.setIterativeResult(cg.getIterations(), cg.getResidual(), cg.isConverged());
+			}
+		}
+
+		if (linearSolver instanceof MixedPrecisionSolver mixed) {
+			metrics.setIterativeResult(mixed.getIterations(), mixed.getResidual(), mixed.isConverged());
+			if (mixed.usedFallback()) {
+				log("Refinement of the float factorization did not converge, " + mixed.getFallbackCount() + " of " + mixed.getSolveCount() + " solves fell back to double");
+			}
+		}
+
+		return lowRankUpdate != null ? lowRankUpdate.correct(result) : result;
+	}
+
+	/*
+	 * swaps in an element with new properties between the same nodes. with a direct solver
+	 * the change is applied as a low rank correction to the existing factorization, until
+	 * the accumulated rank passes maxUpdateRank and a full refactorization becomes cheaper.
+	 */
+	public void replaceElement(int index, Element element) {
+		Element old = elements.get(index);
+		if (old.getNodeCount() != element.getNodeCount()) {
+			throw new IllegalArgumentException("replacement element has to connect the same nodes");
+		}
+		for (int i = 0; i < old.getNodeCount(); i++) {
+			if (old.getNode(i) != element.getNode(i)) {
+				throw new IllegalArgumentException("replacement element has to connect the same nodes");
+			}
+		}
+
+		elements.set(index, element);
+
+		if (equations == null) {
+			return;
+		}
+
+		final int n = element.getDofCount();
+		double[] delta = new double[n * n];
+		double[] before = new double[n * n];
+
+		// the element may pull on prescribed dofs
+		addPrescribedLoad(old, -1.0, before);
+		addPrescribedLoad(element, 1.0, delta);
+
+		if (stiffnessMatrix == null) {
+			return;
+		}
+
+		element.getGlobalMatrix(delta, 0);
+		old.getGlobalMatrix(before, 0);
+
+		// only the free rows and columns are part of the matrix
+		int[] dofs = new int[n];
+		for (int i = 0; i < n; i++) {
+			dofs[i] = getEquation(element, i);
 		}
 
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				delta[i * n + j] -= before[i * n + j];
+				if (dofs[i] >= 0 && dofs[j] >= 0) {
+					stiffnessMatrix.add(dofs[i], dofs[j], delta[i * n + j]);
+				}
+			}
+		}
+
+		// iterative solvers and the refining mixed precision one work on the matrix itself, which
+		// already holds the change. nothing to update either if it was never factorized
+		if (!factorized || linearSolver instanceof ConjugateGradientSolver || linearSolver instanceof MixedPrecisionSolver) {
+			factorized = false;
+			return;
+		}
+
+		if (lowRankUpdate == null) {
+			lowRankUpdate = new LowRankUpdate(linearSolver, stiffnessMatrix.getSize());
+		}
+		lowRankUpdate.add(dofs, delta);
+
+		if (lowRankUpdate.getRank() > maxUpdateRank) {
+			factorized = false;
+			lowRankUpdate = null;
+		}
+	}
+
+	private SolverMetrics.Scope beginPhase(SolverPhase phase, String message) {
+		log(message);
+		return metrics.begin(phase);
+	}
+
+	private void endPhase(SolverMetrics.Scope phase) {
+		long elapsed = metrics.end(phase, currentlyLoadedFile, listener);
+		if (verbose) {
+			log(String.format("  done in %.3f ms", elapsed * 1e-6));
+		}
+	}
+
+	private void log(String message) {
+		if (verbose) {
+			System.out.println(message);
+		}
+	}
+
+	// forces on the free dofs, less what the prescribed displacements already supply
+	MyVector buildForceVector(BoundaryConditions forces) {
+		MyVector forceVector = new MyVector(freeCount);
+		for (var force : forces.getConditions()) {
+			int equation = equations[getGlobalIndex(getNodeIndex(force.id()), force.variable())];
+			if (equation >= 0) {
+				forceVector.set(equation, force.value());
+			}
+		}
+
+		if (prescribedLoad != null) {
+			for (int i = 0; i < freeCount; i++) {
+				forceVector.set(i, forceVector.get(i) - prescribedLoad[i]);
+			}
+		}
+		return forceVector;
+	}
+
+	// inverse of collectDisplacements, the prescribed dofs are left out
+	private MyVector buildDisplacementVector(ArrayList<Node> displacements) {
+		MyVector displacementVector = new MyVector(freeCount);
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = displacements.get(i);
+			setDisplacement(displacementVector, getGlobalIndex(i, Node.VAR_X), node.getX());
+			setDisplacement(displacementVector, getGlobalIndex(i, Node.VAR_Y), node.getY());
+			setDisplacement(displacementVector, getGlobalIndex(i, Node.VAR_THETA), node.getTheta());
+		}
+		return displacementVector;
+	}
+
+	private void setDisplacement(MyVector displacementVector, int dof, double value) {
+		if (equations[dof] >= 0) {
+			displacementVector.set(equations[dof], value);
+		}
+	}
+
+	private ArrayList<Node> collectDisplacements(MyVector displacementVector) {
+		return collectDisplacements(displacementVector, false);
+	}
+
+	// homogeneous leaves the prescribed dofs at zero instead of their values, as for a mode shape
+	ArrayList<Node> collectDisplacements(MyVector displacementVector, boolean homogeneous) {
+		ArrayList<Node> result = new ArrayList<>();
+		for (int i = 0; i < nodes.size(); i++) {
+			double x = getDisplacement(displacementVector, getGlobalIndex(i, Node.VAR_X), homogeneous);
+			double y = getDisplacement(displacementVector, getGlobalIndex(i, Node.VAR_Y), homogeneous);
+			double t = getDisplacement(displacementVector, getGlobalIndex(i, Node.VAR_THETA), homogeneous);
+			result.add(new Node(nodes.getID(i), x, y, t));
+		}
 		return result;
 	}
 
+	// the displacements of all dofs, three per node in node order, from those of the free ones
+	void expandDisplacements(double[] free, double[] out) {
+		for (int i = 0; i < nodes.size(); i++) {
+			for (int variable = 0; variable < Node.DEGREES_OF_FREEDOM; variable++) {
+				int dof = getGlobalIndex(i, variable);
+				out[i * Node.DEGREES_OF_FREEDOM + variable] = equations[dof] >= 0 ? free[equations[dof]] : prescribedValues[dof];
+			}
+		}
+	}
+
+	private double getDisplacement(MyVector displacementVector, int dof, boolean homogeneous) {
+		int equation = equations[dof];
+		if (equation >= 0) {
+			return displacementVector.get(equation);
+		}
+		return homogeneous ? 0.0 : prescribedValues[dof];
+	}
+
 	private static final int LOAD_NODE 			= 0;
 	private static final int LOAD_ELEMENT 		= 1;
 	private static final int LOAD_BOUNDARY 		= 2;
 	private static final int LOAD_FORCES 		= 3;
 	private static final int LOAD_SUBDIVISIONS 	= 4;
+	private static final int LOAD_INTERFACE 	= 5;
+	private static final int LOAD_SUBSTRUCTURE 	= 6;
+	private static final int LOAD_TIME_STEP 	= 7;
+	private static final int LOAD_DAMPING 		= 8;
+	private static final int LOAD_AMPLITUDE 	= 9;
+
+	public void loadFromFile(String filename) throws IOException {
+		loadFromFile(filename, Set.of());
+	}
 
-	public void loadFromFile(String filename) {
-		System.out.println("Loading \"" + filename + "\"...");
+	// placing holds the files that place this one as a substructure, to catch a cycle
+	void loadFromFile(String filename, Set<Path> placing) throws IOException {
 		this.currentlyLoadedFile = filename;
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.PARSE, "Loading \"" + filename + "\"...");
 
-		this.nodes = new ArrayList<>();
+		this.nodes = new NodeStore();
 		this.elements = new ArrayList<>();
 
 		this.boundaryConditions = new BoundaryConditions();
-		this.forces = new BoundaryConditions();
+		this.loadCases = new LinkedHashMap<>();
+		this.interfaceNodes = new ArrayList<>();
+		this.timeStepping = null;
+		this.massDamping = 0.0;
+		this.stiffnessDamping = 0.0;
+		this.amplitudes = new LinkedHashMap<>();
+		BoundaryConditions forces = null;
+
+		// points of the #Amplitude section being read
+		String amplitudeCase = null;
+		ArrayList<double[]> amplitudePoints = new ArrayList<>();
+		invalidateSystem();
+
+		// every substructure file is condensed once, however often it is placed
+		HashMap<Path, Substructure> substructures = new HashMap<>();
+		HashSet<Path> chain = new HashSet<>(placing);
+		chain.add(Path.of(filename).toAbsolutePath().normalize());
+		Substructure substructure = null;
 
 		int subdivisions = 0;
 
-		BufferedReader reader = null;
 		int state = -1;
-		try {
-			reader = new BufferedReader(new FileReader(filename));
-
-			String line = reader.readLine();
-			while (line != null) {
+		try (FemParser parser = new FemParser(Path.of(filename))) {
+			while (parser.nextLine()) {
 
 				// comments
-				if (line.startsWith("//")) {
-					line = reader.readLine();
+				if (parser.isBlank() || parser.isComment()) {
 					continue;
 				}
 
-				int prev = state;
-				state = switch (line) {
-					case "#Node" 			-> LOAD_NODE;
-					case "#Element" 		-> LOAD_ELEMENT;
-					case "#Boundary" 		-> LOAD_BOUNDARY;
-					case "#Forces" 			-> LOAD_FORCES;
-					case "#Subdivisions" 	-> LOAD_SUBDIVISIONS;
-					default -> state;
-				};
-
-				if (state != prev) {
-					line = reader.readLine();
+				if (parser.isHeader()) {
+					if (amplitudeCase != null) {
+						putAmplitude(parser, amplitudeCase, amplitudePoints);
+						amplitudeCase = null;
+					}
+
+					if (parser.isHeader("Node")) {
+						state = LOAD_NODE;
+					} else if (parser.isHeader("Element")) {
+						state = LOAD_ELEMENT;
+					} else if (parser.isHeader("Boundary")) {
+						state = LOAD_BOUNDARY;
+					} else if (parser.isHeader("Subdivisions")) {
+						state = LOAD_SUBDIVISIONS;
+					} else if (parser.isHeader("Interface")) {
+						state = LOAD_INTERFACE;
+					} else if (parser.isHeader("Substructure")) {
+						// relative to the file that places it
+						Path path = Path.of(filename).resolveSibling(parser.getHeaderArgument()).normalize();
+						if (chain.contains(path.toAbsolutePath().normalize())) {
+							throw parser.error("substructure " + path + " places itself, directly or through another substructure");
+						}
+						substructure = substructures.get(path);
+						if (substructure == null) {
+							substructure = new Substructure(path.toString(), chain);
+							substructures.put(path, substructure);
+						}
+						state = LOAD_SUBSTRUCTURE;
+					} else if (parser.isHeader("TimeStep")) {
+						state = LOAD_TIME_STEP;
+					} else if (parser.isHeader("Damping")) {
+						state = LOAD_DAMPING;
+					} else if (parser.isHeader("Amplitude")) {
+						// of the named load case, the first one without a name
+						amplitudeCase = parser.getHeaderArgument().isEmpty() ? DEFAULT_LOAD_CASE : parser.getHeaderArgument();
+						amplitudePoints.clear();
+						state = LOAD_AMPLITUDE;
+					} else if (parser.isHeader("Forces") || parser.isHeader("LoadCase")) {
+						// every forces section starts a new load case
+						forces = newLoadCase(parser.isHeader("Forces") ? null : parser.getHeaderArgument());
+						state = LOAD_FORCES;
+					} else {
+						throw parser.error("unknown section \"" + parser.getLine() + "\"");
+					}
 					continue;
 				}
 
 				if (state == LOAD_NODE) {
-					String[] split = line.split(", ");
-					nodes.add(new Node(
-						Integer.parseInt(split[0]),
-						Double.parseDouble(split[1]),
-						Double.parseDouble(split[2]),
-						Double.parseDouble(split[3])
-					));
+					int id = parser.nextInt();
+					if (nodes.indexOf(id) >= 0) {
+						throw parser.error("node " + id + " is defined twice");
+					}
+					nodes.add(id, parser.nextDouble(), parser.nextDouble(), parser.nextDouble());
 				} else if (state == LOAD_ELEMENT) {
-					String[] split = line.split(", ");
-					elements.add(getElementFromID(
-						Integer.parseInt(split[0]),
-						split
-					));
+					elements.add(readElement(parser));
 				} else if (state == LOAD_BOUNDARY) {
-					String[] split = line.split(", ");
-					int id = Integer.parseInt(split[0]);
-					boundaryConditions.setX(id, Double.parseDouble(split[1]));
-					boundaryConditions.setY(id, Double.parseDouble(split[2]));
-					boundaryConditions.setTheta(id, Double.parseDouble(split[3]));
+					int id = readNodeID(parser);
+					boundaryConditions.setX(id, parser.nextDouble());
+					boundaryConditions.setY(id, parser.nextDouble());
+					boundaryConditions.setTheta(id, parser.nextDouble());
 				} else if (state == LOAD_FORCES) {
-					String[] split = line.split(", ");
-					int id = Integer.parseInt(split[0]);
-					forces.setFx(id, Double.parseDouble(split[1]));
-					forces.setFy(id, Double.parseDouble(split[2]));
-					forces.setMoment(id, Double.parseDouble(split[3]));
+					int id = readNodeID(parser);
+					forces.setFx(id, parser.nextDouble());
+					forces.setFy(id, parser.nextDouble());
+					forces.setMoment(id, parser.nextDouble());
 				} else if (state == LOAD_SUBDIVISIONS) {
-					subdivisions = Integer.parseInt(line);
+					subdivisions = parser.nextInt();
+				} else if (state == LOAD_INTERFACE) {
+					while (parser.hasMoreFields()) {
+						interfaceNodes.add(readNodeID(parser));
+					}
+				} else if (state == LOAD_SUBSTRUCTURE) {
+					elements.add(readSuperElement(parser, substructure));
+				} else if (state == LOAD_TIME_STEP) {
+					timeStepping = readTimeStepping(parser);
+				} else if (state == LOAD_DAMPING) {
+					massDamping = parser.nextDouble();
+					stiffnessDamping = parser.nextDouble();
+					if (massDamping < 0.0 || stiffnessDamping < 0.0) {
+						throw parser.error("damping cannot be negative");
+					}
+				} else if (state == LOAD_AMPLITUDE) {
+					double time = parser.nextDouble();
+					if (!amplitudePoints.isEmpty() && time <= amplitudePoints.get(amplitudePoints.size() - 1)[0]) {
+						throw parser.error("amplitude times have to increase");
+					}
+					amplitudePoints.add(new double[] { time, parser.nextDouble() });
+				} else {
+					throw parser.error("data outside of any section");
 				}
 
-				line = reader.readLine();
+				if (parser.hasMoreFields()) {
+					throw parser.error("unexpected extra values in \"" + parser.getLine() + "\"");
+				}
 			}
 
-			reader.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+			if (amplitudeCase != null) {
+				putAmplitude(parser, amplitudeCase, amplitudePoints);
+			}
+			for (String name : amplitudes.keySet()) {
+				if (!loadCases.containsKey(name)) {
+					throw parser.error("amplitude for unknown load case \"" + name + "\"");
+				}
+			}
 		}
 
+		endPhase(phase);
+
 		for (int i = 0; i < subdivisions; i++) {
 			subdivide();
 		}
 	}
 
+	// nodes have to be declared before anything refers to them
+	private int readNodeID(FemParser parser) throws FemFormatException {
+		int id = parser.nextInt();
+		if (nodes.indexOf(id) < 0) {
+			throw parser.error("unknown node " + id);
+		}
+		return id;
+	}
+
+	private static final String DEFAULT_LOAD_CASE = "Forces";
+
+	private BoundaryConditions newLoadCase(String name) {
+		if (name == null || name.isEmpty()) {
+			name = loadCases.isEmpty() ? DEFAULT_LOAD_CASE : DEFAULT_LOAD_CASE + " " + (loadCases.size() + 1);
+		}
+		return loadCases.computeIfAbsent(name, key -> new BoundaryConditions());
+	}
+
 	private static final int ELEMENT_ID_BEAM = 0;
 	private static final int ELEMENT_ID_SPRING = 1;
 
-	private Element getElementFromID(int id, String[] data) {
+	private Element readElement(FemParser parser) throws FemFormatException {
+		int type = parser.nextInt();
 
 		// beam element
-		if (id == ELEMENT_ID_BEAM) {
+		if (type == ELEMENT_ID_BEAM) {
 			return new BeamElement(
 				this,
-				Integer.parseInt(data[1]),
-				Integer.parseInt(data[2]),
-				Double.parseDouble(data[3]),
-				Double.parseDouble(data[4]),
-				Double.parseDouble(data[5])
+				nodes.indexOf(readNodeID(parser)),
+				nodes.indexOf(readNodeID(parser)),
+				parser.nextDouble(),
+				parser.nextDouble(),
+				parser.nextDouble(),
+				readDensity(parser)
 			);
 		}
 
 		// spring element
-		else if (id == ELEMENT_ID_SPRING) {
+		else if (type == ELEMENT_ID_SPRING) {
 			return new SpringElement(
 				this,
-				Integer.parseInt(data[1]),
-				Integer.parseInt(data[2]),
-				Double.parseDouble(data[3]),
-				Double.parseDouble(data[4]),
-				Double.parseDouble(data[5])
+				nodes.indexOf(readNodeID(parser)),
+				nodes.indexOf(readNodeID(parser)),
+				parser.nextDouble(),
+				parser.nextDouble(),
+				parser.nextDouble(),
+				readDensity(parser)
 			);
 		}
 
-		return null;
+		throw parser.error("unknown element type " + type);
+	}
+
+	// optional last column of an element, massless without it
+	private static double readDensity(FemParser parser) throws FemFormatException {
+		if (!parser.hasMoreFields()) {
+			return 0.0;
+		}
+		double density = parser.nextDouble();
+		if (density < 0.0) {
+			throw parser.error("density cannot be negative");
+		}
+		return density;
+	}
+
+	// dt, steps and optionally the hht alpha, from -1/3 to 0
+	private static TransientAnalysis.TimeStepping readTimeStepping(FemParser parser) throws FemFormatException {
+		double timeStep = parser.nextDouble();
+		int stepCount = parser.nextInt();
+		double alpha = parser.hasMoreFields() ? parser.nextDouble() : 0.0;
+		if (!(timeStep > 0.0) || stepCount < 0) {
+			throw parser.error("time step has to be positive and the step count not negative");
+		}
+		if (alpha < -1.0 / 3.0 || alpha > 0.0) {
+			throw parser.error("hht alpha has to be between -1/3 and 0, got " + alpha);
+		}
+		return new TransientAnalysis.TimeStepping(timeStep, stepCount, alpha);
+	}
+
+	private void putAmplitude(FemParser parser, String name, ArrayList<double[]> points) throws FemFormatException {
+		if (points.isEmpty()) {
+			throw parser.error("amplitude of \"" + name + "\" has no points");
+		}
+		double[] times = new double[points.size()];
+		double[] factors = new double[points.size()];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = points.get(i)[0];
+			factors[i] = points.get(i)[1];
+		}
+		amplitudes.put(name, new TransientAnalysis.Amplitude(times, factors));
+	}
+
+	// one placement per line, the model's nodes for the interface nodes in #Interface order
+	private SuperElement readSuperElement(FemParser parser, Substructure substructure) throws FemFormatException {
+		int[] placed = new int[substructure.getInterfaceNodeCount()];
+		for (int i = 0; i < placed.length; i++) {
+			placed[i] = nodes.indexOf(readNodeID(parser));
+		}
+
+		try {
+			return new SuperElement(this, substructure, placed);
+		} catch (IllegalArgumentException e) {
+			throw parser.error(e.getMessage());
+		}
 	}
 
 	public String getCurrentlyLoadedFile() {
@@ -211,23 +1029,30 @@ public class FESolver {
 	}
 
 	public void subdivide() {
+		subdivide(null);
+	}
+
+	/*
+	 * splits the selected beams (every beam if selected is null) in half. new nodes are
+	 * appended, so existing node indices stay valid, and the halves of an element take
+	 * its place in the list.
+	 */
+	public void subdivide(boolean[] selected) {
+		SolverMetrics.Scope phase = beginPhase(SolverPhase.SUBDIVIDE, "Subdividing...");
 		ArrayList<Element> newElements = new ArrayList<>();
 
-		int maxID = -1;
-		for (Node node : nodes) {
-			maxID = Math.max(maxID, node.getID() + 1);
-		}
+		int maxID = nodes.getMaxID() + 1;
 
-		for (var elem : elements) {
-			if (elem instanceof BeamElement beam) {
-				Node n1 = nodes.get(beam.getNode1());
-				Node n2 = nodes.get(beam.getNode2());
-				Node n3 = new Node(maxID, (n1.getX() + n2.getX()) * 0.5, (n1.getY() + n2.getY()) * 0.5, 0.0);
-				nodes.add(n3);
-				newElements.add(new BeamElement(this, n1.getID(), n3.getID(), beam.getYoungsModulus(), beam.getCrossSectionalArea(), beam.getAreaMomentOfInertia()));
-				newElements.add(new BeamElement(this, n3.getID(), n2.getID(), beam.getYoungsModulus(), beam.getCrossSectionalArea(), beam.getAreaMomentOfInertia()));
+		for (int i = 0; i < elements.size(); i++) {
+			Element elem = elements.get(i);
+			if (elem instanceof BeamElement beam && (selected == null || selected[i])) {
+				int n1 = beam.getNode1();
+				int n2 = beam.getNode2();
+				int n3 = nodes.add(maxID, (nodes.getX(n1) + nodes.getX(n2)) * 0.5, (nodes.getY(n1) + nodes.getY(n2)) * 0.5, 0.0);
+				newElements.add(new BeamElement(this, n1, n3, beam.getYoungsModulus(), beam.getCrossSectionalArea(), beam.getAreaMomentOfInertia(), beam.getDensity()));
+				newElements.add(new BeamElement(this, n3, n2, beam.getYoungsModulus(), beam.getCrossSectionalArea(), beam.getAreaMomentOfInertia(), beam.getDensity()));
 				maxID += 1;
-			} else if (elem instanceof SpringElement spring) {
+			} else {
 				newElements.add(elem);
 			}
 
@@ -235,22 +1060,31 @@ public class FESolver {
 		}
 
 		elements = newElements;
+		invalidateSystem();
+		endPhase(phase);
 	}
 
 	public Node getNode(int id) {
-		for (Node node : nodes) {
-			if (node.getID() == id) {
-				return node;
-			}
+		int index = nodes.indexOf(id);
+		if (index < 0) {
+			return null;
 		}
-		return null;
+		return new Node(id, nodes.getX(index), nodes.getY(index), nodes.getTheta(index));
 	}
 
-	public ArrayList<Node> getNodes() {
+	public int getNodeIndex(int id) {
+		int index = nodes.indexOf(id);
+		if (index < 0) {
+			throw new IllegalArgumentException("unknown node id " + id);
+		}
+		return index;
+	}
+
+	public NodeStore getNodes() {
 		return this.nodes;
 	}
 
-	public void setNodes(ArrayList<Node> nodes) {
+	public void setNodes(NodeStore nodes) {
 		this.nodes = nodes;
 	}
 
@@ -266,7 +1100,167 @@ public class FESolver {
 		this.boundaryConditions = boundaryConditions;
 	}
 
+	public BoundaryConditions getForces() {
+		if (loadCases.isEmpty()) {
+			return new BoundaryConditions();
+		}
+		return loadCases.values().iterator().next();
+	}
+
 	public void setForces(BoundaryConditions forces) {
-		this.forces = forces;
+		this.loadCases.clear();
+		this.loadCases.put(DEFAULT_LOAD_CASE, forces);
+	}
+
+	public LinkedHashMap<String, BoundaryConditions> getLoadCases() {
+		return this.loadCases;
+	}
+
+	public void addLoadCase(String name, BoundaryConditions forces) {
+		this.loadCases.put(name, forces);
+	}
+
+	// null if the model has no #TimeStep
+	public TransientAnalysis.TimeStepping getTimeStepping() {
+		return this.timeStepping;
+	}
+
+	public void setTimeStepping(TransientAnalysis.TimeStepping timeStepping) {
+		this.timeStepping = timeStepping;
+	}
+
+	public double getMassDamping() {
+		return this.massDamping;
+	}
+
+	public double getStiffnessDamping() {
+		return this.stiffnessDamping;
+	}
+
+	public void setDamping(double massDamping, double stiffnessDamping) {
+		this.massDamping = massDamping;
+		this.stiffnessDamping = stiffnessDamping;
+	}
+
+	public LinkedHashMap<String, TransientAnalysis.Amplitude> getAmplitudes() {
+		return this.amplitudes;
+	}
+
+	public void saveSnapshot(String filename, boolean includeSystem) throws IOException {
+		log("Saving snapshot \"" + filename + "\"...");
+		ModelSnapshot.save(this, Path.of(filename), includeSystem);
+	}
+
+	public void loadSnapshot(String filename) throws IOException {
+		log("Loading snapshot \"" + filename + "\"...");
+		this.currentlyLoadedFile = filename;
+
+		// nothing of the previous model survives, a snapshot without a system is assembled again
+		this.interfaceNodes = new ArrayList<>();
+		this.timeStepping = null;
+		this.massDamping = 0.0;
+		this.stiffnessDamping = 0.0;
+		this.amplitudes = new LinkedHashMap<>();
+		invalidateSystem();
+
+		ModelSnapshot.load(this, Path.of(filename));
+	}
+
+	// numbering and matrix as built by buildMatrix, used by snapshots
+	int[] getNodeOrder() {
+		return this.nodeOrder;
+	}
+
+	BoundaryConditions getBoundaryConditions() {
+		return this.boundaryConditions;
+	}
+
+	ArrayList<Integer> getInterfaceNodes() {
+		return this.interfaceNodes;
+	}
+
+	boolean hasCurrentFactorization() {
+		return this.factorized && this.lowRankUpdate == null;
+	}
+
+	// the equations are numbered again from the boundary conditions, which have to be restored first
+	void restoreSystem(int[] nodeOrder, SparseMatrix stiffnessMatrix, boolean factorized) {
+		this.nodeOrder = nodeOrder;
+		numberEquations();
+		if (stiffnessMatrix.getSize() != freeCount) {
+			throw new IllegalArgumentException("matrix has " + stiffnessMatrix.getSize() + " equations but the boundary conditions leave " + freeCount);
+		}
+
+		stiffnessMatrix.setBlockStarts(blockStarts);
+		this.stiffnessMatrix = stiffnessMatrix;
+		this.factorized = factorized;
+		this.lowRankUpdate = null;
+	}
+
+	// number of free dofs, the size of the system that gets solved
+	public int getEquationCount() {
+		return this.freeCount;
+	}
+
+	public SparseMatrix getStiffnessMatrix() {
+		return this.stiffnessMatrix;
+	}
+
+	public LinearSolver getLinearSolver() {
+		return this.linearSolver;
+	}
+
+	public void setLinearSolver(LinearSolver linearSolver) {
+		this.linearSolver = linearSolver;
+		this.factorized = false;
+	}
+
+	public SolverMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	public SolverListener getListener() {
+		return this.listener;
+	}
+
+	public void setListener(SolverListener listener) {
+		this.listener = listener;
+	}
+
+	public boolean isVerbose() {
+		return this.verbose;
+	}
+
+	// prints progress and phase times to stdout
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	public int getAssemblyThreads() {
+		return this.assemblyThreads;
+	}
+
+	public void setAssemblyThreads(int assemblyThreads) {
+		this.assemblyThreads = Math.max(1, assemblyThreads);
+		if (assemblyPool != null) {
+			assemblyPool.shutdown();
+		}
+		this.assemblyPool = this.assemblyThreads > 1 ? new ForkJoinPool(this.assemblyThreads) : null;
+	}
+
+	public int getMaxUpdateRank() {
+		return this.maxUpdateRank;
+	}
+
+	public void setMaxUpdateRank(int maxUpdateRank) {
+		this.maxUpdateRank = maxUpdateRank;
+	}
+
+	public boolean isMatrixFree() {
+		return this.matrixFree;
+	}
+
+	public void setMatrixFree(boolean matrixFree) {
+		this.matrixFree = matrixFree;
 	}
 }
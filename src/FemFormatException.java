@@ -0,0 +1,16 @@
+import java.io.IOException;
+
+public class FemFormatException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int lineNumber;
+
+	public FemFormatException(String message, int lineNumber) {
+		super("line " + lineNumber + ": " + message);
+		this.lineNumber = lineNumber;
+	}
+
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * line based tokenizer for .fem files. the file is streamed through a direct buffer
+ * and numbers are parsed straight from the bytes, so reading a line allocates nothing.
+ * fields may be separated by any mix of commas and whitespace.
+ */
+public class FemParser implements AutoCloseable {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	// exactly representable powers of ten, for the fast decimal path
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private boolean endOfFile;
+
+	// start of the data that has not been handed out as a line yet
+	private int next;
+
+	private int lineNumber;
+	private int lineStart;
+	private int lineLimit;
+	private int cursor;
+
+	public FemParser(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.buffer.flip();
+		this.endOfFile = false;
+		this.next = 0;
+		this.lineNumber = 0;
+	}
+
+	public boolean nextLine() throws IOException {
+		int scan = next;
+
+		while (true) {
+			int limit = buffer.limit();
+			for (int i = scan; i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					setLine(next, i);
+					next = i + 1;
+					return true;
+				}
+			}
+
+			if (endOfFile) {
+				if (next < limit) {
+					setLine(next, limit);
+					next = limit;
+					return true;
+				}
+				return false;
+			}
+
+			// move the unfinished line to the front and read more behind it
+			int partial = limit - next;
+			if (partial == buffer.capacity()) {
+				throw new FemFormatException("line is longer than " + BUFFER_SIZE + " bytes", lineNumber + 1);
+			}
+			buffer.position(next);
+			buffer.compact();
+			if (channel.read(buffer) < 0) {
+				endOfFile = true;
+			}
+			buffer.flip();
+
+			next = 0;
+			scan = partial;
+		}
+	}
+
+	private void setLine(int start, int limit) {
+		if (limit > start && buffer.get(limit - 1) == '\r') {
+			limit--;
+		}
+
+		lineNumber++;
+		lineStart = start;
+		lineLimit = limit;
+		cursor = start;
+
+		// leading and trailing whitespace never matters
+		while (lineStart < lineLimit && isWhitespace(buffer.get(lineStart))) {
+			lineStart++;
+		}
+		while (lineLimit > lineStart && isWhitespace(buffer.get(lineLimit - 1))) {
+			lineLimit--;
+		}
+		cursor = lineStart;
+	}
+
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	public boolean isBlank() {
+		return lineStart == lineLimit;
+	}
+
+	public boolean isComment() {
+		return lineLimit - lineStart >= 2 && buffer.get(lineStart) == '/' && buffer.get(lineStart + 1) == '/';
+	}
+
+	public boolean isHeader() {
+		return lineStart < lineLimit && buffer.get(lineStart) == '#';
+	}
+
+	// true if the line is "#name", optionally followed by an argument
+	public boolean isHeader(String name) {
+		if (!isHeader() || lineLimit - lineStart - 1 < name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (buffer.get(lineStart + 1 + i) != name.charAt(i)) {
+				return false;
+			}
+		}
+		int end = lineStart + 1 + name.length();
+		return end == lineLimit || isWhitespace(buffer.get(end));
+	}
+
+	// whatever follows the header name, trimmed
+	public String getHeaderArgument() {
+		int start = lineStart + 1;
+		while (start < lineLimit && !isWhitespace(buffer.get(start))) {
+			start++;
+		}
+		while (start < lineLimit && isWhitespace(buffer.get(start))) {
+			start++;
+		}
+		return getText(start, lineLimit);
+	}
+
+	public String getLine() {
+		return getText(lineStart, lineLimit);
+	}
+
+	public boolean hasMoreFields() {
+		skipSeparators();
+		return cursor < lineLimit;
+	}
+
+	public int nextInt() throws FemFormatException {
+		int start = beginField();
+		boolean negative = false;
+		if (buffer.get(cursor) == '-' || buffer.get(cursor) == '+') {
+			negative = buffer.get(cursor) == '-';
+			cursor++;
+		}
+
+		long value = 0;
+		int digits = 0;
+		while (cursor < lineLimit && isDigit(buffer.get(cursor))) {
+			value = value * 10 + (buffer.get(cursor++) - '0');
+			if (value > Integer.MAX_VALUE + 1L) {
+				throw error("integer out of range: " + getText(start, endOfField()));
+			}
+			digits++;
+		}
+
+		if (digits == 0 || !atSeparator()) {
+			throw error("expected an integer but found \"" + getText(start, endOfField()) + "\"");
+		}
+
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw error("integer out of range: " + getText(start, cursor));
+		}
+		return (int) value;
+	}
+
+	public double nextDouble() throws FemFormatException {
+		int start = beginField();
+		boolean negative = false;
+		if (buffer.get(cursor) == '-' || buffer.get(cursor) == '+') {
+			negative = buffer.get(cursor) == '-';
+			cursor++;
+		}
+
+		// up to 18 significant digits fit a long, further ones only move the exponent
+		long mantissa = 0;
+		int significant = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean truncated = false;
+
+		while (cursor < lineLimit && isDigit(buffer.get(cursor))) {
+			int d = buffer.get(cursor++) - '0';
+			digits++;
+			if (significant < 18) {
+				mantissa = mantissa * 10 + d;
+				if (mantissa != 0) {
+					significant++;
+				}
+			} else {
+				exponent++;
+				truncated |= d != 0;
+			}
+		}
+
+		if (cursor < lineLimit && buffer.get(cursor) == '.') {
+			cursor++;
+			while (cursor < lineLimit && isDigit(buffer.get(cursor))) {
+				int d = buffer.get(cursor++) - '0';
+				digits++;
+				if (significant < 18) {
+					mantissa = mantissa * 10 + d;
+					exponent--;
+					if (mantissa != 0) {
+						significant++;
+					}
+				} else {
+					truncated |= d != 0;
+				}
+			}
+		}
+
+		if (digits == 0) {
+			throw error("expected a number but found \"" + getText(start, endOfField()) + "\"");
+		}
+
+		if (cursor < lineLimit && (buffer.get(cursor) == 'e' || buffer.get(cursor) == 'E')) {
+			cursor++;
+			boolean negativeExponent = false;
+			if (cursor < lineLimit && (buffer.get(cursor) == '-' || buffer.get(cursor) == '+')) {
+				negativeExponent = buffer.get(cursor) == '-';
+				cursor++;
+			}
+
+			int value = 0;
+			int exponentDigits = 0;
+			while (cursor < lineLimit && isDigit(buffer.get(cursor))) {
+				value = Math.min(value * 10 + (buffer.get(cursor++) - '0'), 100000);
+				exponentDigits++;
+			}
+			if (exponentDigits == 0) {
+				throw error("malformed exponent in \"" + getText(start, endOfField()) + "\"");
+			}
+			exponent += negativeExponent ? -value : value;
+		}
+
+		if (!atSeparator()) {
+			throw error("expected a number but found \"" + getText(start, endOfField()) + "\"");
+		}
+
+		if (truncated || mantissa >= (1L << 53) || exponent < -22 || exponent > 22) {
+			// rare enough to leave to the jdk
+			return Double.parseDouble(getText(start, cursor));
+		}
+
+		// both operands are exact, so a single rounding gives the correctly rounded result
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	public FemFormatException error(String message) {
+		return new FemFormatException(message, lineNumber);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private int beginField() throws FemFormatException {
+		skipSeparators();
+		if (cursor >= lineLimit) {
+			throw error("missing value, expected more fields in \"" + getLine() + "\"");
+		}
+		return cursor;
+	}
+
+	private void skipSeparators() {
+		while (cursor < lineLimit && (buffer.get(cursor) == ',' || isWhitespace(buffer.get(cursor)))) {
+			cursor++;
+		}
+	}
+
+	private boolean atSeparator() {
+		return cursor == lineLimit || buffer.get(cursor) == ',' || isWhitespace(buffer.get(cursor));
+	}
+
+	private int endOfField() {
+		int end = cursor;
+		while (end < lineLimit && buffer.get(end) != ',' && !isWhitespace(buffer.get(end))) {
+			end++;
+		}
+		return end;
+	}
+
+	private String getText(int start, int limit) {
+		byte[] bytes = new byte[limit - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+}
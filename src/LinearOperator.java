@@ -0,0 +1,16 @@
+/*
+ * anything that can apply a symmetric matrix to a vector, assembled or not.
+ */
+public interface LinearOperator {
+	int getSize();
+
+	// y = A x
+	void multiply(double[] x, double[] y);
+
+	// first equation of every node, node b owns [starts[b], starts[b + 1]), at most 3 of them
+	int[] getBlockStarts();
+
+	// the 3x3 node blocks along the diagonal, block b is stored row by row at [9b, 9b + 9)
+	// and padded with the identity where its node has fewer than 3 equations
+	double[] getNodeBlocks();
+}
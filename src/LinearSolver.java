@@ -0,0 +1,18 @@
+public interface LinearSolver {
+	void factorize(SparseMatrix matrix);
+	MyVector solve(MyVector rhs);
+
+	// iterative solvers start from the guess, direct ones have no use for it
+	default MyVector solve(MyVector rhs, MyVector initialGuess) {
+		return solve(rhs);
+	}
+
+	// solves against the current factorization for several right hand sides
+	default MyVector[] solve(MyVector[] rhs) {
+		MyVector[] result = new MyVector[rhs.length];
+		for (int i = 0; i < rhs.length; i++) {
+			result[i] = solve(rhs[i]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * corrections to a factorized matrix K0 of the form K = K0 + U C U^T, where U picks out
+ * the dofs touched by modified elements and C holds the summed changes of their matrices.
+ * solutions use the woodbury identity
+ *
+ *   K^-1 b = y - Z (I + C U^T Z)^-1 C U^T y,   y = K0^-1 b,  Z = K0^-1 U
+ *
+ * so every new dof costs one back-substitution and every solve a small dense one.
+ */
+public class LowRankUpdate {
+	private final LinearSolver base;
+	private final int size;
+
+	private final HashMap<Integer, Integer> slots;
+	private int[] dofs;
+	private MyVector[] baseSolutions;
+	private double[] correction;
+	private int rank;
+
+	// LU factors of the capacitance matrix I + C U^T Z
+	private double[] capacitance;
+	private int[] pivots;
+
+	public LowRankUpdate(LinearSolver base, int size) {
+		this.base = base;
+		this.size = size;
+
+		this.slots = new HashMap<>();
+		this.dofs = new int[0];
+		this.baseSolutions = new MyVector[0];
+		this.correction = new double[0];
+		this.rank = 0;
+	}
+
+	/*
+	 * adds delta (n x n, row by row) acting on the given global dofs, entries with a
+	 * negative dof are skipped.
+	 */
+	public void add(int[] elementDofs, double[] delta) {
+		int n = elementDofs.length;
+
+		// give every new dof a slot and solve for its column of K0^-1
+		int added = 0;
+		int[] newDofs = new int[n];
+		for (int dof : elementDofs) {
+			if (dof >= 0 && !slots.containsKey(dof)) {
+				slots.put(dof, rank + added);
+				newDofs[added++] = dof;
+			}
+		}
+
+		if (added > 0) {
+			MyVector[] units = new MyVector[added];
+			for (int i = 0; i < added; i++) {
+				units[i] = new MyVector(size);
+				units[i].set(newDofs[i], 1.0);
+			}
+			MyVector[] columns = base.solve(units);
+
+			int newRank = rank + added;
+			double[] grown = new double[newRank * newRank];
+			for (int i = 0; i < rank; i++) {
+				System.arraycopy(correction, i * rank, grown, i * newRank, rank);
+			}
+
+			this.correction = grown;
+			this.dofs = Arrays.copyOf(dofs, newRank);
+			this.baseSolutions = Arrays.copyOf(baseSolutions, newRank);
+			for (int i = 0; i < added; i++) {
+				dofs[rank + i] = newDofs[i];
+				baseSolutions[rank + i] = columns[i];
+			}
+			this.rank = newRank;
+		}
+
+		for (int i = 0; i < n; i++) {
+			if (elementDofs[i] < 0) {
+				continue;
+			}
+			int a = slots.get(elementDofs[i]);
+			for (int j = 0; j < n; j++) {
+				if (elementDofs[j] >= 0) {
+					correction[a * rank + slots.get(elementDofs[j])] += delta[i * n + j];
+				}
+			}
+		}
+
+		factorCapacitance();
+	}
+
+	public MyVector[] correct(MyVector[] solutions) {
+		if (rank == 0) {
+			return solutions;
+		}
+
+		double[] w = new double[rank];
+		double[] v = new double[rank];
+
+		for (MyVector y : solutions) {
+			for (int a = 0; a < rank; a++) {
+				w[a] = y.get(dofs[a]);
+			}
+
+			for (int a = 0; a < rank; a++) {
+				double sum = 0.0;
+				for (int b = 0; b < rank; b++) {
+					sum += correction[a * rank + b] * w[b];
+				}
+				v[a] = sum;
+			}
+
+			solveCapacitance(v);
+
+			for (int b = 0; b < rank; b++) {
+				MyVector z = baseSolutions[b];
+				double t = v[b];
+				if (t == 0.0) {
+					continue;
+				}
+				for (int i = 0; i < size; i++) {
+					y.set(i, y.get(i) - z.get(i) * t);
+				}
+			}
+		}
+
+		return solutions;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	private void factorCapacitance() {
+		capacitance = new double[rank * rank];
+		pivots = new int[rank];
+
+		// I + C W with W[a][b] = (K0^-1)[dof a][dof b]
+		for (int a = 0; a < rank; a++) {
+			for (int b = 0; b < rank; b++) {
+				double sum = a == b ? 1.0 : 0.0;
+				for (int c = 0; c < rank; c++) {
+					sum += correction[a * rank + c] * baseSolutions[b].get(dofs[c]);
+				}
+				capacitance[a * rank + b] = sum;
+			}
+		}
+
+		// LU with partial pivoting
+		for (int k = 0; k < rank; k++) {
+			int p = k;
+			for (int i = k + 1; i < rank; i++) {
+				if (Math.abs(capacitance[i * rank + k]) > Math.abs(capacitance[p * rank + k])) {
+					p = i;
+				}
+			}
+			pivots[k] = p;
+
+			if (p != k) {
+				for (int j = 0; j < rank; j++) {
+					double tmp = capacitance[k * rank + j];
+					capacitance[k * rank + j] = capacitance[p * rank + j];
+					capacitance[p * rank + j] = tmp;
+				}
+			}
+
+			double pivot = capacitance[k * rank + k];
+			if (pivot == 0.0) {
+				throw new ArithmeticException("updated matrix is singular");
+			}
+
+			for (int i = k + 1; i < rank; i++) {
+				double l = capacitance[i * rank + k] / pivot;
+				capacitance[i * rank + k] = l;
+				for (int j = k + 1; j < rank; j++) {
+					capacitance[i * rank + j] -= l * capacitance[k * rank + j];
+				}
+			}
+		}
+	}
+
+	private void solveCapacitance(double[] v) {
+		for (int k = 0; k < rank; k++) {
+			int p = pivots[k];
+			double tmp = v[k];
+			v[k] = v[p];
+			v[p] = tmp;
+		}
+
+		for (int i = 0; i < rank; i++) {
+			for (int j = 0; j < i; j++) {
+				v[i] -= capacitance[i * rank + j] * v[j];
+			}
+		}
+
+		for (int i = rank - 1; i >= 0; i--) {
+			for (int j = i + 1; j < rank; j++) {
+				v[i] -= capacitance[i * rank + j] * v[j];
+			}
+			v[i] /= capacitance[i * rank + i];
+		}
+	}
+}
@@ -40,10 +40,10 @@ public class Matrix {
 		Matrix result = new Matrix(size);
 
 		for (int i = 0; i < size; i++) {
-			for (int j = 0; j < size; j++) {
-				for (int k = 0; k < size; k++) {
-					double value = this.get(k, i) * rhs.get(j, k);
-					result.add(j, i, value);
+			for (int k = 0; k < size; k++) {
+				double lhs = data[i*size + k];
+				for (int j = 0; j < size; j++) {
+					result.data[i*size + j] += lhs * rhs.data[k*size + j];
 				}
 			}
 		}
@@ -75,12 +75,6 @@ public class Matrix {
 		data[y*size + x] += value;
 	}
 
-	void clearRow(int row) {
-		for (int i = 0; i < size; i++) {
-			data[row*size + i] = 0.0;
-		}
-	}
-
 	int getSize() {
 		return size;
 	}
@@ -0,0 +1,241 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/*
+ * draws the undeformed mesh in grey and the deformed one coloured by stress into an
+ * off-screen image. the image is kept until the results, the transform or the size
+ * change, so repainting a window only copies it.
+ *
+ * elements shorter than a pixel are drawn as that pixel and elements entirely off the
+ * image are skipped, which keeps finely subdivided meshes cheap. the stress colours come
+ * from a table built once.
+ *
+ * usage: [-width N] [-height N] [-fit] [-out directory] model.fem ...
+ * renders each model without a display to <name>.png.
+ */
+public class MeshRenderer {
+	private final FESolver solver;
+	private Results results;
+
+	// pixels per metre, and where the origin of the model lands
+	private double scale = 100.0;
+	private double originX = 100.0;
+	private double originY = 100.0;
+
+	private BufferedImage cache;
+
+	private static final Color BACKGROUND = new Color(0, 0, 0);
+	private static final Color UNDEFORMED = new Color(50, 50, 50);
+	private static final Color SPRING = Color.WHITE;
+
+	private static final int GRADIENT_STEPS = 256;
+	private static final Color[] GRADIENT = new Color[GRADIENT_STEPS];
+
+	static {
+		for (int i = 0; i < GRADIENT_STEPS; i++) {
+			double x = i / (double) (GRADIENT_STEPS - 1);
+			GRADIENT[i] = new Color(
+				(int)(255.0 * gradientBasis(x - 1.0)),
+				(int)(255.0 * gradientBasis(x - 0.5)),
+				(int)(255.0 * gradientBasis(x - 0.0))
+			);
+		}
+	}
+
+	private static final int LEGEND_X = 10;
+	private static final int LEGEND_Y = 10;
+	private static final int LEGEND_SIZE = 10;
+
+	public MeshRenderer(FESolver solver, Results results) {
+		this.solver = solver;
+		this.results = results;
+	}
+
+	private static double gradientBasis(double x) {
+		return Math.exp(-x*x*4.5);
+	}
+
+	// blue through green to red for a value from 0 to 1, clamped
+	public static Color gradient(double normalizedValue) {
+		if (!(normalizedValue > 0.0)) {
+			return GRADIENT[0];
+		}
+		return GRADIENT[(int) Math.min(GRADIENT_STEPS - 1, normalizedValue * (GRADIENT_STEPS - 1) + 0.5)];
+	}
+
+	// the image for the current results, drawn again only if something changed since the last call
+	public BufferedImage render(int width, int height) {
+		if (cache == null || cache.getWidth() != width || cache.getHeight() != height) {
+			cache = draw(width, height);
+		}
+		return cache;
+	}
+
+	private BufferedImage draw(int width, int height) {
+		BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(BACKGROUND);
+		g.fillRect(0, 0, width, height);
+
+		NodeStore nodes = solver.getNodes();
+		ArrayList<Element> elements = solver.getElements();
+
+		// before
+		g.setColor(UNDEFORMED);
+		for (var elem : elements) {
+			if (elem instanceof BeamElement || elem instanceof SpringElement) {
+				int n1 = elem.getNode(0);
+				int n2 = elem.getNode(1);
+				drawSegment(image, g, nodes.getX(n1), nodes.getY(n1), nodes.getX(n2), nodes.getY(n2));
+			}
+		}
+
+		// after, beams coloured by their stress
+		double minStress = results.getMin(Results.Quantity.STRESS);
+		double range = results.getMax(Results.Quantity.STRESS) - minStress;
+		for (int e = 0; e < elements.size(); e++) {
+			Element elem = elements.get(e);
+			if (elem instanceof BeamElement) {
+				g.setColor(gradient(range > 0.0 ? (results.get(Results.Quantity.STRESS, e) - minStress) / range : 0.0));
+			} else if (elem instanceof SpringElement) {
+				g.setColor(SPRING);
+			} else {
+				continue;
+			}
+
+			int n1 = elem.getNode(0);
+			int n2 = elem.getNode(1);
+			drawSegment(image, g, results.getDeformedX(n1), results.getDeformedY(n1), results.getDeformedX(n2), results.getDeformedY(n2));
+		}
+
+		// legend, low to high
+		int length = Math.max(0, width - 30);
+		for (int i = 0; i < length; i++) {
+			g.setColor(gradient(i / (double) length));
+			g.fillRect(LEGEND_X + i, LEGEND_Y, LEGEND_SIZE, LEGEND_SIZE);
+		}
+
+		g.dispose();
+		return image;
+	}
+
+	private void drawSegment(BufferedImage image, Graphics2D g, double x1, double y1, double x2, double y2) {
+		double px1 = originX + x1 * scale;
+		double py1 = originY - y1 * scale;
+		double px2 = originX + x2 * scale;
+		double py2 = originY - y2 * scale;
+
+		// nothing to draw if both ends are past the same edge
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if ((px1 < 0.0 && px2 < 0.0) || (py1 < 0.0 && py2 < 0.0) || (px1 >= width && px2 >= width) || (py1 >= height && py2 >= height)) {
+			return;
+		}
+
+		// shorter than a pixel, one pixel it is
+		if (Math.abs(px2 - px1) < 1.0 && Math.abs(py2 - py1) < 1.0) {
+			int x = (int) px1;
+			int y = (int) py1;
+			if (x >= 0 && y >= 0 && x < width && y < height) {
+				image.setRGB(x, y, g.getColor().getRGB());
+			}
+			return;
+		}
+
+		g.drawLine((int) px1, (int) py1, (int) px2, (int) py2);
+	}
+
+	// new results for the same model, drawn on the next render
+	public void setResults(Results results) {
+		this.results = results;
+		this.cache = null;
+	}
+
+	public Results getResults() {
+		return results;
+	}
+
+	public void setTransform(double scale, double originX, double originY) {
+		this.scale = scale;
+		this.originX = originX;
+		this.originY = originY;
+		this.cache = null;
+	}
+
+	// picks the transform so the mesh, before and after, fills the image with the given margin in pixels
+	public void fit(int width, int height, int margin) {
+		NodeStore nodes = solver.getNodes();
+		if (nodes.size() == 0) {
+			return;
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < nodes.size(); i++) {
+			minX = Math.min(minX, Math.min(nodes.getX(i), results.getDeformedX(i)));
+			minY = Math.min(minY, Math.min(nodes.getY(i), results.getDeformedY(i)));
+			maxX = Math.max(maxX, Math.max(nodes.getX(i), results.getDeformedX(i)));
+			maxY = Math.max(maxY, Math.max(nodes.getY(i), results.getDeformedY(i)));
+		}
+
+		double size = Math.max(maxX - minX, maxY - minY);
+		double fitted = size > 0.0 ? Math.min(width, height) - 2.0 * margin : 1.0;
+		double s = size > 0.0 ? fitted / size : 1.0;
+		setTransform(s,
+			0.5 * width - 0.5 * (minX + maxX) * s,
+			0.5 * height + 0.5 * (minY + maxY) * s);
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		int width = 512;
+		int height = 512;
+		boolean fit = false;
+		Path output = Path.of(".");
+		ArrayList<String> models = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-width" -> width = Integer.parseInt(args[++i]);
+				case "-height" -> height = Integer.parseInt(args[++i]);
+				case "-fit" -> fit = true;
+				case "-out" -> output = Path.of(args[++i]);
+				default -> models.add(args[i]);
+			}
+		}
+		if (models.isEmpty()) {
+			System.err.println("usage: --render [-width N] [-height N] [-fit] [-out directory] model.fem ...");
+			return;
+		}
+
+		for (String model : models) {
+			FESolver solver = new FESolver();
+			solver.setLinearSolver(new SkylineSolver());
+			solver.loadFromFile(model);
+			solver.buildMatrix();
+			Results results = solver.computeResults(solver.solveDisplacements());
+
+			MeshRenderer renderer = new MeshRenderer(solver, results);
+			if (fit) {
+				renderer.fit(width, height, 40);
+			}
+
+			String name = Path.of(model).getFileName().toString();
+			if (name.endsWith(".fem")) {
+				name = name.substring(0, name.length() - 4);
+			}
+			Path file = output.resolve(name + ".png");
+			if (!ImageIO.write(renderer.render(width, height), "png", file.toFile())) {
+				throw new IOException("no png writer available");
+			}
+			System.out.println("Wrote " + file);
+		}
+	}
+}
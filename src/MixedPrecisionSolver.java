@@ -0,0 +1,485 @@
+import java.util.Arrays;
+
+/*
+ * supernodal cholesky factorization kept in float, half the memory and memory traffic of
+ * SparseCholeskySolver, with the accuracy of a double solve won back by iterative
+ * refinement:
+ *
+ *   x = L^-T L^-1 b,  then repeatedly  r = b - K x  in double against the original K,
+ *   x += L^-T L^-1 r
+ *
+ * until the backward error |r| / (|K| |x|) is down to what a double solve leaves, the test
+ * of lapack's dsposv. every round gains about as many digits as float holds less those
+ * the matrix's condition costs, so a well conditioned model converges in a few. the
+ * matrix is scaled to a unit diagonal before it is rounded to float, which keeps stiff
+ * beams and soft springs in the same model within float's range and precision.
+ *
+ * when the float factorization breaks down, or refinement stops gaining before the
+ * tolerance, the solve falls back to a double factorization, made the first time it is
+ * needed and kept until the next factorize. refinement against the same factor would stall
+ * again, so from then on every solve goes straight to the fallback and the float factor
+ * is dropped.
+ */
+public class MixedPrecisionSolver implements LinearSolver {
+	private SymbolicCholesky symbolic;
+
+	// supernode s as in SparseCholeskySolver, in float
+	private float[][] blocks;
+
+	// K is factorized as D K D with D = diag(K)^-1/2 in the original order
+	private double[] scale;
+	private SparseMatrix matrix;
+	private double matrixNorm;
+
+	private final LinearSolver fallback;
+	private boolean fallbackFactorized;
+
+	// backward error |b - K x| / (|K| |x|) to reach, times the square root of the size,
+	// and refinement rounds before giving up
+	private double tolerance;
+	private int maxIterations;
+
+	// a round has to shrink the residual at least this much, or refinement has stalled
+	private static final double STALL_RATIO = 0.5;
+
+	// of the last solve: refinement rounds after the first float solve, backward error after
+	// each round starting with the first solve, and whether the fallback produced it
+	private int iterations;
+	private double[] residuals;
+	private boolean usedFallback;
+	private boolean floatFailed;
+
+	// over all solves since the last factorize
+	private int solveCount;
+	private int fallbackCount;
+
+	public MixedPrecisionSolver() {
+		this(new SparseCholeskySolver());
+	}
+
+	public MixedPrecisionSolver(LinearSolver fallback) {
+		this.fallback = fallback;
+		this.tolerance = Math.ulp(1.0);
+		this.maxIterations = 10;
+		this.residuals = new double[0];
+	}
+
+	@Override
+	public void factorize(SparseMatrix matrix) {
+		this.matrix = matrix;
+		this.fallbackFactorized = false;
+		this.solveCount = 0;
+		this.fallbackCount = 0;
+
+		int size = matrix.getSize();
+		int[] rowPointers = matrix.getRowPointers();
+		double[] values = matrix.getValues();
+		matrixNorm = 0.0;
+		for (int i = 0; i < size; i++) {
+			double sum = 0.0;
+			for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+				sum += Math.abs(values[p]);
+			}
+			matrixNorm = Math.max(matrixNorm, sum);
+		}
+
+		scale = new double[size];
+		for (int i = 0; i < size; i++) {
+			double diagonal = matrix.get(i, i);
+			if (!(diagonal > 0.0)) {
+				throw new ArithmeticException("matrix is not positive definite at row " + i);
+			}
+			scale[i] = 1.0 / Math.sqrt(diagonal);
+		}
+
+		if (symbolic == null || !symbolic.matches(matrix, 0)) {
+			symbolic = new SymbolicCholesky(matrix);
+		}
+
+		int count = symbolic.getSupernodeCount();
+		blocks = new float[count][];
+		floatFailed = false;
+		try {
+			// children are always numbered before their parents
+			for (int s = 0; s < count; s++) {
+				factorSupernode(s);
+			}
+		} catch (ArithmeticException e) {
+			// lost to rounding, the double factorization decides whether K really is indefinite
+			blocks = null;
+			floatFailed = true;
+			factorizeFallback();
+		}
+	}
+
+	private void factorizeFallback() {
+		if (!fallbackFactorized) {
+			fallback.factorize(matrix);
+			fallbackFactorized = true;
+		}
+	}
+
+	private void factorSupernode(int s) {
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+
+		int first = start[s];
+		int width = start[s + 1] - first;
+		int rows = rowPointers[s + 1] - rowPointers[s];
+		float[] block = new float[(width + rows) * width];
+
+		gather(s, block);
+
+		// left-looking: subtract L_k L_k^T for every supernode k with rows in this one
+		int[] updatePointers = symbolic.getUpdatePointers();
+		int[] updateSupernodes = symbolic.getUpdateSupernodes();
+		int[] updateOffsets = symbolic.getUpdateOffsets();
+		int[] updateEnds = symbolic.getUpdateEnds();
+		for (int u = updatePointers[s]; u < updatePointers[s + 1]; u++) {
+			int k = updateSupernodes[u];
+			update(s, block, k, updateOffsets[u], updateEnds[u], rowPointers[k + 1] - rowPointers[k]);
+		}
+
+		// dense cholesky of the diagonal block
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j <= i; j++) {
+				float sum = block[i * width + j];
+				for (int k = 0; k < j; k++) {
+					sum -= block[i * width + k] * block[j * width + k];
+				}
+
+				if (i == j) {
+					if (!(sum > 0.0f) || !Float.isFinite(sum)) {
+						throw new ArithmeticException("float factorization broke down at row " + symbolic.getPermutation()[first + i]);
+					}
+					block[i * width + i] = (float) Math.sqrt(sum);
+				} else {
+					block[i * width + j] = sum / block[j * width + j];
+				}
+			}
+		}
+
+		// rows below: L(r, :) = A(r, :) L_d^-T
+		for (int r = width; r < width + rows; r++) {
+			for (int j = 0; j < width; j++) {
+				float sum = block[r * width + j];
+				for (int k = 0; k < j; k++) {
+					sum -= block[r * width + k] * block[j * width + k];
+				}
+				block[r * width + j] = sum / block[j * width + j];
+			}
+		}
+
+		blocks[s] = block;
+	}
+
+	// entries of the scaled, permuted lower triangle that fall into supernode s
+	private void gather(int s, float[] block) {
+		int[] start = symbolic.getSupernodeStart();
+		int[] permutation = symbolic.getPermutation();
+		int[] inverse = symbolic.getInverse();
+		int[] matrixRowPointers = matrix.getRowPointers();
+		int[] matrixColumnIndices = matrix.getColumnIndices();
+		double[] values = matrix.getValues();
+
+		int first = start[s];
+		int width = start[s + 1] - first;
+		for (int c = 0; c < width; c++) {
+			int row = permutation[first + c];
+			for (int p = matrixRowPointers[row]; p < matrixRowPointers[row + 1]; p++) {
+				int column = matrixColumnIndices[p];
+				int i = inverse[column];
+				if (i >= first + c) {
+					block[symbolic.position(s, i) * width + c] += (float) (values[p] * scale[row] * scale[column]);
+				}
+			}
+		}
+	}
+
+	// SparseCholeskySolver's update in float, for all rows of k from columnOffset on
+	private void update(int s, float[] block, int k, int columnOffset, int columnEnd, int sourceCount) {
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+		int[] rowIndices = symbolic.getRowIndices();
+
+		int first = start[s];
+		int width = start[s + 1] - first;
+
+		float[] source = blocks[k];
+		int sourceWidth = start[k + 1] - start[k];
+		int sourceRows = rowPointers[k];
+
+		int columns = columnEnd - columnOffset;
+		int count = sourceCount - columnOffset;
+		float[] product = new float[count * columns];
+		multiplyTransposed(source, sourceWidth, sourceWidth + columnOffset, count, sourceWidth + columnOffset, columns, product);
+
+		for (int a = columnOffset; a < sourceCount; a++) {
+			int target = symbolic.position(s, rowIndices[sourceRows + a]) * width;
+			int offset = (a - columnOffset) * columns - columnOffset;
+			int end = Math.min(a + 1, columnEnd);
+			for (int b = columnOffset; b < end; b++) {
+				block[target + rowIndices[sourceRows + b] - first] -= product[offset + b];
+			}
+		}
+	}
+
+	// out = X(i, :) X(j, :)^T like SparseCholeskySolver's, on 2x2 tiles
+	private static void multiplyTransposed(float[] x, int width, int i, int m, int j, int n, float[] out) {
+		int a = 0;
+		for (; a + 1 < m; a += 2) {
+			int ra = (i + a) * width;
+			int b = 0;
+			for (; b + 1 < n; b += 2) {
+				int rb = (j + b) * width;
+				float s00 = 0.0f;
+				float s01 = 0.0f;
+				float s10 = 0.0f;
+				float s11 = 0.0f;
+				for (int c = 0; c < width; c++) {
+					float a0 = x[ra + c];
+					float a1 = x[ra + width + c];
+					float b0 = x[rb + c];
+					float b1 = x[rb + width + c];
+					s00 += a0 * b0;
+					s01 += a0 * b1;
+					s10 += a1 * b0;
+					s11 += a1 * b1;
+				}
+				out[a * n + b] = s00;
+				out[a * n + b + 1] = s01;
+				out[(a + 1) * n + b] = s10;
+				out[(a + 1) * n + b + 1] = s11;
+			}
+			if (b < n) {
+				out[a * n + b] = dot(x, ra, (j + b) * width, width);
+				out[(a + 1) * n + b] = dot(x, ra + width, (j + b) * width, width);
+			}
+		}
+		if (a < m) {
+			for (int b = 0; b < n; b++) {
+				out[a * n + b] = dot(x, (i + a) * width, (j + b) * width, width);
+			}
+		}
+	}
+
+	private static float dot(float[] x, int i, int j, int length) {
+		float sum = 0.0f;
+		for (int c = 0; c < length; c++) {
+			sum += x[i + c] * x[j + c];
+		}
+		return sum;
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs) {
+		int size = scale.length;
+		double[] b = rhs.getData();
+		solveCount++;
+		usedFallback = false;
+		iterations = 0;
+
+		if (maxNorm(b) == 0.0) {
+			residuals = new double[] { 0.0 };
+			return new MyVector(size);
+		}
+		if (floatFailed) {
+			return solveFallback(b, new double[0]);
+		}
+
+		// the backward error a double solve reaches, as lapack's dsposv asks for
+		double target = tolerance * Math.sqrt(size);
+
+		double[] x = new double[size];
+		double[] r = b.clone();
+		double[] history = new double[maxIterations + 1];
+		int rounds = 0;
+		while (true) {
+			correct(r, x);
+			double error = backwardError(b, x, r);
+			history[rounds] = error;
+
+			if (error <= target) {
+				iterations = rounds;
+				residuals = Arrays.copyOf(history, rounds + 1);
+				return new MyVector(x);
+			}
+			if (rounds == maxIterations || !Double.isFinite(error) || (rounds > 0 && error > STALL_RATIO * history[rounds - 1])) {
+				iterations = rounds;
+				blocks = null;
+				floatFailed = true;
+				return solveFallback(b, Arrays.copyOf(history, rounds + 1));
+			}
+			rounds++;
+		}
+	}
+
+	// r = b - K x in double, returns |r| / (|K| |x|) in the max norm
+	private double backwardError(double[] b, double[] x, double[] r) {
+		matrix.multiply(x, r);
+		for (int i = 0; i < r.length; i++) {
+			r[i] = b[i] - r[i];
+		}
+		return maxNorm(r) / (matrixNorm * maxNorm(x));
+	}
+
+	// x += the float solve of K d = r, scaled so r does not underflow in float
+	private void correct(double[] r, double[] x) {
+		int size = scale.length;
+		int[] permutation = symbolic.getPermutation();
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+		int[] rowIndices = symbolic.getRowIndices();
+
+		double magnitude = 0.0;
+		for (int i = 0; i < size; i++) {
+			magnitude = Math.max(magnitude, Math.abs(r[i] * scale[i]));
+		}
+		if (magnitude == 0.0) {
+			return;
+		}
+
+		// D K D y = D r / magnitude, d = magnitude D y
+		float[] y = new float[size];
+		for (int i = 0; i < size; i++) {
+			int row = permutation[i];
+			y[i] = (float) (r[row] * scale[row] / magnitude);
+		}
+
+		// L z = y
+		for (int s = 0; s < blocks.length; s++) {
+			float[] block = blocks[s];
+			int first = start[s];
+			int width = start[s + 1] - first;
+
+			for (int i = 0; i < width; i++) {
+				float sum = y[first + i];
+				for (int k = 0; k < i; k++) {
+					sum -= block[i * width + k] * y[first + k];
+				}
+				y[first + i] = sum / block[i * width + i];
+			}
+
+			for (int p = rowPointers[s]; p < rowPointers[s + 1]; p++) {
+				int offset = (width + p - rowPointers[s]) * width;
+				float sum = 0.0f;
+				for (int k = 0; k < width; k++) {
+					sum += block[offset + k] * y[first + k];
+				}
+				y[rowIndices[p]] -= sum;
+			}
+		}
+
+		// L^T y = z
+		for (int s = blocks.length - 1; s >= 0; s--) {
+			float[] block = blocks[s];
+			int first = start[s];
+			int width = start[s + 1] - first;
+
+			for (int p = rowPointers[s]; p < rowPointers[s + 1]; p++) {
+				int offset = (width + p - rowPointers[s]) * width;
+				float value = y[rowIndices[p]];
+				for (int k = 0; k < width; k++) {
+					y[first + k] -= block[offset + k] * value;
+				}
+			}
+
+			for (int i = width - 1; i >= 0; i--) {
+				float value = y[first + i] / block[i * width + i];
+				y[first + i] = value;
+				for (int k = 0; k < i; k++) {
+					y[first + k] -= block[i * width + k] * value;
+				}
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			int row = permutation[i];
+			x[row] += magnitude * scale[row] * y[i];
+		}
+	}
+
+	private MyVector solveFallback(double[] b, double[] history) {
+		factorizeFallback();
+		fallbackCount++;
+		usedFallback = true;
+
+		MyVector result = fallback.solve(new MyVector(b));
+
+		// the fallback's backward error goes last
+		residuals = Arrays.copyOf(history, history.length + 1);
+		residuals[history.length] = backwardError(b, result.getData(), new double[b.length]);
+		return result;
+	}
+
+	private static double maxNorm(double[] x) {
+		double max = 0.0;
+		for (double value : x) {
+			max = Math.max(max, Math.abs(value));
+		}
+		return max;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	// backward error of the last solve after each round, the fallback's last if it was used
+	public double[] getResiduals() {
+		return residuals;
+	}
+
+	public double getResidual() {
+		return residuals.length > 0 ? residuals[residuals.length - 1] : 0.0;
+	}
+
+	// whether the last solve reached the tolerance by refinement alone
+	public boolean isConverged() {
+		return !usedFallback;
+	}
+
+	public boolean usedFallback() {
+		return usedFallback;
+	}
+
+	// the float factorization broke down or refinement stalled on it, every solve until the
+	// next factorize goes to the fallback
+	public boolean isFloatFailed() {
+		return floatFailed;
+	}
+
+	public int getSolveCount() {
+		return solveCount;
+	}
+
+	public int getFallbackCount() {
+		return fallbackCount;
+	}
+
+	// bytes held by the float factor
+	public long getFactorBytes() {
+		long total = 0;
+		if (blocks != null) {
+			for (float[] block : blocks) {
+				total += 4L * block.length;
+			}
+		}
+		return total;
+	}
+}
@@ -0,0 +1,398 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * natural frequencies and mode shapes, K phi = lambda M phi with lambda = omega^2, of the
+ * modes nearest a shift, by default the lowest ones. shift-invert lanczos: the operator
+ * (K - shift M)^-1 M turns the wanted eigenvalues into the largest ones, which lanczos
+ * finds first, and every step costs one solve against a single sparse factorization.
+ *
+ * the lanczos vectors are kept orthonormal in the M inner product by full
+ * reorthogonalization, so no spurious copies of converged modes show up. the start vector
+ * goes through the operator once, which removes everything on massless dofs. a mode counts
+ * as converged when its residual estimate, the last lanczos beta times the last entry of
+ * its eigenvector in the tridiagonal matrix, is below the tolerance relative to it.
+ * a single start vector only sees one copy of an exactly repeated eigenvalue.
+ *
+ * at shift 0 the solver's own factorization of K is used, anything else gets a skyline
+ * LDL^T of K - shift M, which does not mind it being indefinite.
+ *
+ * usage: [-modes N] [-shift x] [-lumped] model.fem
+ */
+public class ModalAnalysis {
+	// shape is mass normalized, phi^T M phi = 1, with the prescribed dofs at zero
+	public record Mode(double eigenvalue, double frequency, ArrayList<Node> shape) { }
+
+	private final FESolver solver;
+
+	private boolean lumped;
+	private double shift;
+	private double tolerance;
+
+	// lanczos vectors kept at most, 0 to pick from the mode count
+	private int maxSteps;
+
+	private int steps;
+	private int convergedCount;
+	private int wantedCount;
+	private int eigenvaluesBelowShift;
+
+	public ModalAnalysis(FESolver solver) {
+		this.solver = solver;
+		this.lumped = false;
+		this.shift = 0.0;
+		this.tolerance = 1e-10;
+		this.maxSteps = 0;
+	}
+
+	// the count modes nearest the shift, by eigenvalue. the model has to be assembled
+	public ArrayList<Mode> computeModes(int count) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("mode count has to be positive, got " + count);
+		}
+
+		SparseMatrix stiffnessMatrix = solver.getStiffnessMatrix();
+		if (stiffnessMatrix == null) {
+			throw new IllegalStateException("modal analysis needs an assembled stiffness matrix");
+		}
+
+		SparseMatrix massMatrix = solver.assembleMassMatrix(lumped);
+		int n = massMatrix.getSize();
+		LinearSolver shifted = factorizeShifted(stiffnessMatrix, massMatrix);
+
+		int limit = Math.min(n, maxSteps > 0 ? maxSteps : Math.max(2 * count, count + 30));
+		count = Math.min(count, n);
+
+		// lanczos vectors q and M q
+		double[][] q = new double[limit][];
+		double[][] mq = new double[limit][];
+		double[] alpha = new double[limit];
+		double[] beta = new double[limit];
+
+		double[] w = new double[n];
+		Random random = new Random(1);
+		for (int i = 0; i < n; i++) {
+			w[i] = random.nextDouble() - 0.5;
+		}
+		double[] mw = new double[n];
+		massMatrix.multiply(w, mw);
+		w = apply(shifted, mw);
+		massMatrix.multiply(w, mw);
+
+		double norm = Math.sqrt(dot(w, mw));
+		if (!(norm > 0.0)) {
+			throw new IllegalStateException("the model has no mass on its free dofs");
+		}
+
+		double[] eigenvalues = null;
+		double[][] eigenvectors = null;
+		int[] wanted = null;
+		double largest = 0.0;
+
+		steps = 0;
+		convergedCount = 0;
+		wantedCount = 0;
+		while (true) {
+			q[steps] = scale(w, 1.0 / norm);
+			mq[steps] = scale(mw, 1.0 / norm);
+
+			w = apply(shifted, mq[steps]);
+			alpha[steps] = dot(mq[steps], w);
+
+			// twice is enough to keep orthogonality at machine precision
+			for (int pass = 0; pass < 2; pass++) {
+				for (int i = 0; i <= steps; i++) {
+					double h = dot(mq[i], w);
+					for (int k = 0; k < n; k++) {
+						w[k] -= h * q[i][k];
+					}
+				}
+			}
+			massMatrix.multiply(w, mw);
+			norm = Math.sqrt(Math.max(0.0, dot(w, mw)));
+			beta[steps] = norm;
+			largest = Math.max(largest, Math.abs(alpha[steps]));
+			steps++;
+
+			// nothing left to find once the space is invariant, e.g. all dofs with mass are covered
+			boolean exhausted = norm <= 1e-12 * largest;
+			if (!exhausted && steps < count && steps < limit) {
+				continue;
+			}
+
+			eigenvalues = Arrays.copyOf(alpha, steps);
+			double[] offDiagonal = Arrays.copyOf(beta, steps);
+			offDiagonal[steps - 1] = 0.0;
+			eigenvectors = new double[steps][steps];
+			for (int i = 0; i < steps; i++) {
+				eigenvectors[i][i] = 1.0;
+			}
+			tridiagonalEigen(eigenvalues, offDiagonal, eigenvectors);
+			wanted = largestMagnitudes(eigenvalues, Math.min(count, steps));
+			wantedCount = wanted.length;
+
+			convergedCount = 0;
+			for (int index : wanted) {
+				if (exhausted || Math.abs(norm * eigenvectors[steps - 1][index]) <= tolerance * Math.abs(eigenvalues[index])) {
+					convergedCount++;
+				}
+			}
+			if (exhausted || convergedCount == wanted.length || steps == limit) {
+				break;
+			}
+		}
+
+		// ritz vectors x = Q s, theta = 1 / (lambda - shift)
+		ArrayList<Mode> modes = new ArrayList<>();
+		for (int index : wanted) {
+			MyVector shape = new MyVector(n);
+			for (int i = 0; i < steps; i++) {
+				double s = eigenvectors[i][index];
+				for (int k = 0; k < n; k++) {
+					shape.set(k, shape.get(k) + s * q[i][k]);
+				}
+			}
+			double eigenvalue = shift + 1.0 / eigenvalues[index];
+			double frequency = Math.sqrt(Math.max(0.0, eigenvalue)) / (2.0 * Math.PI);
+			modes.add(new Mode(eigenvalue, frequency, solver.collectDisplacements(shape, true)));
+		}
+		modes.sort((a, b) -> Double.compare(a.eigenvalue(), b.eigenvalue()));
+		return modes;
+	}
+
+	private LinearSolver factorizeShifted(SparseMatrix stiffnessMatrix, SparseMatrix massMatrix) {
+		eigenvaluesBelowShift = -1;
+		if (shift == 0.0) {
+			solver.factorize();
+			return null;
+		}
+
+		double[] k = stiffnessMatrix.getValues();
+		double[] m = massMatrix.getValues();
+		double[] values = new double[k.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = k[i] - shift * m[i];
+		}
+		SparseMatrix matrix = new SparseMatrix(stiffnessMatrix.getSize(), stiffnessMatrix.getRowPointers(), stiffnessMatrix.getColumnIndices(), values);
+		matrix.setBlockStarts(stiffnessMatrix.getBlockStarts());
+
+		SkylineSolver skyline = new SkylineSolver();
+		skyline.factorize(matrix);
+
+		// sylvester's inertia, one negative pivot per eigenvalue below the shift
+		eigenvaluesBelowShift = 0;
+		for (double d : skyline.getDiagonal()) {
+			if (d < 0.0) {
+				eigenvaluesBelowShift++;
+			}
+		}
+		return skyline;
+	}
+
+	// (K - shift M)^-1 x, through the model's solver when there is no shift
+	private double[] apply(LinearSolver shifted, double[] x) {
+		MyVector rhs = new MyVector(x);
+		MyVector y = shifted != null ? shifted.solve(rhs) : solver.solveSystem(new MyVector[] { rhs }, null)[0];
+		return y.getData();
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static double[] scale(double[] x, double factor) {
+		double[] result = new double[x.length];
+		for (int i = 0; i < x.length; i++) {
+			result[i] = factor * x[i];
+		}
+		return result;
+	}
+
+	// indices of the count eigenvalues largest in magnitude, largest first
+	private static int[] largestMagnitudes(double[] eigenvalues, int count) {
+		Integer[] order = new Integer[eigenvalues.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(Math.abs(eigenvalues[b]), Math.abs(eigenvalues[a])));
+
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = order[i];
+		}
+		return result;
+	}
+
+	/*
+	 * implicit QL with wilkinson shifts for a symmetric tridiagonal matrix, diagonal d and
+	 * off diagonal e[i] between i and i + 1 (e[n - 1] unused). d ends up holding the
+	 * eigenvalues, the columns of v the eigenvectors when v starts as the identity.
+	 */
+	private static void tridiagonalEigen(double[] d, double[] e, double[][] v) {
+		int n = d.length;
+		double eps = Math.ulp(1.0);
+		double shift = 0.0;
+		double largest = 0.0;
+
+		for (int l = 0; l < n; l++) {
+			largest = Math.max(largest, Math.abs(d[l]) + Math.abs(e[l]));
+			int m = l;
+			while (m < n - 1 && Math.abs(e[m]) > eps * largest) {
+				m++;
+			}
+
+			int iterations = 0;
+			while (m > l) {
+				if (++iterations > 64) {
+					throw new ArithmeticException("tridiagonal eigenvalues did not converge");
+				}
+
+				double g = d[l];
+				double p = (d[l + 1] - g) / (2.0 * e[l]);
+				double r = Math.hypot(p, 1.0);
+				if (p < 0.0) {
+					r = -r;
+				}
+				d[l] = e[l] / (p + r);
+				d[l + 1] = e[l] * (p + r);
+				double dl1 = d[l + 1];
+				double h = g - d[l];
+				for (int i = l + 2; i < n; i++) {
+					d[i] -= h;
+				}
+				shift += h;
+
+				// plane rotations from m back to l
+				p = d[m];
+				double c = 1.0;
+				double c2 = 1.0;
+				double c3 = 1.0;
+				double el1 = e[l + 1];
+				double s = 0.0;
+				double s2 = 0.0;
+				for (int i = m - 1; i >= l; i--) {
+					c3 = c2;
+					c2 = c;
+					s2 = s;
+					g = c * e[i];
+					h = c * p;
+					r = Math.hypot(p, e[i]);
+					e[i + 1] = s * r;
+					s = e[i] / r;
+					c = p / r;
+					p = c * d[i] - s * g;
+					d[i + 1] = h + s * (c * g + s * d[i]);
+					for (int k = 0; k < n; k++) {
+						h = v[k][i + 1];
+						v[k][i + 1] = s * v[k][i] + c * h;
+						v[k][i] = c * v[k][i] - s * h;
+					}
+				}
+				p = -s * s2 * c3 * el1 * e[l] / dl1;
+				e[l] = s * p;
+				d[l] = c * p;
+
+				if (Math.abs(e[l]) <= eps * largest) {
+					break;
+				}
+			}
+			d[l] += shift;
+			e[l] = 0.0;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int count = 6;
+		double shift = 0.0;
+		boolean lumped = false;
+		String model = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-modes" -> count = Integer.parseInt(args[++i]);
+				case "-shift" -> shift = Double.parseDouble(args[++i]);
+				case "-lumped" -> lumped = true;
+				default -> model = args[i];
+			}
+		}
+		if (model == null) {
+			System.err.println("usage: --modal [-modes N] [-shift x] [-lumped] model.fem");
+			return;
+		}
+
+		FESolver solver = new FESolver();
+		solver.setLinearSolver(new SparseCholeskySolver());
+		solver.loadFromFile(model);
+		solver.buildMatrix();
+
+		ModalAnalysis analysis = new ModalAnalysis(solver);
+		analysis.setLumped(lumped);
+		analysis.setShift(shift);
+		ArrayList<Mode> modes = analysis.computeModes(count);
+
+		System.out.printf("%5s %14s %14s %14s%n", "mode", "eigenvalue", "omega [rad/s]", "frequency [Hz]");
+		for (int i = 0; i < modes.size(); i++) {
+			Mode mode = modes.get(i);
+			System.out.printf("%5d %14.6e %14.6e %14.6e%n", i + 1, mode.eigenvalue(), 2.0 * Math.PI * mode.frequency(), mode.frequency());
+		}
+		System.out.println(analysis.getSteps() + " lanczos steps, " + analysis.getConvergedCount() + " of " + modes.size() + " modes converged");
+		if (analysis.getEigenvaluesBelowShift() >= 0) {
+			System.out.println(analysis.getEigenvaluesBelowShift() + " eigenvalues below the shift");
+		}
+	}
+
+	public boolean isLumped() {
+		return lumped;
+	}
+
+	public void setLumped(boolean lumped) {
+		this.lumped = lumped;
+	}
+
+	public double getShift() {
+		return shift;
+	}
+
+	public void setShift(double shift) {
+		this.shift = shift;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public int getMaxSteps() {
+		return maxSteps;
+	}
+
+	public void setMaxSteps(int maxSteps) {
+		this.maxSteps = maxSteps;
+	}
+
+	// lanczos steps of the last computeModes
+	public int getSteps() {
+		return steps;
+	}
+
+	public int getConvergedCount() {
+		return convergedCount;
+	}
+
+	public boolean isConverged() {
+		return steps > 0 && convergedCount == wantedCount;
+	}
+
+	// from the inertia of the shifted factorization, -1 when there was no shift
+	public int getEigenvaluesBelowShift() {
+		return eigenvaluesBelowShift;
+	}
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * writes synthetic .fem models of any size, for benchmarks and scaling tests.
+ * all members are beams with unit properties and there are no subdivisions, so the
+ * node count of the file is the node count that gets solved.
+ */
+public class ModelGenerator {
+	private static final String BEAM_PROPERTIES = "1.0, 0.01, 0.0001";
+
+	/*
+	 * warren truss of the given number of panels, clamped at both ends and loaded on every
+	 * bottom chord node. has 3 * (2 * panels + 1) degrees of freedom.
+	 */
+	public static void writeTruss(Path path, int panels) throws IOException {
+		if (panels < 1) {
+			throw new IllegalArgumentException("a truss needs at least one panel");
+		}
+
+		try (BufferedWriter out = Files.newBufferedWriter(path)) {
+			out.write("// warren truss, " + panels + " panels\n");
+
+			// bottom chord is 0..panels, top chord panels+1..2*panels
+			out.write("#Node\n");
+			for (int i = 0; i <= panels; i++) {
+				out.write(i + ", " + i + ".0, 0.0, 0.0\n");
+			}
+			for (int i = 0; i < panels; i++) {
+				out.write((panels + 1 + i) + ", " + i + ".5, 1.0, 0.0\n");
+			}
+
+			out.write("#Element\n");
+			for (int i = 0; i < panels; i++) {
+				int top = panels + 1 + i;
+				writeBeam(out, i, i + 1);
+				writeBeam(out, i, top);
+				writeBeam(out, top, i + 1);
+				if (i + 1 < panels) {
+					writeBeam(out, top, top + 1);
+				}
+			}
+
+			out.write("#Boundary\n");
+			out.write("0, 0.0, 0.0, 0.0\n");
+			out.write(panels + ", 0.0, 0.0, 0.0\n");
+
+			out.write("#Forces\n");
+			for (int i = 1; i < panels; i++) {
+				out.write(i + ", 0.0, -0.1, 0.0\n");
+			}
+		}
+	}
+
+	/*
+	 * rectangular braced frame of columns x rows panels, fixed along the bottom and pushed
+	 * sideways along the top. has 3 * (columns + 1) * (rows + 1) degrees of freedom.
+	 */
+	public static void writeLattice(Path path, int columns, int rows) throws IOException {
+		if (columns < 1 || rows < 1) {
+			throw new IllegalArgumentException("a lattice needs at least one panel in each direction");
+		}
+
+		try (BufferedWriter out = Files.newBufferedWriter(path)) {
+			out.write("// braced lattice, " + columns + " x " + rows + " panels\n");
+
+			int stride = columns + 1;
+
+			out.write("#Node\n");
+			for (int j = 0; j <= rows; j++) {
+				for (int i = 0; i <= columns; i++) {
+					out.write((j * stride + i) + ", " + i + ".0, " + j + ".0, 0.0\n");
+				}
+			}
+
+			out.write("#Element\n");
+			for (int j = 0; j <= rows; j++) {
+				for (int i = 0; i <= columns; i++) {
+					int node = j * stride + i;
+					if (i < columns) {
+						writeBeam(out, node, node + 1);
+					}
+					if (j < rows) {
+						writeBeam(out, node, node + stride);
+					}
+					if (i < columns && j < rows) {
+						writeBeam(out, node, node + stride + 1);
+					}
+				}
+			}
+
+			out.write("#Boundary\n");
+			for (int i = 0; i <= columns; i++) {
+				out.write(i + ", 0.0, 0.0, 0.0\n");
+			}
+
+			out.write("#Forces\n");
+			for (int i = 0; i <= columns; i++) {
+				out.write((rows * stride + i) + ", 0.1, 0.0, 0.0\n");
+			}
+		}
+	}
+
+	private static void writeBeam(BufferedWriter out, int n1, int n2) throws IOException {
+		out.write("0, " + n1 + ", " + n2 + ", " + BEAM_PROPERTIES + "\n");
+	}
+}
@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/*
+ * binary snapshot of a model after subdivision, optionally with the assembled system and
+ * its skyline factorization. the file is a fixed header followed by a payload of plain
+ * little endian arrays, written and read through a memory mapping.
+ *
+ *   int magic, int version, int flags, long payload length, long crc32 of the payload
+ *   nodes, elements, boundary conditions, load cases
+ *   time stepping, rayleigh damping, amplitudes
+ *   [node order, stiffness matrix of the free dofs]    if FLAG_SYSTEM
+ *   [skyline factor]                                    if FLAG_FACTORIZATION
+ */
+public class ModelSnapshot {
+	private static final int MAGIC = 0x534D4546; // "FEMS"
+	private static final int VERSION = 4;
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+
+	private static final int FLAG_SYSTEM = 1;
+	private static final int FLAG_FACTORIZATION = 2;
+
+	private static final byte ELEMENT_BEAM = 0;
+	private static final byte ELEMENT_SPRING = 1;
+
+	public static void save(FESolver solver, Path path, boolean includeSystem) throws IOException {
+		int flags = 0;
+		if (includeSystem && solver.getStiffnessMatrix() != null) {
+			flags |= FLAG_SYSTEM;
+			if (solver.hasCurrentFactorization() && solver.getLinearSolver() instanceof SkylineSolver) {
+				flags |= FLAG_FACTORIZATION;
+			}
+		}
+
+		// one pass to measure, one to write
+		Writer counter = new Writer(null);
+		writePayload(solver, flags, counter);
+		long payloadLength = counter.position;
+		if (HEADER_SIZE + payloadLength > Integer.MAX_VALUE) {
+			throw new IOException("snapshot would be larger than 2 GB");
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + payloadLength);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.position(HEADER_SIZE);
+			writePayload(solver, flags, new Writer(buffer));
+
+			CRC32 crc = new CRC32();
+			crc.update(buffer.duplicate().position(HEADER_SIZE).limit(HEADER_SIZE + (int) payloadLength));
+
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, VERSION);
+			buffer.putInt(8, flags);
+			buffer.putLong(12, payloadLength);
+			buffer.putLong(20, crc.getValue());
+			buffer.force();
+		}
+	}
+
+	public static void load(FESolver solver, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + " is not a snapshot");
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(path + " is not a snapshot");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException(path + " has snapshot version " + buffer.getInt(4) + ", expected " + VERSION);
+			}
+
+			int flags = buffer.getInt(8);
+			long payloadLength = buffer.getLong(12);
+			if (HEADER_SIZE + payloadLength != channel.size()) {
+				throw new IOException(path + " is truncated");
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(buffer.duplicate().position(HEADER_SIZE));
+			if (crc.getValue() != buffer.getLong(20)) {
+				throw new IOException(path + " is corrupt, checksum mismatch");
+			}
+
+			buffer.position(HEADER_SIZE);
+			try {
+				readPayload(solver, flags, buffer);
+			} catch (IllegalArgumentException e) {
+				throw new IOException(path + " is inconsistent, " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private static void writePayload(FESolver solver, int flags, Writer out) {
+		NodeStore nodes = solver.getNodes();
+		int nodeCount = nodes.size();
+		out.putInt(nodeCount);
+		out.putInts(nodes.getIDs(), nodeCount);
+		out.putDoubles(nodes.getXs(), nodeCount);
+		out.putDoubles(nodes.getYs(), nodeCount);
+		out.putDoubles(nodes.getThetas(), nodeCount);
+
+		ArrayList<Element> elements = solver.getElements();
+		out.putInt(elements.size());
+		for (var elem : elements) {
+			if (elem instanceof BeamElement beam) {
+				out.putByte(ELEMENT_BEAM);
+				out.putInt(beam.getNode1());
+				out.putInt(beam.getNode2());
+				out.putDouble(beam.getYoungsModulus());
+				out.putDouble(beam.getCrossSectionalArea());
+				out.putDouble(beam.getAreaMomentOfInertia());
+				out.putDouble(beam.getDensity());
+			} else if (elem instanceof SpringElement spring) {
+				out.putByte(ELEMENT_SPRING);
+				out.putInt(spring.getNode1());
+				out.putInt(spring.getNode2());
+				out.putDouble(spring.getYoungsModulus());
+				out.putDouble(spring.getShearModulus());
+				out.putDouble(spring.getThickness());
+				out.putDouble(spring.getDensity());
+			} else {
+				throw new IllegalArgumentException("cannot snapshot " + elem.getClass().getSimpleName());
+			}
+		}
+
+		writeConditions(solver.getBoundaryConditions(), out);
+
+		out.putInt(solver.getLoadCases().size());
+		for (var loadCase : solver.getLoadCases().entrySet()) {
+			out.putString(loadCase.getKey());
+			writeConditions(loadCase.getValue(), out);
+		}
+
+		// a time step of 0 stands for no time stepping
+		TransientAnalysis.TimeStepping timeStepping = solver.getTimeStepping();
+		out.putDouble(timeStepping != null ? timeStepping.timeStep() : 0.0);
+		out.putInt(timeStepping != null ? timeStepping.stepCount() : 0);
+		out.putDouble(timeStepping != null ? timeStepping.alpha() : 0.0);
+		out.putDouble(solver.getMassDamping());
+		out.putDouble(solver.getStiffnessDamping());
+
+		out.putInt(solver.getAmplitudes().size());
+		for (var amplitude : solver.getAmplitudes().entrySet()) {
+			int count = amplitude.getValue().times().length;
+			out.putString(amplitude.getKey());
+			out.putInt(count);
+			out.putDoubles(amplitude.getValue().times(), count);
+			out.putDoubles(amplitude.getValue().factors(), count);
+		}
+
+		if ((flags & FLAG_SYSTEM) != 0) {
+			SparseMatrix matrix = solver.getStiffnessMatrix();
+			int size = matrix.getSize();
+
+			// the equation numbering follows from the node order and the boundary conditions
+			out.putInts(solver.getNodeOrder(), nodeCount);
+
+			out.putInt(size);
+			out.putInt(matrix.getNonZeroCount());
+			out.putInts(matrix.getRowPointers(), size + 1);
+			out.putInts(matrix.getColumnIndices(), matrix.getNonZeroCount());
+			out.putDoubles(matrix.getValues(), matrix.getNonZeroCount());
+		}
+
+		if ((flags & FLAG_FACTORIZATION) != 0) {
+			SkylineSolver skyline = (SkylineSolver) solver.getLinearSolver();
+			int size = skyline.getDiagonal().length;
+			out.putInt(size);
+			out.putInt(skyline.getProfileSize());
+			out.putInts(skyline.getFirstColumn(), size);
+			out.putInts(skyline.getRowStart(), size + 1);
+			out.putDoubles(skyline.getLower(), skyline.getProfileSize());
+			out.putDoubles(skyline.getDiagonal(), size);
+		}
+	}
+
+	private static void readPayload(FESolver solver, int flags, ByteBuffer in) {
+		int nodeCount = in.getInt();
+		NodeStore nodes = new NodeStore(getInts(in, nodeCount), getDoubles(in, nodeCount), getDoubles(in, nodeCount), getDoubles(in, nodeCount));
+		solver.setNodes(nodes);
+
+		int elementCount = in.getInt();
+		ArrayList<Element> elements = new ArrayList<>(elementCount);
+		for (int i = 0; i < elementCount; i++) {
+			byte type = in.get();
+			int n1 = in.getInt();
+			int n2 = in.getInt();
+			double a = in.getDouble();
+			double b = in.getDouble();
+			double c = in.getDouble();
+			double density = in.getDouble();
+			if (n1 < 0 || n1 >= nodeCount || n2 < 0 || n2 >= nodeCount) {
+				throw new IllegalArgumentException("element " + i + " connects nodes " + n1 + " and " + n2 + " of " + nodeCount);
+			}
+			switch (type) {
+				case ELEMENT_BEAM -> elements.add(new BeamElement(solver, n1, n2, a, b, c, density));
+				case ELEMENT_SPRING -> elements.add(new SpringElement(solver, n1, n2, a, b, c, density));
+				default -> throw new IllegalArgumentException("element " + i + " has unknown type " + type);
+			}
+		}
+		solver.setElements(elements);
+
+		solver.setBoundaryConditions(readConditions(in));
+
+		int caseCount = in.getInt();
+		solver.getLoadCases().clear();
+		for (int i = 0; i < caseCount; i++) {
+			String name = getString(in);
+			solver.addLoadCase(name, readConditions(in));
+		}
+
+		double timeStep = in.getDouble();
+		int stepCount = in.getInt();
+		double alpha = in.getDouble();
+		solver.setTimeStepping(timeStep > 0.0 ? new TransientAnalysis.TimeStepping(timeStep, stepCount, alpha) : null);
+		double massDamping = in.getDouble();
+		solver.setDamping(massDamping, in.getDouble());
+
+		int amplitudeCount = in.getInt();
+		solver.getAmplitudes().clear();
+		for (int i = 0; i < amplitudeCount; i++) {
+			String name = getString(in);
+			int count = in.getInt();
+			solver.getAmplitudes().put(name, new TransientAnalysis.Amplitude(getDoubles(in, count), getDoubles(in, count)));
+		}
+
+		if ((flags & FLAG_SYSTEM) != 0) {
+			int[] nodeOrder = getInts(in, nodeCount);
+
+			int size = in.getInt();
+			int nonZeros = in.getInt();
+			SparseMatrix matrix = new SparseMatrix(size, getInts(in, size + 1), getInts(in, nonZeros), getDoubles(in, nonZeros));
+
+			boolean factorized = (flags & FLAG_FACTORIZATION) != 0;
+			if (factorized) {
+				int factorSize = in.getInt();
+				int profileSize = in.getInt();
+				SkylineSolver skyline = new SkylineSolver();
+				skyline.restore(getInts(in, factorSize), getInts(in, factorSize + 1), getDoubles(in, profileSize), getDoubles(in, factorSize));
+				solver.setLinearSolver(skyline);
+			}
+
+			solver.restoreSystem(nodeOrder, matrix, factorized);
+		}
+	}
+
+	private static void writeConditions(BoundaryConditions conditions, Writer out) {
+		out.putInt(conditions.getConditions().size());
+		for (var condition : conditions.getConditions()) {
+			out.putInt(condition.id());
+			out.putByte((byte) condition.variable());
+			out.putDouble(condition.value());
+		}
+	}
+
+	private static BoundaryConditions readConditions(ByteBuffer in) {
+		BoundaryConditions conditions = new BoundaryConditions();
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			int id = in.getInt();
+			int variable = in.get();
+			double value = in.getDouble();
+			conditions.getConditions().add(new BoundaryConditions.BoundaryCondition(id, value, variable));
+		}
+		return conditions;
+	}
+
+	private static int[] getInts(ByteBuffer in, int count) {
+		int[] result = new int[count];
+		in.asIntBuffer().get(result);
+		in.position(in.position() + count * 4);
+		return result;
+	}
+
+	private static double[] getDoubles(ByteBuffer in, int count) {
+		double[] result = new double[count];
+		in.asDoubleBuffer().get(result);
+		in.position(in.position() + count * 8);
+		return result;
+	}
+
+	private static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// writes into a buffer, or only counts bytes when there is none
+	private static class Writer {
+		private final ByteBuffer buffer;
+		private long position;
+
+		Writer(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.position = 0;
+		}
+
+		void putByte(byte value) {
+			if (buffer != null) {
+				buffer.put(value);
+			}
+			position += 1;
+		}
+
+		void putInt(int value) {
+			if (buffer != null) {
+				buffer.putInt(value);
+			}
+			position += 4;
+		}
+
+		void putDouble(double value) {
+			if (buffer != null) {
+				buffer.putDouble(value);
+			}
+			position += 8;
+		}
+
+		void putInts(int[] values, int count) {
+			if (buffer != null) {
+				buffer.asIntBuffer().put(values, 0, count);
+				buffer.position(buffer.position() + count * 4);
+			}
+			position += count * 4L;
+		}
+
+		void putDoubles(double[] values, int count) {
+			if (buffer != null) {
+				buffer.asDoubleBuffer().put(values, 0, count);
+				buffer.position(buffer.position() + count * 8);
+			}
+			position += count * 8L;
+		}
+
+		void putString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			if (buffer != null) {
+				buffer.put(bytes);
+			}
+			position += bytes.length;
+		}
+	}
+}
@@ -7,10 +7,21 @@ public class MyVector {
 		this.data = new double[size];
 	}
 
+	// wraps the array, no copy
+	public MyVector(double[] data) {
+		this.size = data.length;
+		this.data = data;
+	}
+
 	public int getSize() {
 		return size;
 	}
 
+	// the array itself, writes show in the vector
+	public double[] getData() {
+		return data;
+	}
+
 	public double get(int i) {
 		return data[i];
 	}
@@ -0,0 +1,159 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * node positions kept in primitive arrays, addressed by a dense index (the order
+ * the nodes were added in). ids from the input file are translated through a
+ * lookup table, or a hash map once they become too sparse for a table.
+ */
+public class NodeStore {
+	private int count;
+
+	private int[] ids;
+	private double[] x;
+	private double[] y;
+	private double[] theta;
+
+	private int[] indexById;
+	private HashMap<Integer, Integer> sparseIndexById;
+
+	public NodeStore() {
+		this(16);
+	}
+
+	public NodeStore(int capacity) {
+		this.count = 0;
+
+		capacity = Math.max(1, capacity);
+		this.ids = new int[capacity];
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.theta = new double[capacity];
+
+		this.indexById = new int[0];
+		this.sparseIndexById = null;
+	}
+
+	// takes over the given arrays, used when restoring snapshots
+	NodeStore(int[] ids, double[] x, double[] y, double[] theta) {
+		this(ids.length);
+
+		for (int i = 0; i < ids.length; i++) {
+			if (indexOf(ids[i]) >= 0) {
+				throw new IllegalArgumentException("node id " + ids[i] + " is already in use");
+			}
+			this.count = i + 1;
+			this.ids[i] = ids[i];
+			mapID(ids[i], i);
+		}
+
+		// the constructor above always reserves at least one slot
+		int capacity = this.ids.length;
+		this.x = x.length == capacity ? x : Arrays.copyOf(x, capacity);
+		this.y = y.length == capacity ? y : Arrays.copyOf(y, capacity);
+		this.theta = theta.length == capacity ? theta : Arrays.copyOf(theta, capacity);
+	}
+
+	public int add(int id, double x, double y, double theta) {
+		if (id < 0) {
+			throw new IllegalArgumentException("node id " + id + " is negative");
+		}
+		if (indexOf(id) >= 0) {
+			throw new IllegalArgumentException("node id " + id + " is already in use");
+		}
+
+		if (count == ids.length) {
+			int capacity = count * 2;
+			this.ids = Arrays.copyOf(ids, capacity);
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.theta = Arrays.copyOf(this.theta, capacity);
+		}
+
+		int index = count++;
+		this.ids[index] = id;
+		this.x[index] = x;
+		this.y[index] = y;
+		this.theta[index] = theta;
+
+		mapID(id, index);
+		return index;
+	}
+
+	public int indexOf(int id) {
+		if (sparseIndexById != null) {
+			return sparseIndexById.getOrDefault(id, -1);
+		}
+		return id >= 0 && id < indexById.length ? indexById[id] : -1;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getID(int index) {
+		return ids[index];
+	}
+
+	public double getX(int index) {
+		return x[index];
+	}
+
+	public double getY(int index) {
+		return y[index];
+	}
+
+	public double getTheta(int index) {
+		return theta[index];
+	}
+
+	// backing arrays, only the first size() entries are used
+	int[] getIDs() {
+		return ids;
+	}
+
+	double[] getXs() {
+		return x;
+	}
+
+	double[] getYs() {
+		return y;
+	}
+
+	double[] getThetas() {
+		return theta;
+	}
+
+	public int getMaxID() {
+		int maxID = -1;
+		for (int i = 0; i < count; i++) {
+			maxID = Math.max(maxID, ids[i]);
+		}
+		return maxID;
+	}
+
+	private void mapID(int id, int index) {
+		if (sparseIndexById != null) {
+			sparseIndexById.put(id, index);
+			return;
+		}
+
+		if (id >= indexById.length) {
+			// only keep a table while it stays within a few times the node count
+			if (id > 4 * (count + 1024)) {
+				sparseIndexById = new HashMap<>();
+				for (int i = 0; i < count; i++) {
+					sparseIndexById.put(ids[i], i);
+				}
+				indexById = null;
+				return;
+			}
+
+			int oldLength = indexById.length;
+			indexById = Arrays.copyOf(indexById, Math.max(id + 1, oldLength * 2));
+			Arrays.fill(indexById, oldLength, indexById.length, -1);
+		}
+
+		indexById[id] = index;
+	}
+}
@@ -0,0 +1,482 @@
+import java.util.ArrayList;
+
+/*
+ * large displacement solve of the model's forces, with the elements' co-rotational
+ * internal forces. the load, and the prescribed displacements with it, goes on in
+ * increments, each one iterated to equilibrium by newton-raphson.
+ *
+ * refactorizing the tangent is by far the most expensive part, so there are three
+ * methods: full newton refactorizes every iteration, modified newton keeps the last
+ * factorization across iterations and increments, and bfgs keeps it too but corrects the
+ * direction with rank two updates from the previous iterations of the increment. the
+ * last two refactorize only when the iterations a new tangent would save are worth more
+ * than the factorization.
+ *
+ * a line search scales every correction so the residual is nearly orthogonal to it, and
+ * the increment grows when an increment converged easily and shrinks when it did not,
+ * going back to the last equilibrium if it failed.
+ *
+ * usage: [-method newton|modified|bfgs] [-increments N] [-no-line-search] model.fem
+ */
+public class NonlinearAnalysis {
+	public enum Method {
+		NEWTON,
+		MODIFIED_NEWTON,
+		BFGS
+	}
+
+	// one converged increment, residual relative to the load
+	public record Increment(double loadFactor, int iterations, int factorizations, double residual) { }
+
+	private final FESolver solver;
+
+	// factorizes the tangent, separate from the model's solver so its factorization of K stays
+	private final LinearSolver tangentSolver;
+
+	private Method method;
+	private boolean lineSearch;
+	private double tolerance;
+	private int maxIterations;
+
+	// load factor steps, the first one and the limits for the step control
+	private double initialIncrement;
+	private double minIncrement;
+	private double maxIncrement;
+
+	// iterations a full newton increment should take, more work than that shrinks the next one
+	private int targetIterations;
+
+	// what a factorization costs in iterations, each of them a back substitution and an assembly of the forces
+	private double factorizationCost;
+
+	// iterations a fresh tangent usually needs to converge
+	private static final int FRESH_TANGENT_ITERATIONS = 4;
+
+	// bfgs updates kept
+	private int maxCorrections;
+
+	private double reference;
+	private boolean tangentCurrent;
+	private final ArrayList<Increment> increments;
+	private int iterationCount;
+	private int factorizationCount;
+
+	public NonlinearAnalysis(FESolver solver) {
+		this(solver, new SparseCholeskySolver());
+	}
+
+	public NonlinearAnalysis(FESolver solver, LinearSolver tangentSolver) {
+		this.solver = solver;
+		this.tangentSolver = tangentSolver;
+		this.method = Method.BFGS;
+		this.lineSearch = true;
+		this.tolerance = 1e-8;
+		this.maxIterations = 30;
+		this.initialIncrement = 0.1;
+		this.minIncrement = 1e-4;
+		this.maxIncrement = 1.0;
+		this.targetIterations = 6;
+		this.factorizationCost = 10.0;
+		this.maxCorrections = 20;
+		this.increments = new ArrayList<>();
+	}
+
+	// displacements under the full load, the model has to be assembled
+	public ArrayList<Node> solve() {
+		SparseMatrix stiffnessMatrix = solver.getStiffnessMatrix();
+		if (stiffnessMatrix == null) {
+			throw new IllegalStateException("nonlinear analysis needs an assembled stiffness matrix");
+		}
+
+		int n = stiffnessMatrix.getSize();
+		SparseMatrix tangent = new SparseMatrix(n, stiffnessMatrix.getRowPointers(), stiffnessMatrix.getColumnIndices());
+		tangent.setBlockStarts(stiffnessMatrix.getBlockStarts());
+
+		// the forces alone, the prescribed displacements enter through the internal forces
+		double[] load = solver.buildForceVector(solver.getForces()).getData();
+		double[] prescribed = solver.buildForceVector(new BoundaryConditions()).getData();
+		for (int i = 0; i < n; i++) {
+			load[i] -= prescribed[i];
+		}
+
+		// residuals are measured against the full load, the prescribed displacements counted as the forces they take linearly
+		reference = norm(load) + norm(prescribed);
+
+		increments.clear();
+		iterationCount = 0;
+		factorizationCount = 0;
+		tangentCurrent = false;
+
+		double[] u = new double[n];
+		double[] change = null;
+		double factor = 0.0;
+		double lastIncrement = 0.0;
+		double increment = Math.min(initialIncrement, maxIncrement);
+		while (factor < 1.0) {
+			double target = Math.min(1.0, factor + increment);
+
+			// start from the last increment's change, scaled to this one
+			double[] trial = u.clone();
+			if (change != null) {
+				axpy((target - factor) / lastIncrement, change, trial);
+			}
+
+			Increment result = iterate(trial, target, load, tangent);
+			if (result == null) {
+				increment *= 0.5;
+				if (increment < minIncrement) {
+					throw new ArithmeticException("load stepping stalled at load factor " + factor);
+				}
+				continue;
+			}
+
+			change = trial.clone();
+			axpy(-1.0, u, change);
+			lastIncrement = target - factor;
+			u = trial;
+			factor = target;
+			increments.add(result);
+
+			// effort in iterations, against that of a full newton increment taking the target iterations
+			double effort = result.iterations() + factorizationCost * result.factorizations();
+			double targetEffort = targetIterations * (1.0 + factorizationCost);
+			if (effort <= 0.5 * targetEffort) {
+				increment = Math.min(maxIncrement, 1.5 * increment);
+			} else if (effort > targetEffort) {
+				increment = Math.max(minIncrement, 0.7 * increment);
+			}
+		}
+
+		return solver.collectDisplacements(new MyVector(u), false);
+	}
+
+	// equilibrium at the load factor starting from u, which it overwrites. null if it did not converge
+	private Increment iterate(double[] u, double factor, double[] load, SparseMatrix tangent) {
+		int n = u.length;
+		double[] internal = new double[n];
+		double[] residual = new double[n];
+		int factorizations = 0;
+
+		// bfgs steps s and residual changes y
+		ArrayList<double[]> steps = new ArrayList<>();
+		ArrayList<double[]> changes = new ArrayList<>();
+
+		if (!tangentCurrent || method == Method.NEWTON) {
+			if (!refactorize(u, factor, internal, tangent)) {
+				return null;
+			}
+			factorizations++;
+		} else {
+			solver.assembleInternalForces(u, factor, internal, null);
+		}
+		residual(load, factor, internal, residual);
+
+		double reference = factor * this.reference;
+		if (reference == 0.0) {
+			return new Increment(factor, 0, factorizations, 0.0);
+		}
+		// residual norms since the last factorization
+		ArrayList<Double> history = new ArrayList<>();
+		history.add(norm(residual));
+
+		for (int iteration = 1; iteration <= maxIterations; iteration++) {
+			iterationCount++;
+
+			double[] direction = direction(residual, steps, changes);
+			double[] before = residual.clone();
+			double step = search(u, direction, factor, load, internal, residual);
+			double current = norm(residual);
+			if (!Double.isFinite(current)) {
+				tangentCurrent = false;
+				return null;
+			}
+
+			if (current <= tolerance * reference) {
+				return new Increment(factor, iteration, factorizations, current / reference);
+			}
+
+			history.add(current);
+			if (method == Method.NEWTON || worthRefactorizing(history, tolerance * reference, maxIterations - iteration)) {
+				history.clear();
+				history.add(current);
+				if (!refactorize(u, factor, internal, tangent)) {
+					return null;
+				}
+				factorizations++;
+				steps.clear();
+				changes.clear();
+			} else if (method == Method.BFGS) {
+				double[] s = new double[n];
+				double[] y = new double[n];
+				for (int i = 0; i < n; i++) {
+					s[i] = step * direction[i];
+					y[i] = before[i] - residual[i];
+				}
+				// only curvature that keeps the update positive definite
+				if (dot(s, y) > 1e-12 * norm(s) * norm(y)) {
+					if (steps.size() == maxCorrections) {
+						steps.remove(0);
+						changes.remove(0);
+					}
+					steps.add(s);
+					changes.add(y);
+				}
+			}
+		}
+
+		tangentCurrent = false;
+		return null;
+	}
+
+	/*
+	 * whether a new tangent pays off. the rate is taken over the last two iterations since
+	 * the residual of stiff members tends to alternate, and the iterations still needed at
+	 * that rate are compared with the few a fresh tangent would take plus its cost.
+	 */
+	private boolean worthRefactorizing(ArrayList<Double> history, double target, int remaining) {
+		int last = history.size() - 1;
+		if (last < 2) {
+			return false;
+		}
+
+		double rate = Math.sqrt(history.get(last) / history.get(last - 2));
+		if (!(rate < 1.0)) {
+			return true;
+		}
+		double needed = Math.log(target / history.get(last)) / Math.log(rate);
+		return needed > Math.min(remaining, FRESH_TANGENT_ITERATIONS + factorizationCost);
+	}
+
+	// tangent and internal forces at u, false if the tangent cannot be factorized
+	private boolean refactorize(double[] u, double factor, double[] internal, SparseMatrix tangent) {
+		solver.assembleInternalForces(u, factor, internal, tangent);
+		try {
+			tangentSolver.factorize(tangent);
+		} catch (ArithmeticException e) {
+			tangentCurrent = false;
+			return false;
+		}
+		factorizationCount++;
+		tangentCurrent = true;
+		return true;
+	}
+
+	// K_t^-1 r, for bfgs with the updates applied by the two loop recursion
+	private double[] direction(double[] residual, ArrayList<double[]> steps, ArrayList<double[]> changes) {
+		int count = steps.size();
+		double[] q = residual.clone();
+		double[] alpha = new double[count];
+		for (int k = count - 1; k >= 0; k--) {
+			alpha[k] = dot(steps.get(k), q) / dot(changes.get(k), steps.get(k));
+			axpy(-alpha[k], changes.get(k), q);
+		}
+
+		double[] z = tangentSolver.solve(new MyVector(q)).getData();
+
+		for (int k = 0; k < count; k++) {
+			double beta = dot(changes.get(k), z) / dot(changes.get(k), steps.get(k));
+			axpy(alpha[k] - beta, steps.get(k), z);
+		}
+		return z;
+	}
+
+	/*
+	 * moves u along the direction and returns the step length, leaving the internal forces
+	 * and the residual of the new u. without the line search, or if the full step already
+	 * leaves little of the residual along the direction, the step is 1. otherwise secant
+	 * steps on the residual along the direction, keeping the best of a few.
+	 */
+	private double search(double[] u, double[] direction, double factor, double[] load, double[] internal, double[] residual) {
+		int n = u.length;
+		double[] start = u.clone();
+		double g0 = dot(direction, residual);
+
+		double step = 1.0;
+		double g = evaluate(start, direction, step, factor, load, u, internal, residual);
+		if (!lineSearch || !(g0 > 0.0) || Math.abs(g) <= 0.8 * Math.abs(g0) || !Double.isFinite(g)) {
+			return step;
+		}
+
+		double bestStep = step;
+		double bestG = Math.abs(g);
+		for (int k = 0; k < 5; k++) {
+			double next = g0 - g > 0.0 ? step * g0 / (g0 - g) : 2.0 * step;
+			step = Math.max(0.1, Math.min(4.0, next));
+			g = evaluate(start, direction, step, factor, load, u, internal, residual);
+			if (Math.abs(g) < bestG) {
+				bestG = Math.abs(g);
+				bestStep = step;
+			}
+			if (Math.abs(g) <= 0.8 * Math.abs(g0)) {
+				return step;
+			}
+		}
+
+		if (bestStep != step) {
+			evaluate(start, direction, bestStep, factor, load, u, internal, residual);
+		}
+		return bestStep;
+	}
+
+	// u = start + step * direction with its forces, returns the residual along the direction
+	private double evaluate(double[] start, double[] direction, double step, double factor, double[] load, double[] u, double[] internal, double[] residual) {
+		for (int i = 0; i < u.length; i++) {
+			u[i] = start[i] + step * direction[i];
+		}
+		solver.assembleInternalForces(u, factor, internal, null);
+		residual(load, factor, internal, residual);
+		return dot(direction, residual);
+	}
+
+	private static void residual(double[] load, double factor, double[] internal, double[] residual) {
+		for (int i = 0; i < residual.length; i++) {
+			residual[i] = factor * load[i] - internal[i];
+		}
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static double norm(double[] x) {
+		return Math.sqrt(dot(x, x));
+	}
+
+	private static void axpy(double a, double[] x, double[] y) {
+		for (int i = 0; i < y.length; i++) {
+			y[i] += a * x[i];
+		}
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		Method method = Method.BFGS;
+		int increments = 10;
+		boolean lineSearch = true;
+		String model = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-method" -> method = switch (args[++i]) {
+					case "newton" -> Method.NEWTON;
+					case "modified" -> Method.MODIFIED_NEWTON;
+					case "bfgs" -> Method.BFGS;
+					default -> throw new IllegalArgumentException("unknown method " + args[i]);
+				};
+				case "-increments" -> increments = Integer.parseInt(args[++i]);
+				case "-no-line-search" -> lineSearch = false;
+				default -> model = args[i];
+			}
+		}
+		if (model == null) {
+			System.err.println("usage: --nonlinear [-method newton|modified|bfgs] [-increments N] [-no-line-search] model.fem");
+			return;
+		}
+
+		FESolver solver = new FESolver();
+		solver.setLinearSolver(new SparseCholeskySolver());
+		solver.loadFromFile(model);
+		solver.buildMatrix();
+		double linear = solver.computeResults(solver.solveDisplacements()).getMaxDisplacement();
+
+		NonlinearAnalysis analysis = new NonlinearAnalysis(solver);
+		analysis.setMethod(method);
+		analysis.setLineSearch(lineSearch);
+		analysis.setInitialIncrement(1.0 / increments);
+
+		long start = System.nanoTime();
+		ArrayList<Node> displacements = analysis.solve();
+		double seconds = (System.nanoTime() - start) * 1e-9;
+
+		System.out.printf("%9s %11s %10s %14s %12s%n", "increment", "load factor", "iterations", "factorizations", "residual");
+		for (int i = 0; i < analysis.getIncrements().size(); i++) {
+			Increment increment = analysis.getIncrements().get(i);
+			System.out.printf("%9d %11.4f %10d %14d %12.3e%n", i + 1, increment.loadFactor(), increment.iterations(), increment.factorizations(), increment.residual());
+		}
+		System.out.printf("%s: %d iterations, %d factorizations in %.3f s%n", method, analysis.getIterationCount(), analysis.getFactorizationCount(), seconds);
+		System.out.printf("max displacement %.6e, linear %.6e%n", solver.computeResults(displacements).getMaxDisplacement(), linear);
+	}
+
+	public ArrayList<Increment> getIncrements() {
+		return increments;
+	}
+
+	public int getIterationCount() {
+		return iterationCount;
+	}
+
+	public int getFactorizationCount() {
+		return factorizationCount;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public void setMethod(Method method) {
+		this.method = method;
+	}
+
+	public boolean isLineSearch() {
+		return lineSearch;
+	}
+
+	public void setLineSearch(boolean lineSearch) {
+		this.lineSearch = lineSearch;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public double getInitialIncrement() {
+		return initialIncrement;
+	}
+
+	public void setInitialIncrement(double initialIncrement) {
+		if (!(initialIncrement > 0.0)) {
+			throw new IllegalArgumentException("increment has to be positive, got " + initialIncrement);
+		}
+		this.initialIncrement = initialIncrement;
+	}
+
+	public void setIncrementLimits(double minIncrement, double maxIncrement) {
+		if (!(minIncrement > 0.0) || maxIncrement < minIncrement) {
+			throw new IllegalArgumentException("increment limits " + minIncrement + " to " + maxIncrement + " are not a range");
+		}
+		this.minIncrement = minIncrement;
+		this.maxIncrement = maxIncrement;
+	}
+
+	public double getFactorizationCost() {
+		return factorizationCost;
+	}
+
+	public void setFactorizationCost(double factorizationCost) {
+		this.factorizationCost = factorizationCost;
+	}
+
+	public int getTargetIterations() {
+		return targetIterations;
+	}
+
+	public void setTargetIterations(int targetIterations) {
+		this.targetIterations = targetIterations;
+	}
+}
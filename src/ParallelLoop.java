@@ -0,0 +1,40 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelLoop {
+	public interface Body {
+		void run(int from, int to);
+	}
+
+	// splits [0, count) in halves until a piece is no larger than grainSize and runs the pieces on the pool
+	public static void run(ForkJoinPool pool, int count, int grainSize, Body body) {
+		pool.invoke(new RangeTask(0, count, Math.max(1, grainSize), body));
+	}
+
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final int grainSize;
+		private final Body body;
+
+		RangeTask(int from, int to, int grainSize, Body body) {
+			this.from = from;
+			this.to = to;
+			this.grainSize = grainSize;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grainSize) {
+				body.run(from, to);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeTask(from, mid, grainSize, body), new RangeTask(mid, to, grainSize, body));
+		}
+	}
+}
@@ -0,0 +1,286 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * evaluates one model over a grid of element properties on a fixed pool of threads. the
+ * grid is cut into a contiguous block per thread, and every thread loads and factorizes
+ * the model once, then moves from point to point by swapping in elements with the new
+ * properties. neighbouring points then mostly cost a low rank update of the factorization,
+ * see FESolver.replaceElement, and only large changes a refactorization.
+ *
+ * every point reports the compliance, the largest displacement and the derivative of the
+ * compliance with respect to each parameter, from SensitivityAnalysis at no extra solve.
+ *
+ * usage: [-threads N] [-out file] -vary E|A|I|G|T[@first-last]=v1,v2,... ... model.fem
+ */
+public class ParameterSweep {
+	// one property set to each of the values in turn on the elements first to last, all that have it if first is -1
+	public record Parameter(Element.Property property, int first, int last, double[] values) {
+		public boolean covers(int element) {
+			return first < 0 || (element >= first && element <= last);
+		}
+	}
+
+	// error is null unless the point failed
+	public record Point(double[] values, double compliance, double maxDisplacement, double[] gradient, String error) {
+		public boolean succeeded() {
+			return error == null;
+		}
+	}
+
+	private final Path model;
+	private final int threads;
+
+	public ParameterSweep(Path model, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("thread count must be at least 1");
+		}
+		this.model = model;
+		this.threads = threads;
+	}
+
+	// all combinations of the values, the last parameter changing fastest
+	public ArrayList<Point> run(ArrayList<Parameter> parameters) throws IOException {
+		if (parameters.isEmpty()) {
+			throw new IllegalArgumentException("nothing to sweep");
+		}
+		int count = 1;
+		for (var parameter : parameters) {
+			count = Math.multiplyExact(count, parameter.values().length);
+		}
+
+		int blocks = Math.min(threads, count);
+		ExecutorService executor = Executors.newFixedThreadPool(blocks);
+		try {
+			ArrayList<Future<ArrayList<Point>>> futures = new ArrayList<>(blocks);
+			for (int b = 0; b < blocks; b++) {
+				int from = (int) ((long) count * b / blocks);
+				int to = (int) ((long) count * (b + 1) / blocks);
+				futures.add(executor.submit(() -> evaluate(parameters, from, to)));
+			}
+
+			ArrayList<Point> points = new ArrayList<>(count);
+			for (var future : futures) {
+				try {
+					points.addAll(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("sweep was interrupted", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException io) {
+						throw io;
+					}
+					throw new IOException("sweep failed", e.getCause());
+				}
+			}
+			return points;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// the points from to to of the grid against one solver
+	private ArrayList<Point> evaluate(ArrayList<Parameter> parameters, int from, int to) throws IOException {
+		FESolver solver = new FESolver();
+		// direct, so that replaced elements become low rank updates
+		solver.setLinearSolver(new SparseCholeskySolver());
+		solver.loadFromFile(model.toString());
+		solver.buildMatrix();
+
+		ArrayList<Element> elements = solver.getElements();
+		SensitivityAnalysis sensitivities = new SensitivityAnalysis(solver);
+		double[] current = new double[parameters.size()];
+		Arrays.fill(current, Double.NaN);
+
+		ArrayList<Point> result = new ArrayList<>(to - from);
+		for (int index = from; index < to; index++) {
+			double[] values = pointValues(parameters, index);
+			try {
+				for (int k = 0; k < parameters.size(); k++) {
+					if (values[k] == current[k]) {
+						continue;
+					}
+					Parameter parameter = parameters.get(k);
+					for (int e = 0; e < elements.size(); e++) {
+						Element elem = elements.get(e);
+						if (parameter.covers(e) && hasProperty(elem, parameter.property())) {
+							solver.replaceElement(e, elem.withProperty(parameter.property(), values[k]));
+						}
+					}
+					current[k] = values[k];
+				}
+
+				SensitivityAnalysis.Gradient compliance = sensitivities.compute(SensitivityAnalysis.Response.compliance())[0];
+
+				// every element of a parameter changes together, so its derivative is their sum
+				double[] gradient = new double[parameters.size()];
+				for (int k = 0; k < parameters.size(); k++) {
+					Parameter parameter = parameters.get(k);
+					for (int e = 0; e < elements.size(); e++) {
+						if (parameter.covers(e)) {
+							gradient[k] += compliance.get(e, parameter.property());
+						}
+					}
+				}
+
+				double maxDisplacement = 0.0;
+				for (Node node : sensitivities.getDisplacements()) {
+					maxDisplacement = Math.max(maxDisplacement, Math.hypot(node.getX(), node.getY()));
+				}
+				result.add(new Point(values, compliance.value(), maxDisplacement, gradient, null));
+			} catch (RuntimeException e) {
+				// a failed point may have set only some of the elements, so the next one sets them all again
+				Arrays.fill(current, Double.NaN);
+				String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+				result.add(new Point(values, Double.NaN, Double.NaN, null, error));
+			}
+		}
+		return result;
+	}
+
+	private static double[] pointValues(ArrayList<Parameter> parameters, int index) {
+		double[] values = new double[parameters.size()];
+		for (int k = parameters.size() - 1; k >= 0; k--) {
+			double[] choices = parameters.get(k).values();
+			values[k] = choices[index % choices.length];
+			index /= choices.length;
+		}
+		return values;
+	}
+
+	private static boolean hasProperty(Element elem, Element.Property property) {
+		for (var p : elem.getProperties()) {
+			if (p == property) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void write(ArrayList<Parameter> parameters, ArrayList<Point> points, Writer writer) throws IOException {
+		BufferedWriter out = new BufferedWriter(writer);
+		StringBuilder header = new StringBuilder();
+		for (var parameter : parameters) {
+			header.append(String.format("%14s ", parameterName(parameter)));
+		}
+		header.append(String.format("%14s %14s", "compliance", "max |u|"));
+		for (var parameter : parameters) {
+			header.append(String.format(" %14s", "dC/d" + parameterName(parameter)));
+		}
+		out.write(header.toString());
+		out.newLine();
+
+		for (Point point : points) {
+			StringBuilder line = new StringBuilder();
+			for (double value : point.values()) {
+				line.append(String.format("%14.6e ", value));
+			}
+			if (!point.succeeded()) {
+				line.append("FAILED: ").append(point.error());
+			} else {
+				line.append(String.format("%14.6e %14.6e", point.compliance(), point.maxDisplacement()));
+				for (double derivative : point.gradient()) {
+					line.append(String.format(" %14.6e", derivative));
+				}
+			}
+			out.write(line.toString());
+			out.newLine();
+		}
+		out.flush();
+	}
+
+	private static String parameterName(Parameter parameter) {
+		String name = switch (parameter.property()) {
+			case YOUNGS_MODULUS -> "E";
+			case AREA -> "A";
+			case MOMENT_OF_INERTIA -> "I";
+			case SHEAR_MODULUS -> "G";
+			case THICKNESS -> "T";
+		};
+		return parameter.first() < 0 ? name : name + "@" + parameter.first() + "-" + parameter.last();
+	}
+
+	// E|A|I|G|T, optionally @first-last element indices after subdivision, = comma separated values
+	public static Parameter parseParameter(String text) {
+		int equals = text.indexOf('=');
+		if (equals < 0) {
+			throw new IllegalArgumentException("expected property=values, got " + text);
+		}
+		String name = text.substring(0, equals);
+		int first = -1;
+		int last = -1;
+		int at = name.indexOf('@');
+		if (at >= 0) {
+			String range = name.substring(at + 1);
+			name = name.substring(0, at);
+			int dash = range.indexOf('-');
+			first = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+			last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1));
+			if (first < 0 || last < first) {
+				throw new IllegalArgumentException("element range " + range + " is empty");
+			}
+		}
+
+		Element.Property property = switch (name) {
+			case "E" -> Element.Property.YOUNGS_MODULUS;
+			case "A" -> Element.Property.AREA;
+			case "I" -> Element.Property.MOMENT_OF_INERTIA;
+			case "G" -> Element.Property.SHEAR_MODULUS;
+			case "T" -> Element.Property.THICKNESS;
+			default -> throw new IllegalArgumentException("unknown property " + name + ", expected E, A, I, G or T");
+		};
+
+		String[] parts = text.substring(equals + 1).split(",");
+		double[] values = new double[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Double.parseDouble(parts[i].trim());
+		}
+		return new Parameter(property, first, last, values);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		String output = null;
+		String model = null;
+		ArrayList<Parameter> parameters = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-threads" -> threads = Integer.parseInt(args[++i]);
+				case "-out" -> output = args[++i];
+				case "-vary" -> parameters.add(parseParameter(args[++i]));
+				default -> model = args[i];
+			}
+		}
+		if (model == null || parameters.isEmpty()) {
+			System.err.println("usage: --sweep [-threads N] [-out file] -vary E|A|I|G|T[@first-last]=v1,v2,... ... model.fem");
+			return;
+		}
+
+		ParameterSweep sweep = new ParameterSweep(Path.of(model), threads);
+		long start = System.nanoTime();
+		ArrayList<Point> points = sweep.run(parameters);
+		double seconds = (System.nanoTime() - start) * 1e-9;
+
+		if (output != null) {
+			try (Writer out = Files.newBufferedWriter(Path.of(output))) {
+				write(parameters, points, out);
+			}
+		} else {
+			write(parameters, points, new OutputStreamWriter(System.out));
+		}
+
+		long failed = points.stream().filter(point -> !point.succeeded()).count();
+		System.out.printf("%d points, %d failed, %d threads in %.3f s%n", points.size(), failed, threads, seconds);
+	}
+}
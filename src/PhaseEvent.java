@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * flight recorder event covering one solver phase, the duration is the event's own.
+ */
+@Name("fem.SolverPhase")
+@Label("Solver Phase")
+@Category("Finite Element Solver")
+@Description("One phase of parsing, assembling or solving a model")
+class PhaseEvent extends jdk.jfr.Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Model")
+	String model;
+
+	@Label("Allocated")
+	@Description("Bytes allocated by the calling thread, -1 if unsupported")
+	@DataAmount
+	long allocatedBytes;
+
+	@Label("Matrix Size")
+	int matrixSize;
+
+	@Label("Non-zeros")
+	long nonZeros;
+
+	@Label("Iterations")
+	@Description("Iterations of the linear solver, 0 for direct solvers")
+	int iterations;
+
+	@Label("Residual")
+	double residual;
+}
@@ -0,0 +1,365 @@
+import java.util.Arrays;
+
+public class Reordering {
+
+	/*
+	 * reverse cuthill-mckee ordering of an undirected graph given in adjacency list form
+	 * (the neighbours of vertex v are adjacency[pointers[v]..pointers[v+1]]).
+	 * returns the new position of every vertex.
+	 */
+	public static int[] reverseCuthillMcKee(int vertexCount, int[] pointers, int[] adjacency) {
+		int[] order = new int[vertexCount];
+		int[] level = new int[vertexCount];
+		int[] queue = new int[vertexCount];
+		boolean[] visited = new boolean[vertexCount];
+		int count = 0;
+
+		for (int v = 0; v < vertexCount; v++) {
+			if (visited[v]) {
+				continue;
+			}
+
+			// breadth first search from a pseudo-peripheral vertex, neighbours in order of increasing degree
+			int start = count;
+			order[count++] = findPseudoPeripheralVertex(v, pointers, adjacency, level, queue);
+			visited[order[start]] = true;
+
+			for (int head = start; head < count; head++) {
+				int u = order[head];
+				int first = count;
+
+				for (int k = pointers[u]; k < pointers[u + 1]; k++) {
+					int w = adjacency[k];
+					if (!visited[w]) {
+						visited[w] = true;
+						order[count++] = w;
+					}
+				}
+
+				sortByDegree(order, first, count, pointers);
+			}
+		}
+
+		// reverse and invert
+		int[] position = new int[vertexCount];
+		for (int i = 0; i < vertexCount; i++) {
+			position[order[i]] = vertexCount - 1 - i;
+		}
+		return position;
+	}
+
+	// below this a part is not split any further
+	private static final int DISSECTION_LEAF_SIZE = 64;
+
+	/*
+	 * nested dissection ordering, for factorizations: every part of the graph is split in
+	 * two by the middle level of a level structure, and the separator is numbered after
+	 * both halves. compared to a band ordering this cuts fill on two dimensional meshes and
+	 * makes the elimination tree bushy, so independent subtrees can be factorized at once.
+	 * returns the new position of every vertex.
+	 */
+	public static int[] nestedDissection(int vertexCount, int[] pointers, int[] adjacency) {
+		int[] position = new int[vertexCount];
+		int[] part = new int[vertexCount];
+		int[] level = new int[vertexCount];
+		int[] queue = new int[vertexCount];
+		int[] scratch = new int[vertexCount];
+		int[] sizes = new int[2];
+
+		// vertices[first..last) is a part, numbered from first on
+		int[] vertices = new int[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			vertices[v] = v;
+		}
+
+		// parts still to split as (first, last, part id)
+		int[] stack = new int[3 * 64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = vertexCount;
+		stack[top++] = 0;
+		int nextPart = 1;
+
+		while (top > 0) {
+			top -= 3;
+			int first = stack[top];
+			int last = stack[top + 1];
+			int id = stack[top + 2];
+			int size = last - first;
+
+			if (size <= DISSECTION_LEAF_SIZE) {
+				for (int k = first; k < last; k++) {
+					position[vertices[k]] = k;
+				}
+				continue;
+			}
+
+			int lowPart = nextPart++;
+			int highPart = nextPart++;
+			if (!split(first, last, id, lowPart, highPart, vertices, part, pointers, adjacency, level, queue, scratch, sizes)) {
+				for (int k = first; k < last; k++) {
+					position[vertices[k]] = k;
+				}
+				continue;
+			}
+
+			int low = sizes[0];
+			int high = sizes[1];
+			for (int k = first + low + high; k < last; k++) {
+				position[vertices[k]] = k;
+			}
+
+			if (top + 6 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[top++] = first;
+			stack[top++] = first + low;
+			stack[top++] = lowPart;
+			stack[top++] = first + low;
+			stack[top++] = first + low + high;
+			stack[top++] = highPart;
+		}
+
+		return position;
+	}
+
+	/*
+	 * splits the graph into at most the given number of parts by the same separators as
+	 * nestedDissection, always cutting the largest part that can still be cut. returns the
+	 * part of every vertex, 0 to parts - 1, or -1 for the separators between them. no edge
+	 * runs between two different parts.
+	 */
+	public static int[] partition(int vertexCount, int[] pointers, int[] adjacency, int parts) {
+		int[] part = new int[vertexCount];
+		int[] level = new int[vertexCount];
+		int[] queue = new int[vertexCount];
+		int[] scratch = new int[vertexCount];
+		int[] sizes = new int[2];
+
+		int[] vertices = new int[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			vertices[v] = v;
+		}
+
+		// (first, last, part id) of every part, and whether it turned out to be uncuttable
+		int[] ranges = new int[3 * Math.max(1, parts)];
+		boolean[] finished = new boolean[Math.max(1, parts)];
+		int count = vertexCount > 0 ? 1 : 0;
+		ranges[0] = 0;
+		ranges[1] = vertexCount;
+		ranges[2] = 0;
+		int nextPart = 1;
+
+		while (count < parts) {
+			int largest = -1;
+			for (int p = 0; p < count; p++) {
+				if (!finished[p] && (largest < 0 || ranges[3 * p + 1] - ranges[3 * p] > ranges[3 * largest + 1] - ranges[3 * largest])) {
+					largest = p;
+				}
+			}
+			if (largest < 0) {
+				break;
+			}
+
+			int first = ranges[3 * largest];
+			int last = ranges[3 * largest + 1];
+			int id = ranges[3 * largest + 2];
+			int lowPart = nextPart++;
+			int highPart = nextPart++;
+			if (last - first < 2 || !split(first, last, id, lowPart, highPart, vertices, part, pointers, adjacency, level, queue, scratch, sizes)) {
+				finished[largest] = true;
+				continue;
+			}
+
+			ranges[3 * largest + 1] = first + sizes[0];
+			ranges[3 * largest + 2] = lowPart;
+			ranges[3 * count] = first + sizes[0];
+			ranges[3 * count + 1] = first + sizes[0] + sizes[1];
+			ranges[3 * count + 2] = highPart;
+			count++;
+		}
+
+		// number the parts in order, separators stay -1
+		int[] result = new int[vertexCount];
+		Arrays.fill(result, -1);
+		for (int p = 0; p < count; p++) {
+			for (int k = ranges[3 * p]; k < ranges[3 * p + 1]; k++) {
+				result[vertices[k]] = p;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * splits the part vertices[first..last) by the middle level of a level structure: the
+	 * levels before it go to lowPart, those after it to highPart and the level itself is the
+	 * separator, marked -1. a part too shallow to cut is only split by component. vertices
+	 * are reordered to low, high, separator and sizes receives the counts of the first two.
+	 * returns false, with nothing changed, if the part cannot be split.
+	 */
+	private static boolean split(int first, int last, int id, int lowPart, int highPart, int[] vertices, int[] part,
+			int[] pointers, int[] adjacency, int[] level, int[] queue, int[] scratch, int[] sizes) {
+		int size = last - first;
+		int reached = buildPartLevels(vertices[first], id, part, pointers, adjacency, level, queue);
+		reached = findPeripheralLevels(reached, id, part, pointers, adjacency, level, queue);
+		int depth = level[queue[reached - 1]];
+
+		// the level holding the median vertex separates the rest, vertices of other
+		// components end up above it
+		int middle;
+		if (depth >= 3) {
+			middle = Math.max(2, Math.min(depth - 1, level[queue[reached / 2]]));
+		} else if (reached < size) {
+			middle = depth + 1;
+		} else {
+			clearLevels(level, queue, reached);
+			return false;
+		}
+
+		int low = 0;
+		int high = 0;
+		for (int k = first; k < last; k++) {
+			int l = level[vertices[k]];
+			if (l != 0 && l < middle) {
+				low++;
+			} else if (l != middle) {
+				high++;
+			}
+		}
+
+		int lowAt = first;
+		int highAt = first + low;
+		int separatorAt = first + low + high;
+		for (int k = first; k < last; k++) {
+			int v = vertices[k];
+			int l = level[v];
+			if (l != 0 && l < middle) {
+				part[v] = lowPart;
+				scratch[lowAt++] = v;
+			} else if (l != middle) {
+				part[v] = highPart;
+				scratch[highAt++] = v;
+			} else {
+				part[v] = -1;
+				scratch[separatorAt++] = v;
+			}
+		}
+		System.arraycopy(scratch, first, vertices, first, size);
+		clearLevels(level, queue, reached);
+
+		sizes[0] = low;
+		sizes[1] = high;
+		return true;
+	}
+
+	// a few sweeps of the george-liu heuristic within one part, returns the number of vertices reached
+	private static int findPeripheralLevels(int reached, int id, int[] part, int[] pointers, int[] adjacency, int[] level, int[] queue) {
+		int depth = level[queue[reached - 1]];
+		for (int sweep = 0; sweep < 4; sweep++) {
+			int candidate = queue[reached - 1];
+			clearLevels(level, queue, reached);
+			reached = buildPartLevels(candidate, id, part, pointers, adjacency, level, queue);
+
+			int candidateDepth = level[queue[reached - 1]];
+			if (candidateDepth <= depth) {
+				break;
+			}
+			depth = candidateDepth;
+		}
+		return reached;
+	}
+
+	// buildLevels restricted to the vertices of one part
+	private static int buildPartLevels(int root, int id, int[] part, int[] pointers, int[] adjacency, int[] level, int[] queue) {
+		int tail = 0;
+		queue[tail++] = root;
+		level[root] = 1;
+
+		for (int head = 0; head < tail; head++) {
+			int u = queue[head];
+			for (int k = pointers[u]; k < pointers[u + 1]; k++) {
+				int w = adjacency[k];
+				if (part[w] == id && level[w] == 0) {
+					level[w] = level[u] + 1;
+					queue[tail++] = w;
+				}
+			}
+		}
+
+		return tail;
+	}
+
+	/*
+	 * george-liu heuristic: keep jumping to a vertex of minimum degree on the last level
+	 * of the rooted level structure until its depth stops increasing.
+	 */
+	private static int findPseudoPeripheralVertex(int root, int[] pointers, int[] adjacency, int[] level, int[] queue) {
+		int size = buildLevels(root, pointers, adjacency, level, queue);
+		int depth = level[queue[size - 1]];
+
+		while (true) {
+			// the deepest level sits at the end of the queue
+			int candidate = queue[size - 1];
+			for (int k = size - 1; k >= 0 && level[queue[k]] == depth; k--) {
+				if (degree(queue[k], pointers) < degree(candidate, pointers)) {
+					candidate = queue[k];
+				}
+			}
+
+			clearLevels(level, queue, size);
+			size = buildLevels(candidate, pointers, adjacency, level, queue);
+			int candidateDepth = level[queue[size - 1]];
+
+			if (candidateDepth <= depth) {
+				clearLevels(level, queue, size);
+				return root;
+			}
+
+			root = candidate;
+			depth = candidateDepth;
+		}
+	}
+
+	// breadth first search labelling every vertex with its distance + 1, returns the number of vertices reached
+	private static int buildLevels(int root, int[] pointers, int[] adjacency, int[] level, int[] queue) {
+		int tail = 0;
+		queue[tail++] = root;
+		level[root] = 1;
+
+		for (int head = 0; head < tail; head++) {
+			int u = queue[head];
+			for (int k = pointers[u]; k < pointers[u + 1]; k++) {
+				int w = adjacency[k];
+				if (level[w] == 0) {
+					level[w] = level[u] + 1;
+					queue[tail++] = w;
+				}
+			}
+		}
+
+		return tail;
+	}
+
+	private static void clearLevels(int[] level, int[] queue, int size) {
+		for (int k = 0; k < size; k++) {
+			level[queue[k]] = 0;
+		}
+	}
+
+	private static void sortByDegree(int[] vertices, int from, int to, int[] pointers) {
+		// insertion sort, the neighbour lists of a frame are tiny
+		for (int i = from + 1; i < to; i++) {
+			int v = vertices[i];
+			int j = i - 1;
+			while (j >= from && degree(vertices[j], pointers) > degree(v, pointers)) {
+				vertices[j + 1] = vertices[j];
+				j--;
+			}
+			vertices[j + 1] = v;
+		}
+	}
+
+	private static int degree(int v, int[] pointers) {
+		return pointers[v + 1] - pointers[v];
+	}
+}
@@ -0,0 +1,196 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * element results of one solve, computed once from the displacements and kept in plain
+ * arrays indexed like the solver's elements, so drawing, export and checks only read
+ * them. min, max and percentiles of every quantity are worked out up front.
+ *
+ * forces are in the beam's local frame, member end forces of the stiffness matrix:
+ * axial force positive in tension, shear and moments as they act on the first node,
+ * moments counterclockwise. springs have forces but no section, so no stress or strain.
+ * quantities an element does not have are NaN and left out of the statistics.
+ */
+public class Results {
+	public enum Quantity {
+		AXIAL_FORCE,
+		SHEAR_FORCE,
+		START_MOMENT,
+		END_MOMENT,
+
+		// largest fiber stress along the beam, axial plus bending with the depth of getSectionDepth
+		STRESS,
+		STRAIN
+	}
+
+	private final int elementCount;
+	private final double[][] values;
+
+	// the finite values of every quantity, sorted
+	private final double[][] sorted;
+
+	// node positions plus displacements
+	private final double[] deformedX;
+	private final double[] deformedY;
+	private final double maxDisplacement;
+
+	public Results(FESolver solver, ArrayList<Node> displacements) {
+		NodeStore nodes = solver.getNodes();
+		ArrayList<Element> elements = solver.getElements();
+		int nodeCount = nodes.size();
+		this.elementCount = elements.size();
+
+		if (displacements.size() != nodeCount) {
+			throw new IllegalArgumentException("got displacements for " + displacements.size() + " nodes, the model has " + nodeCount);
+		}
+
+		double[] ux = new double[nodeCount];
+		double[] uy = new double[nodeCount];
+		double[] rz = new double[nodeCount];
+		this.deformedX = new double[nodeCount];
+		this.deformedY = new double[nodeCount];
+		double largest = 0.0;
+		for (int i = 0; i < nodeCount; i++) {
+			Node d = displacements.get(i);
+			ux[i] = d.getX();
+			uy[i] = d.getY();
+			rz[i] = d.getTheta();
+			deformedX[i] = nodes.getX(i) + ux[i];
+			deformedY[i] = nodes.getY(i) + uy[i];
+			largest = Math.max(largest, Math.hypot(ux[i], uy[i]));
+		}
+		this.maxDisplacement = largest;
+
+		Quantity[] quantities = Quantity.values();
+		this.values = new double[quantities.length][elementCount];
+		for (double[] column : values) {
+			Arrays.fill(column, Double.NaN);
+		}
+		double[] axial = values[Quantity.AXIAL_FORCE.ordinal()];
+		double[] shear = values[Quantity.SHEAR_FORCE.ordinal()];
+		double[] startMoment = values[Quantity.START_MOMENT.ordinal()];
+		double[] endMoment = values[Quantity.END_MOMENT.ordinal()];
+		double[] stress = values[Quantity.STRESS.ordinal()];
+		double[] strain = values[Quantity.STRAIN.ordinal()];
+
+		for (int e = 0; e < elementCount; e++) {
+			Element elem = elements.get(e);
+			int n1;
+			int n2;
+			if (elem instanceof BeamElement beam) {
+				n1 = beam.getNode1();
+				n2 = beam.getNode2();
+			} else if (elem instanceof SpringElement spring) {
+				n1 = spring.getNode1();
+				n2 = spring.getNode2();
+			} else {
+				continue;
+			}
+
+			double dx = nodes.getX(n2) - nodes.getX(n1);
+			double dy = nodes.getY(n2) - nodes.getY(n1);
+			double L = Math.sqrt(dx*dx + dy*dy);
+			double c = dx / L;
+			double s = dy / L;
+
+			// along and across the element
+			double du = c * (ux[n2] - ux[n1]) + s * (uy[n2] - uy[n1]);
+			double dv = -s * (ux[n2] - ux[n1]) + c * (uy[n2] - uy[n1]);
+
+			if (elem instanceof BeamElement beam) {
+				double E = beam.getYoungsModulus();
+				double A = beam.getCrossSectionalArea();
+				double EI = E * beam.getAreaMomentOfInertia();
+				double t1 = rz[n1];
+				double t2 = rz[n2];
+
+				axial[e] = E * A * du / L;
+				shear[e] = -12.0 * EI * dv / (L * L * L) + 6.0 * EI * (t1 + t2) / (L * L);
+				startMoment[e] = -6.0 * EI * dv / (L * L) + EI * (4.0 * t1 + 2.0 * t2) / L;
+				endMoment[e] = -6.0 * EI * dv / (L * L) + EI * (2.0 * t1 + 4.0 * t2) / L;
+				strain[e] = du / L;
+
+				// M = EI kappa, so this is calcFiberStress at the worse end
+				double bending = Math.max(Math.abs(startMoment[e]), Math.abs(endMoment[e])) * 0.5 * beam.getSectionDepth() / beam.getAreaMomentOfInertia();
+				stress[e] = Math.abs(axial[e]) / A + bending;
+			} else {
+				// the same stiffnesses as the spring's matrix
+				SpringElement spring = (SpringElement) elem;
+				axial[e] = spring.getYoungsModulus() * L * spring.getThickness() * du;
+				shear[e] = -spring.getShearModulus() * L * spring.getThickness() * dv;
+				startMoment[e] = 0.0;
+				endMoment[e] = 0.0;
+			}
+		}
+
+		this.sorted = new double[quantities.length][];
+		for (int q = 0; q < quantities.length; q++) {
+			double[] finite = new double[elementCount];
+			int count = 0;
+			for (double value : values[q]) {
+				if (!Double.isNaN(value)) {
+					finite[count++] = value;
+				}
+			}
+			finite = Arrays.copyOf(finite, count);
+			Arrays.sort(finite);
+			sorted[q] = finite;
+		}
+	}
+
+	public double get(Quantity quantity, int element) {
+		return values[quantity.ordinal()][element];
+	}
+
+	// one value per element, NaN where it does not apply. shared, not to be modified
+	public double[] getValues(Quantity quantity) {
+		return values[quantity.ordinal()];
+	}
+
+	// number of elements that have the quantity
+	public int getCount(Quantity quantity) {
+		return sorted[quantity.ordinal()].length;
+	}
+
+	public double getMin(Quantity quantity) {
+		return getPercentile(quantity, 0.0);
+	}
+
+	public double getMax(Quantity quantity) {
+		return getPercentile(quantity, 100.0);
+	}
+
+	// percentile from 0 to 100, interpolated between neighbouring values, NaN if no element has the quantity
+	public double getPercentile(Quantity quantity, double percentile) {
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("percentile has to be between 0 and 100, got " + percentile);
+		}
+
+		double[] column = sorted[quantity.ordinal()];
+		if (column.length == 0) {
+			return Double.NaN;
+		}
+
+		double position = percentile / 100.0 * (column.length - 1);
+		int below = (int) Math.floor(position);
+		int above = Math.min(below + 1, column.length - 1);
+		return column[below] + (position - below) * (column[above] - column[below]);
+	}
+
+	public int getElementCount() {
+		return elementCount;
+	}
+
+	public double getDeformedX(int node) {
+		return deformedX[node];
+	}
+
+	public double getDeformedY(int node) {
+		return deformedY[node];
+	}
+
+	// largest translation of any node
+	public double getMaxDisplacement() {
+		return maxDisplacement;
+	}
+}
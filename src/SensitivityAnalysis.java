@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+
+/*
+ * derivatives of a response with respect to every property of every element, by the
+ * adjoint method. a response g^T u of the free displacements u has the adjoint K l = g,
+ * and since the loads do not depend on the properties
+ *
+ *   dR/dp = -l^T (dK/dp) u
+ *
+ * summed over the element's dofs, the prescribed displacements included on the u side and
+ * left out on the l side. dK/dp is exact since each element's stiffness is linear in each
+ * of its properties.
+ *
+ * the displacements and all adjoints are solved together against the model's current
+ * factorization, one extra back substitution per displacement response. the compliance,
+ * the work of the applied forces, is its own adjoint and needs none as long as no
+ * displacement is prescribed to a nonzero value.
+ *
+ * usage: [-node id -dof x|y|theta] model.fem
+ */
+public class SensitivityAnalysis {
+	public record Response(Kind kind, int node, int variable) {
+		public enum Kind {
+			COMPLIANCE,
+			DISPLACEMENT
+		}
+
+		public static Response compliance() {
+			return new Response(Kind.COMPLIANCE, -1, -1);
+		}
+
+		// node by its id in the model, variable one of Node.VAR_X, VAR_Y and VAR_THETA
+		public static Response displacement(int node, int variable) {
+			if (variable < 0 || variable >= Node.DEGREES_OF_FREEDOM) {
+				throw new IllegalArgumentException("no dof " + variable + " on a node");
+			}
+			return new Response(Kind.DISPLACEMENT, node, variable);
+		}
+	}
+
+	// derivatives[e][property.ordinal()], 0 for properties the element does not have
+	public record Gradient(Response response, double value, double[][] derivatives) {
+		public double get(int element, Element.Property property) {
+			return derivatives[element][property.ordinal()];
+		}
+	}
+
+	private final FESolver solver;
+
+	// adjoint solves of the last compute, beyond the one for the displacements
+	private int backSubstitutions;
+	private ArrayList<Node> displacements;
+
+	public SensitivityAnalysis(FESolver solver) {
+		this.solver = solver;
+	}
+
+	// the model has to be assembled, it is factorized unless it already is
+	public Gradient[] compute(Response... responses) {
+		if (solver.getStiffnessMatrix() == null && !solver.isMatrixFree()) {
+			throw new IllegalStateException("sensitivities need an assembled stiffness matrix");
+		}
+
+		int n = solver.getEquationCount();
+		MyVector load = solver.buildForceVector(solver.getForces());
+		MyVector prescribedLoad = solver.buildForceVector(new BoundaryConditions());
+		boolean prescribed = false;
+		for (int i = 0; i < n; i++) {
+			prescribed |= prescribedLoad.get(i) != 0.0;
+		}
+
+		// the forces alone, prescribed displacements do no work in the compliance
+		double[] applied = new double[n];
+		for (int i = 0; i < n; i++) {
+			applied[i] = load.get(i) - prescribedLoad.get(i);
+		}
+
+		// right hand sides: the load, then the adjoints that need a solve
+		ArrayList<MyVector> rhs = new ArrayList<>();
+		rhs.add(load);
+		int[] adjointIndex = new int[responses.length];
+		for (int r = 0; r < responses.length; r++) {
+			Response response = responses[r];
+			adjointIndex[r] = -1;
+			if (response.kind() == Response.Kind.COMPLIANCE) {
+				if (prescribed) {
+					adjointIndex[r] = rhs.size();
+					rhs.add(new MyVector(applied));
+				}
+			} else {
+				int equation = solver.getEquation(solver.getNodeIndex(response.node()), response.variable());
+				if (equation >= 0) {
+					MyVector unit = new MyVector(n);
+					unit.set(equation, 1.0);
+					adjointIndex[r] = rhs.size();
+					rhs.add(unit);
+				}
+			}
+		}
+		backSubstitutions = rhs.size() - 1;
+
+		MyVector[] solutions = solver.solveSystem(rhs.toArray(new MyVector[0]), null);
+		double[] u = solutions[0].getData();
+		displacements = solver.collectDisplacements(solutions[0], false);
+		double[] all = new double[Node.DEGREES_OF_FREEDOM * solver.getNodes().size()];
+		solver.expandDisplacements(u, all);
+
+		Gradient[] result = new Gradient[responses.length];
+		for (int r = 0; r < responses.length; r++) {
+			Response response = responses[r];
+			double value;
+			double[] adjoint;
+			if (response.kind() == Response.Kind.COMPLIANCE) {
+				value = 0.0;
+				for (int i = 0; i < n; i++) {
+					value += applied[i] * u[i];
+				}
+				adjoint = adjointIndex[r] >= 0 ? solutions[adjointIndex[r]].getData() : u;
+			} else {
+				value = all[solver.getNodeIndex(response.node()) * Node.DEGREES_OF_FREEDOM + response.variable()];
+				// a prescribed displacement depends on nothing
+				adjoint = adjointIndex[r] >= 0 ? solutions[adjointIndex[r]].getData() : null;
+			}
+			result[r] = new Gradient(response, value, derivatives(u, adjoint));
+		}
+		return result;
+	}
+
+	private double[][] derivatives(double[] u, double[] adjoint) {
+		ArrayList<Element> elements = solver.getElements();
+		int propertyCount = Element.Property.values().length;
+		double[][] result = new double[elements.size()][propertyCount];
+		if (adjoint == null) {
+			return result;
+		}
+
+		int maxSize = Element.getMaxDofCount(elements);
+		double[] elementDisplacements = new double[maxSize];
+		double[] elementMultipliers = new double[maxSize];
+		double[] derivative = new double[maxSize * maxSize];
+
+		for (int e = 0; e < elements.size(); e++) {
+			Element elem = elements.get(e);
+			Element.Property[] properties = elem.getProperties();
+			if (properties.length == 0) {
+				continue;
+			}
+
+			final int size = elem.getDofCount();
+			solver.gatherDisplacements(elem, u, 1.0, elementDisplacements);
+			solver.gatherDisplacements(elem, adjoint, 0.0, elementMultipliers);
+
+			for (var property : properties) {
+				elem.getGlobalMatrixDerivative(property, derivative, 0);
+				double sum = 0.0;
+				for (int i = 0; i < size; i++) {
+					if (elementMultipliers[i] == 0.0) {
+						continue;
+					}
+					double row = 0.0;
+					for (int j = 0; j < size; j++) {
+						row += derivative[i * size + j] * elementDisplacements[j];
+					}
+					sum += elementMultipliers[i] * row;
+				}
+				result[e][property.ordinal()] = -sum;
+			}
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int node = -1;
+		int variable = Node.VAR_Y;
+		String model = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-node" -> node = Integer.parseInt(args[++i]);
+				case "-dof" -> variable = switch (args[++i]) {
+					case "x" -> Node.VAR_X;
+					case "y" -> Node.VAR_Y;
+					case "theta" -> Node.VAR_THETA;
+					default -> throw new IllegalArgumentException("unknown dof " + args[i]);
+				};
+				default -> model = args[i];
+			}
+		}
+		if (model == null) {
+			System.err.println("usage: --sensitivity [-node id -dof x|y|theta] model.fem");
+			return;
+		}
+
+		FESolver solver = new FESolver();
+		solver.setLinearSolver(new SparseCholeskySolver());
+		solver.loadFromFile(model);
+		solver.buildMatrix();
+		solver.factorize();
+
+		SensitivityAnalysis analysis = new SensitivityAnalysis(solver);
+		Response[] responses = node >= 0
+			? new Response[] { Response.compliance(), Response.displacement(node, variable) }
+			: new Response[] { Response.compliance() };
+
+		long start = System.nanoTime();
+		Gradient[] gradients = analysis.compute(responses);
+		double seconds = (System.nanoTime() - start) * 1e-9;
+
+		// p dR/dp, the change for a relative change of the property, is comparable across properties
+		ArrayList<Element> elements = solver.getElements();
+		for (Gradient gradient : gradients) {
+			Response response = gradient.response();
+			String name = response.kind() == Response.Kind.COMPLIANCE ? "compliance" : "displacement of node " + response.node() + " dof " + response.variable();
+			System.out.printf("%s = %.6e%n", name, gradient.value());
+			System.out.printf("%8s %18s %14s %14s %14s%n", "element", "property", "value", "dR/dp", "p dR/dp");
+			for (int e = 0; e < elements.size(); e++) {
+				Element elem = elements.get(e);
+				for (var property : elem.getProperties()) {
+					double value = elem.getProperty(property);
+					double derivative = gradient.get(e, property);
+					System.out.printf("%8d %18s %14.6e %14.6e %14.6e%n", e, property, value, derivative, value * derivative);
+				}
+			}
+		}
+		System.out.printf("%d elements, %d adjoint back substitutions in %.3f ms%n", elements.size(), analysis.getBackSubstitutions(), seconds * 1e3);
+	}
+
+	public int getBackSubstitutions() {
+		return backSubstitutions;
+	}
+
+	// the displacements the last compute solved for on the way
+	public ArrayList<Node> getDisplacements() {
+		return displacements;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * LDL^T factorization of a symmetric matrix stored in skyline (variable band) form.
+ * only the lower profile is kept: row i holds the columns from its first non-zero up
+ * to the diagonal, so the cost depends on the profile of the numbering rather than n^2.
+ */
+public class SkylineSolver implements LinearSolver {
+	private int size;
+	private int[] firstColumn;
+	private int[] rowStart;
+	private double[] lower;
+	private double[] diagonal;
+
+	@Override
+	public void factorize(SparseMatrix matrix) {
+		size = matrix.getSize();
+		buildProfile(matrix);
+
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+		double[] values = matrix.getValues();
+
+		lower = new double[rowStart[size]];
+		diagonal = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				int j = columnIndices[k];
+				if (j < i) {
+					lower[rowStart[i] + j - firstColumn[i]] = values[k];
+				} else if (j == i) {
+					diagonal[i] = values[k];
+				}
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			int fi = firstColumn[i];
+			int ri = rowStart[i] - fi;
+
+			// g_ij = a_ij - sum g_ik * l_jk, stored in place of row i
+			for (int j = fi; j < i; j++) {
+				int rj = rowStart[j] - firstColumn[j];
+				double sum = lower[ri + j];
+				for (int k = Math.max(fi, firstColumn[j]); k < j; k++) {
+					sum -= lower[ri + k] * lower[rj + k];
+				}
+				lower[ri + j] = sum;
+			}
+
+			// l_ij = g_ij / d_j and d_i = a_ii - sum l_ij * g_ij
+			double d = diagonal[i];
+			for (int j = fi; j < i; j++) {
+				double g = lower[ri + j];
+				double l = g / diagonal[j];
+				lower[ri + j] = l;
+				d -= l * g;
+			}
+
+			if (d == 0.0 || Double.isNaN(d)) {
+				throw new ArithmeticException("matrix is singular at row " + i);
+			}
+			diagonal[i] = d;
+		}
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs) {
+		return solve(new MyVector[] { rhs })[0];
+	}
+
+	/*
+	 * block substitution, the right hand sides are interleaved (x[i*m + c]) so every
+	 * factor entry is loaded once and applied to all of them.
+	 */
+	@Override
+	public MyVector[] solve(MyVector[] rhs) {
+		int m = rhs.length;
+		double[] x = new double[size * m];
+		for (int c = 0; c < m; c++) {
+			for (int i = 0; i < size; i++) {
+				x[i * m + c] = rhs[c].get(i);
+			}
+		}
+
+		// L z = b
+		for (int i = 0; i < size; i++) {
+			int ri = rowStart[i] - firstColumn[i];
+			for (int j = firstColumn[i]; j < i; j++) {
+				double l = lower[ri + j];
+				for (int c = 0; c < m; c++) {
+					x[i * m + c] -= l * x[j * m + c];
+				}
+			}
+		}
+
+		// D y = z
+		for (int i = 0; i < size; i++) {
+			double inv = 1.0 / diagonal[i];
+			for (int c = 0; c < m; c++) {
+				x[i * m + c] *= inv;
+			}
+		}
+
+		// L^T x = y
+		for (int i = size - 1; i >= 0; i--) {
+			int ri = rowStart[i] - firstColumn[i];
+			for (int j = firstColumn[i]; j < i; j++) {
+				double l = lower[ri + j];
+				for (int c = 0; c < m; c++) {
+					x[j * m + c] -= l * x[i * m + c];
+				}
+			}
+		}
+
+		MyVector[] result = new MyVector[m];
+		for (int c = 0; c < m; c++) {
+			result[c] = new MyVector(size);
+			for (int i = 0; i < size; i++) {
+				result[c].set(i, x[i * m + c]);
+			}
+		}
+		return result;
+	}
+
+	// raw factor arrays, for writing and restoring snapshots
+	int[] getFirstColumn() {
+		return firstColumn;
+	}
+
+	int[] getRowStart() {
+		return rowStart;
+	}
+
+	double[] getLower() {
+		return lower;
+	}
+
+	double[] getDiagonal() {
+		return diagonal;
+	}
+
+	void restore(int[] firstColumn, int[] rowStart, double[] lower, double[] diagonal) {
+		this.size = diagonal.length;
+		this.firstColumn = firstColumn;
+		this.rowStart = rowStart;
+		this.lower = lower;
+		this.diagonal = diagonal;
+	}
+
+	public int getProfileSize() {
+		return rowStart[size];
+	}
+
+	private void buildProfile(SparseMatrix matrix) {
+		int[] rowPointers = matrix.getRowPointers();
+		int[] columnIndices = matrix.getColumnIndices();
+
+		firstColumn = new int[size];
+		rowStart = new int[size + 1];
+
+		for (int i = 0; i < size; i++) {
+			// columns are sorted so the first entry is the leftmost one
+			int first = i;
+			if (rowPointers[i] < rowPointers[i + 1]) {
+				first = Math.min(i, columnIndices[rowPointers[i]]);
+			}
+			firstColumn[i] = first;
+			rowStart[i + 1] = rowStart[i] + (i - first);
+		}
+	}
+}
@@ -0,0 +1,6 @@
+/*
+ * called by FESolver at the end of every phase, on the thread that ran it.
+ */
+public interface SolverListener {
+	void phaseCompleted(SolverPhase phase, long nanos, long allocatedBytes, SolverMetrics metrics);
+}
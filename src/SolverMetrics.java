@@ -0,0 +1,169 @@
+import java.lang.management.ManagementFactory;
+
+/*
+ * running totals of where a solver spent its time, per phase, plus the size of the
+ * last system it built and how the last iterative solve went.
+ *
+ * allocations are those of the calling thread, work handed to the assembly pool is
+ * timed but its allocations are not counted.
+ */
+public class SolverMetrics {
+	private static final int PHASE_COUNT = SolverPhase.values().length;
+
+	private final long[] nanos;
+	private final long[] allocatedBytes;
+	private final int[] counts;
+
+	private int matrixSize;
+	private long nonZeros;
+	private int iterations;
+	private double residual;
+	private boolean converged;
+
+	// started phase, kept until the matching end
+	static class Scope {
+		private final SolverPhase phase;
+		private final long start;
+		private final long allocatedAtStart;
+		private final PhaseEvent event;
+
+		private Scope(SolverPhase phase) {
+			this.phase = phase;
+			this.event = new PhaseEvent();
+			this.event.begin();
+			this.allocatedAtStart = currentThreadAllocatedBytes();
+			this.start = System.nanoTime();
+		}
+	}
+
+	public SolverMetrics() {
+		this.nanos = new long[PHASE_COUNT];
+		this.allocatedBytes = new long[PHASE_COUNT];
+		this.counts = new int[PHASE_COUNT];
+		reset();
+	}
+
+	public void reset() {
+		for (int i = 0; i < PHASE_COUNT; i++) {
+			nanos[i] = 0;
+			allocatedBytes[i] = 0;
+			counts[i] = 0;
+		}
+		this.matrixSize = 0;
+		this.nonZeros = 0;
+		this.iterations = 0;
+		this.residual = 0.0;
+		this.converged = true;
+	}
+
+	Scope begin(SolverPhase phase) {
+		return new Scope(phase);
+	}
+
+	// closes the phase and returns its duration
+	long end(Scope scope, String model, SolverListener listener) {
+		long elapsed = System.nanoTime() - scope.start;
+		long allocatedAtEnd = currentThreadAllocatedBytes();
+		long allocated = allocatedAtEnd >= 0 && scope.allocatedAtStart >= 0 ? allocatedAtEnd - scope.allocatedAtStart : -1;
+
+		int index = scope.phase.ordinal();
+		nanos[index] += elapsed;
+		allocatedBytes[index] += Math.max(0, allocated);
+		counts[index]++;
+
+		PhaseEvent event = scope.event;
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = scope.phase.name();
+			event.model = model;
+			event.allocatedBytes = allocated;
+			event.matrixSize = matrixSize;
+			event.nonZeros = nonZeros;
+			event.iterations = iterations;
+			event.residual = residual;
+			event.commit();
+		}
+
+		if (listener != null) {
+			listener.phaseCompleted(scope.phase, elapsed, allocated, this);
+		}
+		return elapsed;
+	}
+
+	void setSystemSize(int matrixSize, long nonZeros) {
+		this.matrixSize = matrixSize;
+		this.nonZeros = nonZeros;
+	}
+
+	void setIterativeResult(int iterations, double residual, boolean converged) {
+		this.iterations = iterations;
+		this.residual = residual;
+		this.converged = converged;
+	}
+
+	public long getNanos(SolverPhase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	public long getAllocatedBytes(SolverPhase phase) {
+		return allocatedBytes[phase.ordinal()];
+	}
+
+	public int getCount(SolverPhase phase) {
+		return counts[phase.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (long time : nanos) {
+			total += time;
+		}
+		return total;
+	}
+
+	public int getMatrixSize() {
+		return matrixSize;
+	}
+
+	public long getNonZeros() {
+		return nonZeros;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public double getResidual() {
+		return residual;
+	}
+
+	public boolean isConverged() {
+		return converged;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%-14s %6s %12s %14s%n", "phase", "count", "ms", "allocated"));
+		for (SolverPhase phase : SolverPhase.values()) {
+			int i = phase.ordinal();
+			if (counts[i] == 0) {
+				continue;
+			}
+			builder.append(String.format("%-14s %6d %12.3f %14d%n", phase, counts[i], nanos[i] * 1e-6, allocatedBytes[i]));
+		}
+		builder.append(String.format("matrix %d x %d, %d non-zeros", matrixSize, matrixSize, nonZeros));
+		if (iterations > 0) {
+			builder.append(String.format(", %d iterations, residual %.3e%s", iterations, residual, converged ? "" : " (not converged)"));
+		}
+		return builder.toString();
+	}
+
+	private static long currentThreadAllocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+			&& threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+			return threads.getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+}
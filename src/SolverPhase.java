@@ -0,0 +1,12 @@
+/*
+ * stages of a solve, in the order they usually run.
+ */
+public enum SolverPhase {
+	PARSE,
+	SUBDIVIDE,
+	ASSEMBLE,
+	CONSTRAIN,
+	FACTORIZE,
+	SOLVE,
+	POST_PROCESS
+}
@@ -0,0 +1,455 @@
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * supernodal left-looking cholesky factorization L L^T of a symmetric positive definite
+ * matrix. the structure comes from a SymbolicCholesky, kept as long as the sparsity
+ * pattern does not change, so refactorizing only redoes the numbers.
+ *
+ * a supernode needs the updates of all the supernodes below it in the tree and nothing
+ * else, so disjoint subtrees are factorized at the same time: every supernode waits for
+ * its children on a counter and the last child to finish starts the parent. large
+ * supernodes near the root, where the tree runs out of parallelism, split their row
+ * work over the pool too.
+ *
+ * with retained equations the factorization stops short of the last ones: their block
+ * is left as the schur complement K_rr - K_re K_ee^-1 K_er, and forward and backward
+ * solve the eliminated part around a solution for them found elsewhere.
+ */
+public class SparseCholeskySolver implements LinearSolver {
+	private final int threads;
+	private final int retained;
+	private ForkJoinPool pool;
+
+	private SymbolicCholesky symbolic;
+
+	// supernode s as a dense block, (width + rows) x width row by row: the lower triangle of
+	// the diagonal block, then one row for each of its rows below
+	private double[][] blocks;
+
+	// supernodes with fewer entries are never split over the pool
+	private static final int PARALLEL_BLOCK_SIZE = 1 << 14;
+
+	public SparseCholeskySolver() {
+		this(1);
+	}
+
+	public SparseCholeskySolver(int threads) {
+		this(threads, 0);
+	}
+
+	// the last retained equations of every matrix are left to the caller, see forward
+	public SparseCholeskySolver(int threads, int retained) {
+		this.threads = Math.max(1, threads);
+		this.retained = retained;
+	}
+
+	@Override
+	public void factorize(SparseMatrix matrix) {
+		if (symbolic == null || !symbolic.matches(matrix, retained)) {
+			symbolic = new SymbolicCholesky(matrix, retained);
+		}
+
+		int count = symbolic.getSupernodeCount();
+		blocks = new double[count][];
+
+		if (threads == 1) {
+			// children are always numbered before their parents
+			for (int s = 0; s < count; s++) {
+				factorSupernode(s, matrix);
+			}
+			return;
+		}
+
+		if (pool == null) {
+			pool = new ForkJoinPool(threads);
+		}
+		try {
+			pool.invoke(new Forest(matrix));
+		} catch (ArithmeticException e) {
+			// the pool hands back a copy without the message, the original is its cause
+			throw e.getCause() instanceof ArithmeticException original ? original : e;
+		}
+	}
+
+	// every root of the supernode tree with its subtree
+	private class Forest extends CountedCompleter<Void> {
+		private static final long serialVersionUID = 1L;
+
+		private final SparseMatrix matrix;
+
+		Forest(SparseMatrix matrix) {
+			this.matrix = matrix;
+		}
+
+		@Override
+		public void compute() {
+			int[] parents = symbolic.getSupernodeParent();
+			for (int s = 0; s < parents.length; s++) {
+				if (parents[s] < 0) {
+					addToPendingCount(1);
+					new SupernodeTask(this, s, matrix).fork();
+				}
+			}
+			tryComplete();
+		}
+	}
+
+	// starts the children, the supernode itself is factorized once the last of them completes
+	private class SupernodeTask extends CountedCompleter<Void> {
+		private static final long serialVersionUID = 1L;
+
+		private final int supernode;
+		private final SparseMatrix matrix;
+
+		SupernodeTask(CountedCompleter<?> parent, int supernode, SparseMatrix matrix) {
+			super(parent);
+			this.supernode = supernode;
+			this.matrix = matrix;
+		}
+
+		@Override
+		public void compute() {
+			int[] pointers = symbolic.getChildPointers();
+			int[] children = symbolic.getChildren();
+			for (int p = pointers[supernode]; p < pointers[supernode + 1]; p++) {
+				addToPendingCount(1);
+				new SupernodeTask(this, children[p], matrix).fork();
+			}
+			tryComplete();
+		}
+
+		@Override
+		public void onCompletion(CountedCompleter<?> caller) {
+			factorSupernode(supernode, matrix);
+		}
+	}
+
+	private void factorSupernode(int s, SparseMatrix matrix) {
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+		int[] rowIndices = symbolic.getRowIndices();
+
+		int first = start[s];
+		int width = start[s + 1] - first;
+		int rows = rowPointers[s + 1] - rowPointers[s];
+		double[] block = new double[(width + rows) * width];
+		boolean parallel = pool != null && block.length >= PARALLEL_BLOCK_SIZE;
+
+		gather(s, matrix, block);
+
+		// left-looking: subtract L_k L_k^T for every supernode k with rows in this one
+		int[] updatePointers = symbolic.getUpdatePointers();
+		int[] updateSupernodes = symbolic.getUpdateSupernodes();
+		int[] updateOffsets = symbolic.getUpdateOffsets();
+		int[] updateEnds = symbolic.getUpdateEnds();
+		for (int u = updatePointers[s]; u < updatePointers[s + 1]; u++) {
+			int k = updateSupernodes[u];
+			int offset = updateOffsets[u];
+			int end = updateEnds[u];
+			int count = rowPointers[k + 1] - rowPointers[k] - offset;
+			if (parallel && count * (start[k + 1] - start[k]) >= 256) {
+				ParallelLoop.run(pool, count, 16, (from, to) -> update(s, block, k, offset + from, offset + to, offset, end));
+			} else {
+				update(s, block, k, offset, offset + count, offset, end);
+			}
+		}
+
+		// the retained block stays as it is, the schur complement
+		if (retained > 0 && s == blocks.length - 1) {
+			blocks[s] = block;
+			return;
+		}
+
+		// dense cholesky of the diagonal block
+		for (int i = 0; i < width; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = block[i * width + j];
+				for (int k = 0; k < j; k++) {
+					sum -= block[i * width + k] * block[j * width + k];
+				}
+
+				if (i == j) {
+					if (!(sum > 0.0)) {
+						throw new ArithmeticException("matrix is not positive definite at row " + symbolic.getPermutation()[first + i]);
+					}
+					block[i * width + i] = Math.sqrt(sum);
+				} else {
+					block[i * width + j] = sum / block[j * width + j];
+				}
+			}
+		}
+
+		// rows below: solve against the diagonal block, each row on its own
+		if (parallel) {
+			ParallelLoop.run(pool, rows, 64, (from, to) -> solveRows(block, width, width + from, width + to));
+		} else {
+			solveRows(block, width, width, width + rows);
+		}
+
+		blocks[s] = block;
+	}
+
+	// entries of the permuted lower triangle that fall into supernode s
+	private void gather(int s, SparseMatrix matrix, double[] block) {
+		int[] start = symbolic.getSupernodeStart();
+		int[] permutation = symbolic.getPermutation();
+		int[] inverse = symbolic.getInverse();
+		int[] matrixRowPointers = matrix.getRowPointers();
+		int[] matrixColumnIndices = matrix.getColumnIndices();
+		double[] values = matrix.getValues();
+
+		int first = start[s];
+		int width = start[s + 1] - first;
+		for (int c = 0; c < width; c++) {
+			// column first + c of the lower triangle is row first + c of the upper one
+			int row = permutation[first + c];
+			for (int p = matrixRowPointers[row]; p < matrixRowPointers[row + 1]; p++) {
+				int i = inverse[matrixColumnIndices[p]];
+				if (i >= first + c) {
+					block[symbolic.position(s, i) * width + c] += values[p];
+				}
+			}
+		}
+	}
+
+	/*
+	 * block -= L_k(a, :) L_k(b, :)^T for the rows a in [from, to) of supernode k and the rows
+	 * b in [columnOffset, columnEnd) of k, those that fall into the columns of s. every a is
+	 * a row of s, so disjoint ranges write disjoint rows.
+	 */
+	private void update(int s, double[] block, int k, int from, int to, int columnOffset, int columnEnd) {
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+		int[] rowIndices = symbolic.getRowIndices();
+
+		int first = start[s];
+		int width = start[s + 1] - first;
+
+		double[] source = blocks[k];
+		int sourceWidth = start[k + 1] - start[k];
+		int sourceRows = rowPointers[k];
+
+		// both sets of rows are contiguous in the source block, so this is one dense product
+		int columns = columnEnd - columnOffset;
+		double[] product = new double[(to - from) * columns];
+		multiplyTransposed(source, sourceWidth, sourceWidth + from, to - from, sourceWidth + columnOffset, columns, product);
+
+		for (int a = from; a < to; a++) {
+			int target = symbolic.position(s, rowIndices[sourceRows + a]) * width;
+			int offset = (a - from) * columns - columnOffset;
+
+			// only the lower triangle of the diagonal block is kept
+			int end = Math.min(a + 1, columnEnd);
+			for (int b = columnOffset; b < end; b++) {
+				block[target + rowIndices[sourceRows + b] - first] -= product[offset + b];
+			}
+		}
+	}
+
+	/*
+	 * out = X(i, :) X(j, :)^T for rows [i, i + m) and [j, j + n) of the row by row matrix x
+	 * with the given width. works on 2x2 tiles so every value loaded is used twice.
+	 */
+	private static void multiplyTransposed(double[] x, int width, int i, int m, int j, int n, double[] out) {
+		int a = 0;
+		for (; a + 1 < m; a += 2) {
+			int ra = (i + a) * width;
+			int b = 0;
+			for (; b + 1 < n; b += 2) {
+				int rb = (j + b) * width;
+				double s00 = 0.0;
+				double s01 = 0.0;
+				double s10 = 0.0;
+				double s11 = 0.0;
+				for (int c = 0; c < width; c++) {
+					double a0 = x[ra + c];
+					double a1 = x[ra + width + c];
+					double b0 = x[rb + c];
+					double b1 = x[rb + width + c];
+					s00 += a0 * b0;
+					s01 += a0 * b1;
+					s10 += a1 * b0;
+					s11 += a1 * b1;
+				}
+				out[a * n + b] = s00;
+				out[a * n + b + 1] = s01;
+				out[(a + 1) * n + b] = s10;
+				out[(a + 1) * n + b + 1] = s11;
+			}
+			if (b < n) {
+				out[a * n + b] = dot(x, ra, (j + b) * width, width);
+				out[(a + 1) * n + b] = dot(x, ra + width, (j + b) * width, width);
+			}
+		}
+		if (a < m) {
+			for (int b = 0; b < n; b++) {
+				out[a * n + b] = dot(x, (i + a) * width, (j + b) * width, width);
+			}
+		}
+	}
+
+	private static double dot(double[] x, int i, int j, int length) {
+		double sum = 0.0;
+		for (int c = 0; c < length; c++) {
+			sum += x[i + c] * x[j + c];
+		}
+		return sum;
+	}
+
+	// L(r, :) = A(r, :) L_d^-T for the rows [from, to) below the diagonal block
+	private static void solveRows(double[] block, int width, int from, int to) {
+		for (int r = from; r < to; r++) {
+			for (int j = 0; j < width; j++) {
+				double sum = block[r * width + j];
+				for (int k = 0; k < j; k++) {
+					sum -= block[r * width + k] * block[j * width + k];
+				}
+				block[r * width + j] = sum / block[j * width + j];
+			}
+		}
+	}
+
+	@Override
+	public MyVector solve(MyVector rhs) {
+		return solve(new MyVector[] { rhs })[0];
+	}
+
+	@Override
+	public MyVector[] solve(MyVector[] rhs) {
+		if (retained > 0) {
+			throw new IllegalStateException("the factorization retained " + retained + " equations, use forward and backward");
+		}
+		return backward(forward(rhs), rhs.length);
+	}
+
+	/*
+	 * permutes the right hand sides and runs L y = b over the eliminated supernodes. the result
+	 * is interleaved like in the skyline solver, x[i*m + c] for m right hand sides, and the
+	 * retained equations keep their place at the end: there it holds b_r - K_re K_ee^-1 b_e.
+	 */
+	public double[] forward(MyVector[] rhs) {
+		int size = symbolic.getSize();
+		int m = rhs.length;
+		int[] permutation = symbolic.getPermutation();
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+		int[] rowIndices = symbolic.getRowIndices();
+		int eliminated = retained > 0 ? blocks.length - 1 : blocks.length;
+
+		double[] x = new double[size * m];
+		for (int c = 0; c < m; c++) {
+			for (int i = 0; i < size; i++) {
+				x[i * m + c] = rhs[c].get(permutation[i]);
+			}
+		}
+
+		// L y = b
+		for (int s = 0; s < eliminated; s++) {
+			double[] block = blocks[s];
+			int first = start[s];
+			int width = start[s + 1] - first;
+
+			for (int i = 0; i < width; i++) {
+				for (int k = 0; k < i; k++) {
+					double l = block[i * width + k];
+					for (int c = 0; c < m; c++) {
+						x[(first + i) * m + c] -= l * x[(first + k) * m + c];
+					}
+				}
+				double inv = 1.0 / block[i * width + i];
+				for (int c = 0; c < m; c++) {
+					x[(first + i) * m + c] *= inv;
+				}
+			}
+
+			for (int p = rowPointers[s]; p < rowPointers[s + 1]; p++) {
+				int r = (width + p - rowPointers[s]) * width;
+				int row = rowIndices[p];
+				for (int k = 0; k < width; k++) {
+					double l = block[r + k];
+					for (int c = 0; c < m; c++) {
+						x[row * m + c] -= l * x[(first + k) * m + c];
+					}
+				}
+			}
+		}
+
+		return x;
+	}
+
+	// L^T x = y over the eliminated supernodes, with the solution for the retained equations filled in by the caller
+	public MyVector[] backward(double[] x, int m) {
+		int size = symbolic.getSize();
+		int[] permutation = symbolic.getPermutation();
+		int[] start = symbolic.getSupernodeStart();
+		int[] rowPointers = symbolic.getRowPointers();
+		int[] rowIndices = symbolic.getRowIndices();
+		int eliminated = retained > 0 ? blocks.length - 1 : blocks.length;
+
+		// L^T x = y
+		for (int s = eliminated - 1; s >= 0; s--) {
+			double[] block = blocks[s];
+			int first = start[s];
+			int width = start[s + 1] - first;
+
+			for (int p = rowPointers[s]; p < rowPointers[s + 1]; p++) {
+				int r = (width + p - rowPointers[s]) * width;
+				int row = rowIndices[p];
+				for (int k = 0; k < width; k++) {
+					double l = block[r + k];
+					for (int c = 0; c < m; c++) {
+						x[(first + k) * m + c] -= l * x[row * m + c];
+					}
+				}
+			}
+
+			for (int i = width - 1; i >= 0; i--) {
+				double inv = 1.0 / block[i * width + i];
+				for (int c = 0; c < m; c++) {
+					x[(first + i) * m + c] *= inv;
+				}
+				for (int k = 0; k < i; k++) {
+					double l = block[i * width + k];
+					for (int c = 0; c < m; c++) {
+						x[(first + k) * m + c] -= l * x[(first + i) * m + c];
+					}
+				}
+			}
+		}
+
+		MyVector[] result = new MyVector[m];
+		for (int c = 0; c < m; c++) {
+			result[c] = new MyVector(size);
+			for (int i = 0; i < size; i++) {
+				result[c].set(permutation[i], x[i * m + c]);
+			}
+		}
+		return result;
+	}
+
+	// K_rr - K_re K_ee^-1 K_er for the retained equations, full and row by row
+	public double[] getSchurComplement() {
+		double[] block = blocks[blocks.length - 1];
+		double[] result = new double[retained * retained];
+		for (int i = 0; i < retained; i++) {
+			for (int j = 0; j <= i; j++) {
+				result[i * retained + j] = block[i * retained + j];
+				result[j * retained + i] = block[i * retained + j];
+			}
+		}
+		return result;
+	}
+
+	public SymbolicCholesky getSymbolic() {
+		return symbolic;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getRetained() {
+		return retained;
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/*
+ * square matrix in compressed sparse row (CSR) format.
+ * the sparsity pattern is fixed on construction, values start at zero and
+ * can only be written to positions that are part of the pattern.
+ */
+public class SparseMatrix implements LinearOperator {
+	private final int size;
+	private final int[] rowPointers;
+	private final int[] columnIndices;
+	private final double[] values;
+
+	// node grouping of the equations, consecutive triples unless set
+	private int[] blockStarts;
+
+	public SparseMatrix(int size, int[] rowPointers, int[] columnIndices) {
+		this(size, rowPointers, columnIndices, new double[rowPointers[size]]);
+	}
+
+	public SparseMatrix(int size, int[] rowPointers, int[] columnIndices, double[] values) {
+		this.size = size;
+		this.rowPointers = rowPointers;
+		this.columnIndices = columnIndices;
+		this.values = values;
+	}
+
+	@Override
+	public void multiply(double[] x, double[] y) {
+		for (int row = 0; row < size; row++) {
+			double sum = 0.0;
+			for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+				sum += values[k] * x[columnIndices[k]];
+			}
+			y[row] = sum;
+		}
+	}
+
+	@Override
+	public int[] getBlockStarts() {
+		if (blockStarts == null) {
+			final int n = Node.DEGREES_OF_FREEDOM;
+			int count = (size + n - 1) / n;
+			blockStarts = new int[count + 1];
+			for (int b = 0; b <= count; b++) {
+				blockStarts[b] = Math.min(b * n, size);
+			}
+		}
+		return blockStarts;
+	}
+
+	// graph of the node blocks, the neighbours of b are adjacency[pointers[b]..pointers[b + 1]), b itself excluded
+	public record BlockGraph(int[] pointers, int[] adjacency) { }
+
+	public BlockGraph getBlockGraph() {
+		int[] starts = getBlockStarts();
+		int blockCount = starts.length - 1;
+
+		int[] blockOf = new int[size];
+		for (int b = 0; b < blockCount; b++) {
+			for (int i = starts[b]; i < starts[b + 1]; i++) {
+				blockOf[i] = b;
+			}
+		}
+
+		// neighbouring blocks, each one listed once
+		int[] marker = new int[blockCount];
+		Arrays.fill(marker, -1);
+		int[] pointers = new int[blockCount + 1];
+		int[] adjacency = new int[16];
+		for (int b = 0; b < blockCount; b++) {
+			marker[b] = b;
+			int count = pointers[b];
+			for (int i = starts[b]; i < starts[b + 1]; i++) {
+				for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+					int c = blockOf[columnIndices[k]];
+					if (marker[c] != b) {
+						marker[c] = b;
+						if (count == adjacency.length) {
+							adjacency = Arrays.copyOf(adjacency, adjacency.length * 2);
+						}
+						adjacency[count++] = c;
+					}
+				}
+			}
+			pointers[b + 1] = count;
+		}
+		return new BlockGraph(pointers, adjacency);
+	}
+
+	@Override
+	public double[] getNodeBlocks() {
+		final int n = Node.DEGREES_OF_FREEDOM;
+		int[] starts = getBlockStarts();
+		int count = starts.length - 1;
+
+		double[] blocks = new double[count * n * n];
+		for (int b = 0; b < count; b++) {
+			int first = starts[b];
+			int last = starts[b + 1];
+			for (int row = first; row < last; row++) {
+				for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+					int col = columnIndices[k];
+					if (col >= first && col < last) {
+						blocks[b * n * n + (row - first) * n + (col - first)] = values[k];
+					}
+				}
+			}
+			for (int i = last - first; i < n; i++) {
+				blocks[b * n * n + i * n + i] = 1.0;
+			}
+		}
+		return blocks;
+	}
+
+	public Matrix toDense() {
+		Matrix result = new Matrix(size);
+		for (int row = 0; row < size; row++) {
+			for (int k = rowPointers[row]; k < rowPointers[row + 1]; k++) {
+				result.set(columnIndices[k], row, values[k]);
+			}
+		}
+		return result;
+	}
+
+	double get(int row, int col) {
+		int k = find(row, col);
+		return k < 0 ? 0.0 : values[k];
+	}
+
+	void set(int row, int col, double value) {
+		values[indexOf(row, col)] = value;
+	}
+
+	void add(int row, int col, double value) {
+		values[indexOf(row, col)] += value;
+	}
+
+	void setBlockStarts(int[] blockStarts) {
+		this.blockStarts = blockStarts;
+	}
+
+	@Override
+	public int getSize() {
+		return size;
+	}
+
+	int getNonZeroCount() {
+		return rowPointers[size];
+	}
+
+	int[] getRowPointers() {
+		return rowPointers;
+	}
+
+	int[] getColumnIndices() {
+		return columnIndices;
+	}
+
+	double[] getValues() {
+		return values;
+	}
+
+	private int indexOf(int row, int col) {
+		int k = find(row, col);
+		if (k < 0) {
+			throw new IllegalArgumentException("(" + row + ", " + col + ") is not part of the sparsity pattern");
+		}
+		return k;
+	}
+
+	private int find(int row, int col) {
+		int k = Arrays.binarySearch(columnIndices, rowPointers[row], rowPointers[row + 1], col);
+		return k < 0 ? -1 : k;
+	}
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 public class SpringElement extends Element {
 	private final int n1;
 	private final int n2;
@@ -6,7 +8,14 @@ public class SpringElement extends Element {
 	private final double G;
 	private final double T;
 
+	// mass per volume, 0 for a massless spring
+	private final double density;
+
 	public SpringElement(FESolver solver, int n1, int n2, double E, double G, double T) {
+		this(solver, n1, n2, E, G, T, 0.0);
+	}
+
+	public SpringElement(FESolver solver, int n1, int n2, double E, double G, double T, double density) {
 		super(solver);
 
 		this.n1 = n1;
@@ -15,6 +24,7 @@ public class SpringElement extends Element {
 		this.E = E;
 		this.G = G;
 		this.T = T;
+		this.density = density;
 	}
 
 	@Override
@@ -34,41 +44,169 @@ public class SpringElement extends Element {
 
 	@Override
 	public Matrix getTransformationMatrix() {
-		double phi = getAngle();
+		double L = getLength();
+		double c = (solver.getNodes().getX(n2) - solver.getNodes().getX(n1)) / L;
+		double s = (solver.getNodes().getY(n2) - solver.getNodes().getY(n1)) / L;
 		return new Matrix(2 * Node.DEGREES_OF_FREEDOM, new double[] {
-			Math.cos(phi), -Math.sin(phi), 0.0, 0.0, 0.0, 0.0,
-			Math.sin(phi), Math.cos(phi), 0.0, 0.0, 0.0, 0.0,
+			c, -s, 0.0, 0.0, 0.0, 0.0,
+			s, c, 0.0, 0.0, 0.0, 0.0,
 			0.0, 0.0, 1.0, 0.0, 0.0, 0.0,
-			0.0, 0.0, 0.0, Math.cos(phi), -Math.sin(phi), 0.0,
-			0.0, 0.0, 0.0, Math.sin(phi), Math.cos(phi), 0.0,
+			0.0, 0.0, 0.0, c, -s, 0.0,
+			0.0, 0.0, 0.0, s, c, 0.0,
 			0.0, 0.0, 0.0, 0.0, 0.0, 1.0
 		});
 	}
 
 	@Override
-	public int getGlobalIndex(int index) {
-		boolean isN1 = index < Node.DEGREES_OF_FREEDOM;
-		int variable = isN1 ? index : index - 3;
-		int node = isN1 ? n1 : n2;
-		return node*Node.DEGREES_OF_FREEDOM + variable;
+	public void getGlobalMatrix(double[] out, int offset) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
+		double L = Math.sqrt(dx*dx + dy*dy);
+
+		// no coupling between translation and rotation, unit rotational stiffness
+		writeGlobalMatrix(out, offset, dx / L, dy / L, E * L * T, G * L * T, 0.0, 1.0, 0.0);
+	}
+
+	private static final Property[] PROPERTIES = { Property.YOUNGS_MODULUS, Property.SHEAR_MODULUS, Property.THICKNESS };
+
+	@Override
+	public Property[] getProperties() {
+		return PROPERTIES;
+	}
+
+	@Override
+	public double getProperty(Property property) {
+		return switch (property) {
+			case YOUNGS_MODULUS -> E;
+			case SHEAR_MODULUS -> G;
+			case THICKNESS -> T;
+			default -> super.getProperty(property);
+		};
+	}
+
+	@Override
+	public Element withProperty(Property property, double value) {
+		return switch (property) {
+			case YOUNGS_MODULUS -> new SpringElement(solver, n1, n2, value, G, T, density);
+			case SHEAR_MODULUS -> new SpringElement(solver, n1, n2, E, value, T, density);
+			case THICKNESS -> new SpringElement(solver, n1, n2, E, G, value, density);
+			default -> super.withProperty(property, value);
+		};
+	}
+
+	// the rotational stiffness is fixed, so it never has a derivative
+	@Override
+	public void getGlobalMatrixDerivative(Property property, double[] out, int offset) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
+		double L = Math.sqrt(dx*dx + dy*dy);
+
+		switch (property) {
+			case YOUNGS_MODULUS -> writeGlobalMatrix(out, offset, dx / L, dy / L, L * T, 0.0, 0.0, 0.0, 0.0);
+			case SHEAR_MODULUS -> writeGlobalMatrix(out, offset, dx / L, dy / L, 0.0, L * T, 0.0, 0.0, 0.0);
+			case THICKNESS -> writeGlobalMatrix(out, offset, dx / L, dy / L, E * L, G * L, 0.0, 0.0, 0.0);
+			default -> super.getGlobalMatrixDerivative(property, out, offset);
+		}
+	}
+
+	/*
+	 * mass of density * L * T, like the stiffness, shared as for a bar with linear shape
+	 * functions in both directions, or lumped half onto each node. the rotations carry none.
+	 * the same in every direction, so nothing to rotate.
+	 */
+	@Override
+	public void getGlobalMassMatrix(double[] out, int offset, boolean lumped) {
+		double m = density * getLength() * T;
+		double diagonal = lumped ? 0.5 * m : m / 3.0;
+		double coupling = lumped ? 0.0 : m / 6.0;
+
+		int o = offset;
+		Arrays.fill(out, o, o + MATRIX_SIZE * MATRIX_SIZE, 0.0);
+		out[o] = out[o + 7] = out[o + 21] = out[o + 28] = diagonal;
+		out[o + 3] = out[o + 10] = out[o + 18] = out[o + 25] = coupling;
+	}
+
+	/*
+	 * the axial part follows the chord, the spring pulls along its current direction by
+	 * how much its length changed. the transverse part stays with the original direction,
+	 * as in the linear matrix, since a spring has no rotation of its own to follow.
+	 */
+	@Override
+	public void getInternalForce(double[] d, double[] force, double[] tangent) {
+		NodeStore nodes = solver.getNodes();
+
+		double dx0 = nodes.getX(n2) - nodes.getX(n1);
+		double dy0 = nodes.getY(n2) - nodes.getY(n1);
+		double L0 = Math.sqrt(dx0*dx0 + dy0*dy0);
+		double c0 = dx0 / L0;
+		double s0 = dy0 / L0;
+
+		double dx = dx0 + d[3] - d[0];
+		double dy = dy0 + d[4] - d[1];
+		double L = Math.sqrt(dx*dx + dy*dy);
+		double c = dx / L;
+		double s = dy / L;
+
+		double Kx = E * L0 * T;
+		double Ky = G * L0 * T;
+		double axial = Kx * (dx*dx + dy*dy - L0*L0) / (L + L0);
+		double shear = Ky * (-s0 * (d[3] - d[0]) + c0 * (d[4] - d[1]));
+
+		double fx = axial * c - shear * s0;
+		double fy = axial * s + shear * c0;
+		force[0] = -fx;
+		force[1] = -fy;
+		force[2] = d[2];
+		force[3] = fx;
+		force[4] = fy;
+		force[5] = d[5];
+
+		if (tangent == null) {
+			return;
+		}
+
+		// 2x2 block for the relative translation, the string term keeps a stretched spring stiff sideways
+		double string = axial / L;
+		double xx = Kx * c * c + string * (1.0 - c * c) + Ky * s0 * s0;
+		double yy = Kx * s * s + string * (1.0 - s * s) + Ky * c0 * c0;
+		double xy = (Kx - string) * c * s - Ky * s0 * c0;
+
+		Arrays.fill(tangent, 0, MATRIX_SIZE * MATRIX_SIZE, 0.0);
+		int[] translations = { 0, 1, 3, 4 };
+		double[] block = { xx, xy, xy, yy };
+		for (int a = 0; a < 4; a++) {
+			for (int b = 0; b < 4; b++) {
+				double sign = (a < 2) == (b < 2) ? 1.0 : -1.0;
+				tangent[translations[a] * MATRIX_SIZE + translations[b]] = sign * block[(a % 2) * 2 + (b % 2)];
+			}
+		}
+		tangent[2 * MATRIX_SIZE + 2] = 1.0;
+		tangent[5 * MATRIX_SIZE + 5] = 1.0;
+	}
+
+	@Override
+	public int getNode(int index) {
+		return index == 0 ? n1 : n2;
 	}
 
 	public double getLength() {
-		Node node1 = solver.getNode(n1);
-		Node node2 = solver.getNode(n2);
+		NodeStore nodes = solver.getNodes();
 
-		double dx = node2.getX() - node1.getX();
-		double dy = node2.getY() - node1.getY();
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
 
 		return Math.sqrt(dx*dx + dy*dy);
 	}
 
 	public double getAngle() {
-		Node node1 = solver.getNode(n1);
-		Node node2 = solver.getNode(n2);
+		NodeStore nodes = solver.getNodes();
 
-		double dx = node2.getX() - node1.getX();
-		double dy = node2.getY() - node1.getY();
+		double dx = nodes.getX(n2) - nodes.getX(n1);
+		double dy = nodes.getY(n2) - nodes.getY(n1);
 
 		return Math.atan2(dy, dx);
 	}
@@ -80,4 +218,20 @@ public class SpringElement extends Element {
 	public int getNode2() {
 		return this.n2;
 	}
+
+	public double getYoungsModulus() {
+		return this.E;
+	}
+
+	public double getShearModulus() {
+		return this.G;
+	}
+
+	public double getThickness() {
+		return this.T;
+	}
+
+	public double getDensity() {
+		return this.density;
+	}
 }
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+/*
+ * a group of nodes and elements that is used many times over, read from its own .fem file.
+ * the nodes listed under #Interface connect it to the rest of the model, the dofs of all
+ * other nodes are condensed out once, when the file is loaded:
+ *
+ *   S = K_bb - K_bi K_ii^-1 K_ib,   u_i = R u_b   with R = -K_ii^-1 K_ib
+ *
+ * K_ii is factorized sparse by the substructure's own solver, with the interface nodes
+ * fixed, and every column of R is one solve against it. all SuperElements placed from
+ * the substructure share S and R.
+ *
+ * the file may not have boundary conditions or forces in any load case, and may not place
+ * itself, directly or through other substructures. internal nodes are never loaded.
+ */
+public class Substructure {
+	private final String name;
+	private final FESolver model;
+
+	// node indices of the interface in the substructure's model, in #Interface order
+	private final int[] interfaceNodes;
+	private final int interfaceSize;
+
+	// node indices of everything else
+	private final int[] internalNodes;
+
+	// S, interfaceSize x interfaceSize row by row, in the substructure's coordinates
+	private final double[] condensed;
+
+	// R, one row per internal equation of the model, interfaceSize columns
+	private final double[] recovery;
+
+	public Substructure(String filename) throws IOException {
+		this(filename, Set.of());
+	}
+
+	// placing holds the files that place this one, see FESolver.loadFromFile
+	Substructure(String filename, Set<Path> placing) throws IOException {
+		this.name = filename;
+		this.model = new FESolver();
+		model.setLinearSolver(new SkylineSolver());
+		model.loadFromFile(filename, placing);
+
+		ArrayList<Integer> ids = model.getInterfaceNodes();
+		if (ids.isEmpty()) {
+			throw new IOException(filename + " has no #Interface nodes");
+		}
+		boolean loaded = false;
+		for (var loadCase : model.getLoadCases().values()) {
+			loaded |= !loadCase.getConditions().isEmpty();
+		}
+		if (!model.getBoundaryConditions().getConditions().isEmpty() || loaded) {
+			throw new IOException(filename + " is a substructure, it cannot have boundary conditions or forces");
+		}
+
+		this.interfaceNodes = new int[ids.size()];
+		int[] slots = new int[model.getNodes().size()];
+		Arrays.fill(slots, -1);
+		for (int i = 0; i < interfaceNodes.length; i++) {
+			interfaceNodes[i] = model.getNodeIndex(ids.get(i));
+			if (slots[interfaceNodes[i]] >= 0) {
+				throw new IOException(filename + " lists interface node " + ids.get(i) + " twice");
+			}
+			slots[interfaceNodes[i]] = i;
+		}
+		this.interfaceSize = interfaceNodes.length * Node.DEGREES_OF_FREEDOM;
+
+		this.internalNodes = new int[slots.length - interfaceNodes.length];
+		for (int node = 0, k = 0; node < slots.length; node++) {
+			if (slots[node] < 0) {
+				internalNodes[k++] = node;
+			}
+		}
+
+		// with the interface held, the free dofs are exactly the internal ones
+		BoundaryConditions held = new BoundaryConditions();
+		for (int id : ids) {
+			held.fix(id);
+		}
+		model.setBoundaryConditions(held);
+		model.buildMatrix();
+		model.factorize();
+
+		int internalSize = model.getEquationCount();
+		this.recovery = new double[internalSize * interfaceSize];
+		this.condensed = new double[interfaceSize * interfaceSize];
+
+		condense(slots, internalSize);
+	}
+
+	private void condense(int[] slots, int internalSize) {
+		ArrayList<Element> elements = model.getElements();
+		int maxSize = Element.getMaxDofCount(elements);
+		double[] globalMatrix = new double[maxSize * maxSize];
+		int[] equations = new int[maxSize];
+		int[] columns = new int[maxSize];
+
+		// -K_ib, one right hand side per interface dof
+		MyVector[] rhs = new MyVector[interfaceSize];
+		for (int c = 0; c < interfaceSize; c++) {
+			rhs[c] = new MyVector(internalSize);
+		}
+		for (var elem : elements) {
+			int n = mapElement(elem, slots, equations, columns);
+			elem.getGlobalMatrix(globalMatrix, 0);
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					if (equations[i] >= 0 && columns[j] >= 0) {
+						rhs[columns[j]].set(equations[i], rhs[columns[j]].get(equations[i]) - globalMatrix[i * n + j]);
+					}
+				}
+			}
+		}
+
+		MyVector[] solutions = internalSize > 0 ? model.getLinearSolver().solve(rhs) : rhs;
+		for (int c = 0; c < interfaceSize; c++) {
+			for (int k = 0; k < internalSize; k++) {
+				recovery[k * interfaceSize + c] = solutions[c].get(k);
+			}
+		}
+
+		// S = K_bb + K_bi R, the interface forces for a unit displacement of each interface dof
+		for (var elem : elements) {
+			int n = mapElement(elem, slots, equations, columns);
+			elem.getGlobalMatrix(globalMatrix, 0);
+			for (int i = 0; i < n; i++) {
+				int row = columns[i];
+				if (row < 0) {
+					continue;
+				}
+				for (int j = 0; j < n; j++) {
+					double k = globalMatrix[i * n + j];
+					if (columns[j] >= 0) {
+						condensed[row * interfaceSize + columns[j]] += k;
+					} else if (equations[j] >= 0) {
+						int offset = equations[j] * interfaceSize;
+						for (int c = 0; c < interfaceSize; c++) {
+							condensed[row * interfaceSize + c] += k * recovery[offset + c];
+						}
+					}
+				}
+			}
+		}
+
+		// symmetric in exact arithmetic, make it so in floating point too
+		for (int i = 0; i < interfaceSize; i++) {
+			for (int j = 0; j < i; j++) {
+				double mean = 0.5 * (condensed[i * interfaceSize + j] + condensed[j * interfaceSize + i]);
+				condensed[i * interfaceSize + j] = mean;
+				condensed[j * interfaceSize + i] = mean;
+			}
+		}
+	}
+
+	// internal equation (or -1) and interface dof (or -1) of every local dof of an element
+	private int mapElement(Element elem, int[] slots, int[] equations, int[] columns) {
+		int n = elem.getDofCount();
+		for (int i = 0; i < n; i++) {
+			int node = elem.getNode(i / Node.DEGREES_OF_FREEDOM);
+			int variable = i % Node.DEGREES_OF_FREEDOM;
+			equations[i] = model.getEquation(node, variable);
+			columns[i] = slots[node] >= 0 ? slots[node] * Node.DEGREES_OF_FREEDOM + variable : -1;
+		}
+		return n;
+	}
+
+	/*
+	 * displacements of the internal nodes, in the substructure's coordinates, for the given
+	 * interface displacements (interfaceSize values in #Interface order). the nodes keep
+	 * the ids of the substructure file.
+	 */
+	public ArrayList<Node> recover(double[] interfaceDisplacements) {
+		NodeStore nodes = model.getNodes();
+		ArrayList<Node> result = new ArrayList<>();
+		for (int node : internalNodes) {
+			double[] u = new double[Node.DEGREES_OF_FREEDOM];
+			for (int v = 0; v < Node.DEGREES_OF_FREEDOM; v++) {
+				int offset = model.getEquation(node, v) * interfaceSize;
+				for (int c = 0; c < interfaceSize; c++) {
+					u[v] += recovery[offset + c] * interfaceDisplacements[c];
+				}
+			}
+			result.add(new Node(nodes.getID(node), u[0], u[1], u[2]));
+		}
+		return result;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// the substructure's own nodes and elements, interface included
+	public NodeStore getNodes() {
+		return model.getNodes();
+	}
+
+	public ArrayList<Element> getElements() {
+		return model.getElements();
+	}
+
+	public int getInterfaceNodeCount() {
+		return interfaceNodes.length;
+	}
+
+	// index into getNodes() of the i-th interface node
+	public int getInterfaceNode(int i) {
+		return interfaceNodes[i];
+	}
+
+	public int getInternalNodeCount() {
+		return internalNodes.length;
+	}
+
+	// index into getNodes() of the i-th internal node, in the order recover returns them
+	public int getInternalNode(int i) {
+		return internalNodes[i];
+	}
+
+	public int getInternalEquationCount() {
+		return model.getEquationCount();
+	}
+
+	public double[] getCondensedMatrix() {
+		return condensed;
+	}
+}
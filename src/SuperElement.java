@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+
+/*
+ * one placement of a Substructure, connecting its interface to nodes of the model. the
+ * placement may be moved and rotated but not mirrored, the rotation follows from the
+ * positions of the nodes it is placed on. its matrix is the condensed stiffness of the
+ * substructure turned into the global frame, T S T^T.
+ */
+public class SuperElement extends Element {
+	private final Substructure substructure;
+	private final int[] nodes;
+
+	// rotation from the substructure's frame into the model's
+	private final double c;
+	private final double s;
+
+	private final double[] globalMatrix;
+
+	// how far the nodes may be off the substructure's shape, relative to its size
+	private static final double GEOMETRY_TOLERANCE = 1e-6;
+
+	// nodes holds the model's node indices for the interface nodes, in #Interface order
+	public SuperElement(FESolver solver, Substructure substructure, int[] nodes) {
+		super(solver);
+
+		if (nodes.length != substructure.getInterfaceNodeCount()) {
+			throw new IllegalArgumentException(substructure.getName() + " has " + substructure.getInterfaceNodeCount() + " interface nodes, got " + nodes.length);
+		}
+
+		this.substructure = substructure;
+		this.nodes = nodes;
+
+		// the first two interface nodes fix the rotation, the others have to agree with it
+		double angle = 0.0;
+		if (nodes.length > 1) {
+			angle = Math.atan2(getGlobalY(1) - getGlobalY(0), getGlobalX(1) - getGlobalX(0))
+				- Math.atan2(getLocalY(1) - getLocalY(0), getLocalX(1) - getLocalX(0));
+		}
+		this.c = Math.cos(angle);
+		this.s = Math.sin(angle);
+
+		double size = 0.0;
+		double mismatch = 0.0;
+		for (int i = 1; i < nodes.length; i++) {
+			double dx = getLocalX(i) - getLocalX(0);
+			double dy = getLocalY(i) - getLocalY(0);
+			size = Math.max(size, Math.hypot(dx, dy));
+			mismatch = Math.max(mismatch, Math.hypot(
+				getGlobalX(0) + c * dx - s * dy - getGlobalX(i),
+				getGlobalY(0) + s * dx + c * dy - getGlobalY(i)
+			));
+		}
+		if (mismatch > GEOMETRY_TOLERANCE * size) {
+			throw new IllegalArgumentException("nodes do not match the shape of " + substructure.getName());
+		}
+
+		this.globalMatrix = rotate(substructure.getCondensedMatrix());
+	}
+
+	// T S T^T, T being the rotation repeated along the diagonal for every node
+	private double[] rotate(double[] local) {
+		final int n = getDofCount();
+		final int dof = Node.DEGREES_OF_FREEDOM;
+		double[] half = new double[n * n];
+		double[] result = new double[n * n];
+
+		// T S, rows of a node mix its x and y rows
+		for (int i = 0; i < n; i += dof) {
+			for (int j = 0; j < n; j++) {
+				half[i * n + j] = c * local[i * n + j] - s * local[(i + 1) * n + j];
+				half[(i + 1) * n + j] = s * local[i * n + j] + c * local[(i + 1) * n + j];
+				half[(i + 2) * n + j] = local[(i + 2) * n + j];
+			}
+		}
+
+		// (T S) T^T, the same on the columns
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j += dof) {
+				result[i * n + j] = c * half[i * n + j] - s * half[i * n + j + 1];
+				result[i * n + j + 1] = s * half[i * n + j] + c * half[i * n + j + 1];
+				result[i * n + j + 2] = half[i * n + j + 2];
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Matrix getLocalMatrix() {
+		return new Matrix(getDofCount(), substructure.getCondensedMatrix().clone());
+	}
+
+	@Override
+	public Matrix getTransformationMatrix() {
+		final int n = getDofCount();
+		double[] data = new double[n * n];
+		for (int i = 0; i < n; i += Node.DEGREES_OF_FREEDOM) {
+			data[i * n + i] = c;
+			data[i * n + i + 1] = -s;
+			data[(i + 1) * n + i] = s;
+			data[(i + 1) * n + i + 1] = c;
+			data[(i + 2) * n + i + 2] = 1.0;
+		}
+		return new Matrix(n, data);
+	}
+
+	@Override
+	public void getGlobalMatrix(double[] out, int offset) {
+		System.arraycopy(globalMatrix, 0, out, offset, globalMatrix.length);
+	}
+
+	@Override
+	public int getNode(int index) {
+		return nodes[index];
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	/*
+	 * displacements of the substructure's internal nodes from those of the model, as
+	 * returned by solveDisplacements. the nodes keep the ids of the substructure file.
+	 */
+	public ArrayList<Node> recoverInternal(ArrayList<Node> displacements) {
+		// into the substructure's frame
+		double[] local = new double[getDofCount()];
+		for (int i = 0; i < nodes.length; i++) {
+			Node d = displacements.get(nodes[i]);
+			local[i * Node.DEGREES_OF_FREEDOM] = c * d.getX() + s * d.getY();
+			local[i * Node.DEGREES_OF_FREEDOM + 1] = -s * d.getX() + c * d.getY();
+			local[i * Node.DEGREES_OF_FREEDOM + 2] = d.getTheta();
+		}
+
+		// and the result back out of it
+		ArrayList<Node> result = substructure.recover(local);
+		for (Node d : result) {
+			double x = d.getX();
+			double y = d.getY();
+			d.setX(c * x - s * y);
+			d.setY(s * x + c * y);
+		}
+		return result;
+	}
+
+	// where the internal nodes of this placement are, in the same order as recoverInternal
+	public ArrayList<Node> getInternalPositions() {
+		NodeStore local = substructure.getNodes();
+		ArrayList<Node> result = new ArrayList<>();
+		for (int i = 0; i < substructure.getInternalNodeCount(); i++) {
+			int index = substructure.getInternalNode(i);
+			double dx = local.getX(index) - getLocalX(0);
+			double dy = local.getY(index) - getLocalY(0);
+			result.add(new Node(local.getID(index), getGlobalX(0) + c * dx - s * dy, getGlobalY(0) + s * dx + c * dy, 0.0));
+		}
+		return result;
+	}
+
+	private double getLocalX(int i) {
+		return substructure.getNodes().getX(substructure.getInterfaceNode(i));
+	}
+
+	private double getLocalY(int i) {
+		return substructure.getNodes().getY(substructure.getInterfaceNode(i));
+	}
+
+	private double getGlobalX(int i) {
+		return solver.getNodes().getX(nodes[i]);
+	}
+
+	private double getGlobalY(int i) {
+		return solver.getNodes().getY(nodes[i]);
+	}
+
+	public Substructure getSubstructure() {
+		return substructure;
+	}
+
+	public double getAngle() {
+		return Math.atan2(s, c);
+	}
+}
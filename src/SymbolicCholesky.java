@@ -0,0 +1,393 @@
+import java.util.Arrays;
+
+/*
+ * the structural half of a sparse cholesky factorization: fill-reducing ordering,
+ * elimination tree and the supernodes of L with their row patterns. it only depends on
+ * the sparsity pattern, so it is computed once and reused for every matrix with the same
+ * pattern, e.g. each refactorization after the element values changed.
+ *
+ * a supernode is a run of consecutive columns of L, each the parent of the one before in
+ * the elimination tree, stored as one dense block with the rows of its last column
+ * (a few of them may be zero for the earlier columns). supernode s covers columns
+ * [supernodeStart[s], supernodeStart[s + 1]), its rows below those columns are
+ * rowIndices[rowPointers[s]..rowPointers[s + 1]), in increasing order.
+ *
+ * the last equations of the matrix may be retained: they are ordered last, in their own
+ * order, and form the final supernode on their own, which the factorization leaves as the
+ * schur complement instead of eliminating it.
+ */
+public class SymbolicCholesky {
+	private final int size;
+	private final int retained;
+
+	// pattern this was computed for
+	private final int[] matrixRowPointers;
+	private final int[] matrixColumnIndices;
+
+	// permutation[new] = old, inverse[old] = new
+	private final int[] permutation;
+	private final int[] inverse;
+
+	private final int supernodeCount;
+	private final int[] supernodeStart;
+	private final int[] supernodeOf;
+	private final int[] rowPointers;
+	private final int[] rowIndices;
+
+	// supernode tree, -1 for roots, children of s are children[childPointers[s]..childPointers[s + 1])
+	private final int[] supernodeParent;
+	private final int[] childPointers;
+	private final int[] children;
+
+	// supernodes k < s with rows inside s, and where those rows start and end in k's row list
+	private final int[] updatePointers;
+	private final int[] updateSupernodes;
+	private final int[] updateOffsets;
+	private final int[] updateEnds;
+
+	private final long factorNonZeros;
+
+	public SymbolicCholesky(SparseMatrix matrix) {
+		this(matrix, 0);
+	}
+
+	// the last retained equations have to start a node block
+	public SymbolicCholesky(SparseMatrix matrix, int retained) {
+		this.size = matrix.getSize();
+		this.retained = retained;
+		this.matrixRowPointers = matrix.getRowPointers();
+		this.matrixColumnIndices = matrix.getColumnIndices();
+
+		this.inverse = orderByNodes(matrix, size - retained);
+		this.permutation = new int[size];
+		for (int i = 0; i < size; i++) {
+			permutation[inverse[i]] = i;
+		}
+
+		int[] parent = eliminationTree();
+		int[] columnCounts = columnCounts(parent);
+
+		// a column joins the supernode of the previous one if it is that column's parent,
+		// so the supernode is a chain and its rows below are those of its last column. the
+		// earlier columns may have fewer, their gaps are stored as zeros as long as the
+		// share of them stays small. wider blocks make for longer inner loops.
+		this.supernodeOf = new int[size];
+		int[] starts = new int[size + 1];
+		int count = 0;
+		long actual = 0;
+		for (int j = 0; j < size; j++) {
+			boolean merge = false;
+			if (j > size - retained) {
+				merge = true;
+			} else if (j > 0 && j < size - retained && parent[j - 1] == j) {
+				int width = j - starts[count - 1] + 1;
+				long mergedStored = (long) width * (width + 1) / 2 + (long) width * (columnCounts[j] - 1);
+				long mergedActual = actual + columnCounts[j];
+				merge = columnCounts[j - 1] == columnCounts[j] + 1 || allowsZeros(width, mergedStored - mergedActual, mergedStored);
+			}
+			if (!merge) {
+				starts[count++] = j;
+				actual = 0;
+			}
+			actual += columnCounts[j];
+			supernodeOf[j] = count - 1;
+		}
+		starts[count] = size;
+		this.supernodeCount = count;
+		this.supernodeStart = Arrays.copyOf(starts, count + 1);
+
+		// rows below each supernode, those of its last column
+		this.rowPointers = new int[count + 1];
+		for (int s = 0; s < count; s++) {
+			rowPointers[s + 1] = rowPointers[s] + columnCounts[supernodeStart[s + 1] - 1] - 1;
+		}
+		this.rowIndices = new int[rowPointers[count]];
+		fillRowIndices(parent);
+
+		long nonZeros = 0;
+		this.supernodeParent = new int[count];
+		for (int s = 0; s < count; s++) {
+			int width = supernodeStart[s + 1] - supernodeStart[s];
+			int rows = rowPointers[s + 1] - rowPointers[s];
+			nonZeros += (long) width * (width + 1) / 2 + (long) width * rows;
+
+			int last = parent[supernodeStart[s + 1] - 1];
+			supernodeParent[s] = last < 0 ? -1 : supernodeOf[last];
+		}
+		this.factorNonZeros = nonZeros;
+
+		this.childPointers = new int[count + 1];
+		for (int s = 0; s < count; s++) {
+			if (supernodeParent[s] >= 0) {
+				childPointers[supernodeParent[s] + 1]++;
+			}
+		}
+		for (int s = 0; s < count; s++) {
+			childPointers[s + 1] += childPointers[s];
+		}
+		this.children = new int[childPointers[count]];
+		int[] next = Arrays.copyOf(childPointers, count);
+		for (int s = 0; s < count; s++) {
+			if (supernodeParent[s] >= 0) {
+				children[next[supernodeParent[s]]++] = s;
+			}
+		}
+
+		// every supernode updates the supernodes its rows fall into, once each
+		this.updatePointers = new int[count + 1];
+		for (int k = 0; k < count; k++) {
+			int previous = -1;
+			for (int p = rowPointers[k]; p < rowPointers[k + 1]; p++) {
+				int s = supernodeOf[rowIndices[p]];
+				if (s != previous) {
+					updatePointers[s + 1]++;
+					previous = s;
+				}
+			}
+		}
+		for (int s = 0; s < count; s++) {
+			updatePointers[s + 1] += updatePointers[s];
+		}
+		this.updateSupernodes = new int[updatePointers[count]];
+		this.updateOffsets = new int[updatePointers[count]];
+		this.updateEnds = new int[updatePointers[count]];
+		next = Arrays.copyOf(updatePointers, count);
+		for (int k = 0; k < count; k++) {
+			int previous = -1;
+			for (int p = rowPointers[k]; p < rowPointers[k + 1]; p++) {
+				int s = supernodeOf[rowIndices[p]];
+				if (s != previous) {
+					updateSupernodes[next[s]] = k;
+					updateOffsets[next[s]++] = p - rowPointers[k];
+					previous = s;
+				}
+				// the rows are sorted, so those inside s are one run
+				updateEnds[next[s] - 1] = p - rowPointers[k] + 1;
+			}
+		}
+	}
+
+	// how many explicit zeros a supernode of the given width may carry, tighter as it grows
+	private static boolean allowsZeros(int width, long zeros, long stored) {
+		if (width <= 4) {
+			return true;
+		}
+		if (width <= 16) {
+			return zeros <= 0.8 * stored;
+		}
+		if (width <= 48) {
+			return zeros <= 0.1 * stored;
+		}
+		return zeros <= 0.05 * stored;
+	}
+
+	/*
+	 * nested dissection of the node graph, the equations of a node stay together so every
+	 * node ends up in one supernode. the equations from eliminated on keep their place at
+	 * the end. returns the new position of every equation.
+	 */
+	private static int[] orderByNodes(SparseMatrix matrix, int eliminated) {
+		int size = matrix.getSize();
+		int[] blockStarts = matrix.getBlockStarts();
+		int blockCount = 0;
+		while (blockCount < blockStarts.length - 1 && blockStarts[blockCount] < eliminated) {
+			blockCount++;
+		}
+		if (blockStarts[blockCount] != eliminated) {
+			throw new IllegalArgumentException("retained equations do not start a node block");
+		}
+
+		// the graph without the retained blocks
+		SparseMatrix.BlockGraph graph = matrix.getBlockGraph();
+		int[] pointers = new int[blockCount + 1];
+		int[] adjacency = new int[graph.pointers()[blockCount]];
+		for (int b = 0; b < blockCount; b++) {
+			int count = pointers[b];
+			for (int k = graph.pointers()[b]; k < graph.pointers()[b + 1]; k++) {
+				if (graph.adjacency()[k] < blockCount) {
+					adjacency[count++] = graph.adjacency()[k];
+				}
+			}
+			pointers[b + 1] = count;
+		}
+
+		int[] blockPosition = Reordering.nestedDissection(blockCount, pointers, adjacency);
+
+		int[] order = new int[blockCount];
+		for (int b = 0; b < blockCount; b++) {
+			order[blockPosition[b]] = b;
+		}
+		int[] position = new int[size];
+		int next = 0;
+		for (int b : order) {
+			for (int i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+				position[i] = next++;
+			}
+		}
+		for (int i = eliminated; i < size; i++) {
+			position[i] = i;
+		}
+		return position;
+	}
+
+	// liu's algorithm with path compression on the permuted lower triangle
+	private int[] eliminationTree() {
+		int[] parent = new int[size];
+		int[] ancestor = new int[size];
+
+		for (int k = 0; k < size; k++) {
+			parent[k] = -1;
+			ancestor[k] = -1;
+
+			int row = permutation[k];
+			for (int p = matrixRowPointers[row]; p < matrixRowPointers[row + 1]; p++) {
+				int i = inverse[matrixColumnIndices[p]];
+				while (i >= 0 && i < k) {
+					int next = ancestor[i];
+					ancestor[i] = k;
+					if (next < 0) {
+						parent[i] = k;
+					}
+					i = next;
+				}
+			}
+		}
+		return parent;
+	}
+
+	// entries of every column of L, diagonal included, by walking the row subtrees
+	private int[] columnCounts(int[] parent) {
+		int[] counts = new int[size];
+		int[] mark = new int[size];
+		Arrays.fill(mark, -1);
+
+		for (int k = 0; k < size; k++) {
+			counts[k]++;
+			mark[k] = k;
+
+			int row = permutation[k];
+			for (int p = matrixRowPointers[row]; p < matrixRowPointers[row + 1]; p++) {
+				for (int j = inverse[matrixColumnIndices[p]]; j < k && mark[j] != k; j = parent[j]) {
+					mark[j] = k;
+					counts[j]++;
+				}
+			}
+		}
+		return counts;
+	}
+
+	// the same walk again, row k is added to every supernode it reaches below its columns
+	private void fillRowIndices(int[] parent) {
+		int[] next = Arrays.copyOf(rowPointers, supernodeCount);
+		int[] mark = new int[size];
+		int[] lastRow = new int[supernodeCount];
+		Arrays.fill(mark, -1);
+		Arrays.fill(lastRow, -1);
+
+		for (int k = 0; k < size; k++) {
+			mark[k] = k;
+			int own = supernodeOf[k];
+
+			int row = permutation[k];
+			for (int p = matrixRowPointers[row]; p < matrixRowPointers[row + 1]; p++) {
+				for (int j = inverse[matrixColumnIndices[p]]; j < k && mark[j] != k; j = parent[j]) {
+					mark[j] = k;
+					int s = supernodeOf[j];
+					if (s != own && lastRow[s] != k) {
+						lastRow[s] = k;
+						rowIndices[next[s]++] = k;
+					}
+				}
+			}
+		}
+	}
+
+	// true if the matrix has exactly the pattern this was computed for
+	public boolean matches(SparseMatrix matrix, int retained) {
+		if (matrix.getSize() != size || retained != this.retained) {
+			return false;
+		}
+		if (matrix.getRowPointers() == matrixRowPointers && matrix.getColumnIndices() == matrixColumnIndices) {
+			return true;
+		}
+		return Arrays.equals(matrix.getRowPointers(), matrixRowPointers)
+			&& Arrays.equals(matrix.getColumnIndices(), 0, matrixRowPointers[size], matrixColumnIndices, 0, matrixRowPointers[size]);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getRetained() {
+		return retained;
+	}
+
+	public int[] getPermutation() {
+		return permutation;
+	}
+
+	public int[] getInverse() {
+		return inverse;
+	}
+
+	public int getSupernodeCount() {
+		return supernodeCount;
+	}
+
+	public int[] getSupernodeStart() {
+		return supernodeStart;
+	}
+
+	public int[] getRowPointers() {
+		return rowPointers;
+	}
+
+	public int[] getRowIndices() {
+		return rowIndices;
+	}
+
+	public int[] getSupernodeParent() {
+		return supernodeParent;
+	}
+
+	public int[] getChildPointers() {
+		return childPointers;
+	}
+
+	public int[] getChildren() {
+		return children;
+	}
+
+	public int[] getUpdatePointers() {
+		return updatePointers;
+	}
+
+	public int[] getUpdateSupernodes() {
+		return updateSupernodes;
+	}
+
+	public int[] getUpdateOffsets() {
+		return updateOffsets;
+	}
+
+	public int[] getUpdateEnds() {
+		return updateEnds;
+	}
+
+	// block row of equation i (permuted) in supernode s
+	public int position(int s, int i) {
+		int first = supernodeStart[s];
+		int width = supernodeStart[s + 1] - first;
+		if (i < first + width) {
+			return i - first;
+		}
+
+		int p = Arrays.binarySearch(rowIndices, rowPointers[s], rowPointers[s + 1], i);
+		return width + p - rowPointers[s];
+	}
+
+	// entries of L stored, diagonal and padding included
+	public long getFactorNonZeros() {
+		return factorNonZeros;
+	}
+}
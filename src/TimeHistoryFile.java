@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+ * displacements over time, written frame by frame so a long run never holds more than
+ * one frame and a chunk of output in memory. plain little endian, so a frame can be read
+ * back by seeking to it:
+ *
+ *   int magic, int version, int node count, int frame count
+ *   int node ids[node count]
+ *   per frame: double time, double x, y, theta of every node
+ *
+ * the frame count is filled in on close, a file that was never closed has a count of -1.
+ */
+public class TimeHistoryFile implements AutoCloseable {
+	private static final int MAGIC = 0x544D4546; // "FEMT"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 * 4;
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int nodeCount;
+	private int frameCount;
+
+	public TimeHistoryFile(Path path, int[] nodeIDs) throws IOException {
+		this.nodeCount = nodeIDs.length;
+		this.frameCount = 0;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		this.buffer = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, getFrameSize(nodeCount))).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(nodeCount);
+		buffer.putInt(-1);
+		for (int id : nodeIDs) {
+			if (buffer.remaining() < 4) {
+				flush();
+			}
+			buffer.putInt(id);
+		}
+	}
+
+	private static int getFrameSize(int nodeCount) {
+		return 8 + 8 * Node.DEGREES_OF_FREEDOM * nodeCount;
+	}
+
+	// x, y and theta of every node, in the order of the ids
+	public void write(double time, double[] displacements) throws IOException {
+		if (buffer.remaining() < getFrameSize(nodeCount)) {
+			flush();
+		}
+		buffer.putDouble(time);
+		buffer.asDoubleBuffer().put(displacements, 0, Node.DEGREES_OF_FREEDOM * nodeCount);
+		buffer.position(buffer.position() + 8 * Node.DEGREES_OF_FREEDOM * nodeCount);
+		frameCount++;
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(frameCount).flip();
+			channel.write(count, 12);
+		} finally {
+			channel.close();
+		}
+	}
+
+	// number of frames in a finished file
+	public static int readFrameCount(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return readHeader(channel, path).getInt(12);
+		}
+	}
+
+	public static double readTime(Path path, int frame) throws IOException {
+		return readFrameBuffer(path, frame).getDouble(0);
+	}
+
+	// the displacements of one frame
+	public static ArrayList<Node> readFrame(Path path, int frame) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = readHeader(channel, path);
+			int nodes = header.getInt(8);
+			int[] ids = new int[nodes];
+			ByteBuffer idBuffer = readFully(channel, HEADER_SIZE, 4L * nodes, path);
+			idBuffer.asIntBuffer().get(ids);
+
+			ByteBuffer values = readFrameBuffer(channel, path, header, frame);
+			ArrayList<Node> result = new ArrayList<>(nodes);
+			for (int i = 0; i < nodes; i++) {
+				int offset = 8 + 8 * Node.DEGREES_OF_FREEDOM * i;
+				result.add(new Node(ids[i], values.getDouble(offset), values.getDouble(offset + 8), values.getDouble(offset + 16)));
+			}
+			return result;
+		}
+	}
+
+	private static ByteBuffer readFrameBuffer(Path path, int frame) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return readFrameBuffer(channel, path, readHeader(channel, path), frame);
+		}
+	}
+
+	private static ByteBuffer readFrameBuffer(FileChannel channel, Path path, ByteBuffer header, int frame) throws IOException {
+		int nodes = header.getInt(8);
+		int frames = header.getInt(12);
+		if (frame < 0 || frame >= frames) {
+			throw new IllegalArgumentException("frame " + frame + " is not in " + path + ", it has " + frames);
+		}
+		long position = HEADER_SIZE + 4L * nodes + (long) frame * getFrameSize(nodes);
+		return readFully(channel, position, getFrameSize(nodes), path);
+	}
+
+	private static ByteBuffer readHeader(FileChannel channel, Path path) throws IOException {
+		ByteBuffer header = readFully(channel, 0, HEADER_SIZE, path);
+		if (header.getInt(0) != MAGIC) {
+			throw new IOException(path + " is not a time history");
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException(path + " has time history version " + header.getInt(4) + ", expected " + VERSION);
+		}
+		if (header.getInt(12) < 0) {
+			throw new IOException(path + " was not closed properly");
+		}
+		return header;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, long length, Path path) throws IOException {
+		ByteBuffer result = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		while (result.hasRemaining()) {
+			if (channel.read(result, position + result.position()) < 0) {
+				throw new IOException(path + " is truncated");
+			}
+		}
+		return result.flip();
+	}
+}
@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/*
+ * time history of the model under loads that change over time, M a + C v + K u = F(t),
+ * with the hht alpha method, plain newmark average acceleration when alpha is 0. the
+ * model's #TimeStep gives dt, the number of steps and alpha, #Damping the rayleigh
+ * damping C = a M + b K, and every load case is scaled by its #Amplitude, piecewise linear
+ * in time, or applied in full from the start if it has none.
+ *
+ * with a fixed step the effective stiffness
+ *
+ *   K_eff = (1 / (beta dt^2)) M + (1 + alpha) (C gamma / (beta dt) + K)
+ *
+ * never changes, so it is factorized once and every step costs two matrix vector products
+ * and a back substitution. the run starts at rest, prescribed dofs stay at their values.
+ * frames go straight to a TimeHistoryFile, so memory does not grow with the step count.
+ *
+ * usage: [-lumped] [-every N] [-out file] model.fem
+ * writes <model>.fth unless -out is given.
+ */
+public class TransientAnalysis {
+	public record TimeStepping(double timeStep, int stepCount, double alpha) { }
+
+	// constant before the first point and after the last
+	public record Amplitude(double[] times, double[] factors) {
+		public double valueAt(double time) {
+			if (time <= times[0]) {
+				return factors[0];
+			}
+			int last = times.length - 1;
+			if (time >= times[last]) {
+				return factors[last];
+			}
+
+			int low = 0;
+			int high = last;
+			while (high - low > 1) {
+				int middle = (low + high) >>> 1;
+				if (times[middle] <= time) {
+					low = middle;
+				} else {
+					high = middle;
+				}
+			}
+			double t = (time - times[low]) / (times[high] - times[low]);
+			return factors[low] + t * (factors[high] - factors[low]);
+		}
+	}
+
+	private final FESolver solver;
+
+	// factorizes the effective stiffness, separate from the model's solver so its factorization of K stays
+	private final LinearSolver effectiveSolver;
+
+	private boolean lumped;
+
+	// every how many steps a frame is written
+	private int outputInterval;
+
+	// largest translation of any node during the last run, and when
+	private double peakDisplacement;
+	private double peakTime;
+	private int frameCount;
+
+	public TransientAnalysis(FESolver solver) {
+		this(solver, new SparseCholeskySolver());
+	}
+
+	public TransientAnalysis(FESolver solver, LinearSolver effectiveSolver) {
+		this.solver = solver;
+		this.effectiveSolver = effectiveSolver;
+		this.lumped = false;
+		this.outputInterval = 1;
+	}
+
+	// steps through the model's time stepping and writes the frames, the first one at time 0. the model has to be assembled
+	public void run(Path output) throws IOException {
+		TimeStepping stepping = solver.getTimeStepping();
+		if (stepping == null) {
+			throw new IllegalStateException("the model has no #TimeStep");
+		}
+		SparseMatrix stiffnessMatrix = solver.getStiffnessMatrix();
+		if (stiffnessMatrix == null) {
+			throw new IllegalStateException("transient analysis needs an assembled stiffness matrix");
+		}
+
+		SparseMatrix massMatrix = solver.assembleMassMatrix(lumped);
+		int n = stiffnessMatrix.getSize();
+		int nodeCount = solver.getNodes().size();
+
+		double dt = stepping.timeStep();
+		double alpha = stepping.alpha();
+		double beta = 0.25 * (1.0 - alpha) * (1.0 - alpha);
+		double gamma = 0.5 - alpha;
+		double cm = solver.getMassDamping();
+		double ck = solver.getStiffnessDamping();
+
+		// a_{n+1} = a0 (u_{n+1} - u_n) - a2 v_n - a3 a_n and v_{n+1} = a1 (u_{n+1} - u_n) + v1 v_n + v2 a_n
+		double a0 = 1.0 / (beta * dt * dt);
+		double a1 = gamma / (beta * dt);
+		double a2 = 1.0 / (beta * dt);
+		double a3 = 0.5 / beta - 1.0;
+		double v1 = 1.0 - gamma / beta;
+		double v2 = dt * (1.0 - 0.5 * gamma / beta);
+
+		double massFactor = a0 + (1.0 + alpha) * a1 * cm;
+		double stiffnessFactor = (1.0 + alpha) * (1.0 + a1 * ck);
+		double[] k = stiffnessMatrix.getValues();
+		double[] m = massMatrix.getValues();
+		double[] values = new double[k.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = massFactor * m[i] + stiffnessFactor * k[i];
+		}
+		SparseMatrix effective = new SparseMatrix(n, stiffnessMatrix.getRowPointers(), stiffnessMatrix.getColumnIndices(), values);
+		effective.setBlockStarts(stiffnessMatrix.getBlockStarts());
+		effectiveSolver.factorize(effective);
+
+		// F(t) = prescribed + sum of amplitude * load case
+		double[] prescribed = solver.buildForceVector(new BoundaryConditions()).getData();
+		LinkedHashMap<String, BoundaryConditions> loadCases = solver.getLoadCases();
+		double[][] caseLoads = new double[loadCases.size()][];
+		Amplitude[] caseAmplitudes = new Amplitude[loadCases.size()];
+		int c = 0;
+		for (var loadCase : loadCases.entrySet()) {
+			caseLoads[c] = solver.buildForceVector(loadCase.getValue()).getData();
+			for (int i = 0; i < n; i++) {
+				caseLoads[c][i] -= prescribed[i];
+			}
+			caseAmplitudes[c] = solver.getAmplitudes().get(loadCase.getKey());
+			c++;
+		}
+
+		double[] u = new double[n];
+		double[] v = new double[n];
+		double[] loadNow = load(prescribed, caseLoads, caseAmplitudes, 0.0, n);
+		double[] a = initialAcceleration(massMatrix, loadNow);
+		double[] carried = new double[n];
+		double[] massSide = new double[n];
+		double[] stiffnessSide = new double[n];
+		double[] product = new double[n];
+		MyVector rhs = new MyVector(n);
+		double[] frame = new double[Node.DEGREES_OF_FREEDOM * nodeCount];
+
+		peakDisplacement = 0.0;
+		peakTime = 0.0;
+		try (TimeHistoryFile out = new TimeHistoryFile(output, Arrays.copyOf(solver.getNodes().getIDs(), nodeCount))) {
+			writeFrame(out, 0.0, u, frame);
+
+			for (int step = 1; step <= stepping.stepCount(); step++) {
+				double time = step * dt;
+				double[] loadNext = load(prescribed, caseLoads, caseAmplitudes, time, n);
+
+				for (int i = 0; i < n; i++) {
+					carried[i] = v1 * v[i] + v2 * a[i];
+					double damped = (1.0 + alpha) * (a1 * u[i] - carried[i]) + alpha * v[i];
+					massSide[i] = a0 * u[i] + a2 * v[i] + a3 * a[i] + cm * damped;
+					stiffnessSide[i] = alpha * u[i] + ck * damped;
+				}
+
+				massMatrix.multiply(massSide, product);
+				for (int i = 0; i < n; i++) {
+					rhs.set(i, (1.0 + alpha) * loadNext[i] - alpha * loadNow[i] + product[i]);
+				}
+				stiffnessMatrix.multiply(stiffnessSide, product);
+				for (int i = 0; i < n; i++) {
+					rhs.set(i, rhs.get(i) + product[i]);
+				}
+
+				MyVector next = effectiveSolver.solve(rhs);
+				for (int i = 0; i < n; i++) {
+					double du = next.get(i) - u[i];
+					double an = a0 * du - a2 * v[i] - a3 * a[i];
+					v[i] = a1 * du + carried[i];
+					a[i] = an;
+					u[i] = next.get(i);
+				}
+				loadNow = loadNext;
+
+				if (step % outputInterval == 0 || step == stepping.stepCount()) {
+					writeFrame(out, time, u, frame);
+				} else {
+					trackPeak(time, u, frame);
+				}
+			}
+			frameCount = out.getFrameCount();
+		}
+	}
+
+	// M a = F(0) at rest, nothing to solve when there is no load yet
+	private static double[] initialAcceleration(SparseMatrix massMatrix, double[] load) {
+		boolean loaded = false;
+		for (double value : load) {
+			loaded |= value != 0.0;
+		}
+		if (!loaded) {
+			return new double[load.length];
+		}
+
+		SkylineSolver skyline = new SkylineSolver();
+		try {
+			skyline.factorize(massMatrix);
+		} catch (ArithmeticException e) {
+			throw new IllegalStateException("loads at time 0 need mass on every free dof, start the amplitudes at zero", e);
+		}
+		MyVector rhs = new MyVector(load.length);
+		for (int i = 0; i < load.length; i++) {
+			rhs.set(i, load[i]);
+		}
+		return skyline.solve(rhs).getData();
+	}
+
+	private static double[] load(double[] prescribed, double[][] caseLoads, Amplitude[] caseAmplitudes, double time, int n) {
+		double[] result = prescribed.clone();
+		for (int c = 0; c < caseLoads.length; c++) {
+			double factor = caseAmplitudes[c] != null ? caseAmplitudes[c].valueAt(time) : 1.0;
+			if (factor == 0.0) {
+				continue;
+			}
+			for (int i = 0; i < n; i++) {
+				result[i] += factor * caseLoads[c][i];
+			}
+		}
+		return result;
+	}
+
+	private void writeFrame(TimeHistoryFile out, double time, double[] u, double[] frame) throws IOException {
+		trackPeak(time, u, frame);
+		out.write(time, frame);
+	}
+
+	// expands u into frame as a side effect
+	private void trackPeak(double time, double[] u, double[] frame) {
+		solver.expandDisplacements(u, frame);
+		for (int i = 0; i < frame.length; i += Node.DEGREES_OF_FREEDOM) {
+			double translation = Math.hypot(frame[i + Node.VAR_X], frame[i + Node.VAR_Y]);
+			if (translation > peakDisplacement) {
+				peakDisplacement = translation;
+				peakTime = time;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		boolean lumped = false;
+		int every = 1;
+		String output = null;
+		String model = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-lumped" -> lumped = true;
+				case "-every" -> every = Integer.parseInt(args[++i]);
+				case "-out" -> output = args[++i];
+				default -> model = args[i];
+			}
+		}
+		if (model == null) {
+			System.err.println("usage: --transient [-lumped] [-every N] [-out file] model.fem");
+			return;
+		}
+		if (output == null) {
+			output = (model.endsWith(".fem") ? model.substring(0, model.length() - 4) : model) + ".fth";
+		}
+
+		FESolver solver = new FESolver();
+		solver.setLinearSolver(new SparseCholeskySolver());
+		solver.loadFromFile(model);
+		solver.buildMatrix();
+
+		TransientAnalysis analysis = new TransientAnalysis(solver);
+		analysis.setLumped(lumped);
+		analysis.setOutputInterval(every);
+
+		long start = System.nanoTime();
+		analysis.run(Path.of(output));
+		double seconds = (System.nanoTime() - start) * 1e-9;
+
+		TimeStepping stepping = solver.getTimeStepping();
+		System.out.printf("%d steps of %.4g s in %.3f s, %d frames written to %s%n", stepping.stepCount(), stepping.timeStep(), seconds, analysis.getFrameCount(), output);
+		System.out.printf("peak displacement %.6e at t = %.6g%n", analysis.getPeakDisplacement(), analysis.getPeakTime());
+	}
+
+	public boolean isLumped() {
+		return lumped;
+	}
+
+	public void setLumped(boolean lumped) {
+		this.lumped = lumped;
+	}
+
+	public int getOutputInterval() {
+		return outputInterval;
+	}
+
+	public void setOutputInterval(int outputInterval) {
+		if (outputInterval < 1) {
+			throw new IllegalArgumentException("output interval has to be at least 1, got " + outputInterval);
+		}
+		this.outputInterval = outputInterval;
+	}
+
+	public double getPeakDisplacement() {
+		return peakDisplacement;
+	}
+
+	public double getPeakTime() {
+		return peakTime;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+}
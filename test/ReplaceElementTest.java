@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/*
+ * replaceElement against a fresh solve of the same model. every solver is factorized,
+ * has a few elements swapped for stiffer ones and is solved again, and the displacements
+ * have to match those of a new solver that loads the model and makes the same swaps
+ * before it ever factorizes.
+ *
+ * usage: java ReplaceElementTest, exits nonzero on a mismatch
+ */
+public class ReplaceElementTest {
+	private static final double TOLERANCE = 1e-8;
+
+	public static void main(String[] args) throws IOException {
+		Path lattice = Files.createTempFile("lattice", ".fem");
+		Path truss = Files.createTempFile("truss", ".fem");
+		try {
+			ModelGenerator.writeLattice(lattice, 10, 10);
+			ModelGenerator.writeTruss(truss, 50);
+
+			int failures = 0;
+			for (Path model : new Path[] { lattice, truss }) {
+				failures += check(model, "skyline", SkylineSolver::new);
+				failures += check(model, "sparse cholesky", SparseCholeskySolver::new);
+				failures += check(model, "mixed precision", MixedPrecisionSolver::new);
+				failures += check(model, "conjugate gradient", ConjugateGradientSolver::new);
+			}
+
+			if (failures > 0) {
+				System.out.println(failures + " failed");
+				System.exit(1);
+			}
+			System.out.println("all passed");
+		} finally {
+			Files.deleteIfExists(lattice);
+			Files.deleteIfExists(truss);
+		}
+	}
+
+	private static int check(Path model, String name, Supplier<LinearSolver> linearSolver) throws IOException {
+		FESolver updated = load(model, linearSolver.get());
+		updated.factorize();
+		updated.solveDisplacements();
+		replace(updated);
+		ArrayList<Node> actual = updated.solveDisplacements();
+
+		FESolver fresh = load(model, linearSolver.get());
+		replace(fresh);
+		ArrayList<Node> expected = fresh.solveDisplacements();
+
+		double error = relativeError(actual, expected);
+		boolean passed = error <= TOLERANCE;
+		System.out.printf("%-6s %-20s %-40s relative error %.3e%n", passed ? "ok" : "FAILED", name, model.getFileName(), error);
+		return passed ? 0 : 1;
+	}
+
+	private static FESolver load(Path model, LinearSolver linearSolver) throws IOException {
+		FESolver solver = new FESolver();
+		solver.setLinearSolver(linearSolver);
+		solver.loadFromFile(model.toString());
+		solver.buildMatrix();
+		return solver;
+	}
+
+	// a handful of elements twice as stiff, few enough to stay a low rank update
+	private static void replace(FESolver solver) {
+		ArrayList<Element> elements = solver.getElements();
+		for (int e = 0; e < elements.size(); e += elements.size() / 5) {
+			Element elem = elements.get(e);
+			double modulus = elem.getProperty(Element.Property.YOUNGS_MODULUS);
+			solver.replaceElement(e, elem.withProperty(Element.Property.YOUNGS_MODULUS, 2.0 * modulus));
+		}
+	}
+
+	private static double relativeError(ArrayList<Node> actual, ArrayList<Node> expected) {
+		double difference = 0.0;
+		double norm = 0.0;
+		for (int i = 0; i < expected.size(); i++) {
+			Node a = actual.get(i);
+			Node b = expected.get(i);
+			difference = Math.max(difference, Math.abs(a.getX() - b.getX()));
+			difference = Math.max(difference, Math.abs(a.getY() - b.getY()));
+			difference = Math.max(difference, Math.abs(a.getTheta() - b.getTheta()));
+			norm = Math.max(norm, Math.max(Math.abs(b.getX()), Math.max(Math.abs(b.getY()), Math.abs(b.getTheta()))));
+		}
+		return difference / norm;
+	}
+}